@@ -0,0 +1,79 @@
+-- Insert throughput and primary key index size of click_analytics-shaped tables keyed by random
+-- (v4) and time-ordered (v7) UUIDs.
+--
+--   psql -v rows=50000000 -f benchmarks/click-id-inserts.sql
+--
+-- Rows go in batches of 100k, as the application writes them over time. Compare the insert
+-- rates of the two runs (NOTICE lines), and the index size and leaf density reported at the end.
+-- Run it on a database the size of production: the v4 penalty shows up once the index no longer
+-- fits in shared_buffers.
+
+\set ON_ERROR_STOP on
+\if :{?rows}
+\else
+  \set rows 50000000
+\endif
+\timing on
+
+CREATE EXTENSION IF NOT EXISTS pgstattuple;
+
+-- RFC 9562 version 7 layout, as TimeOrderedUuid writes it: 48-bit Unix milliseconds, version
+-- nibble 7, 12 bits rand_a, variant bits 10, 62 bits rand_b. The random bytes come from a v4 UUID
+-- whose version and variant bits are overwritten. Unlike TimeOrderedUuid, rand_a is random rather
+-- than a counter, so ids within one millisecond are unordered; they still share the right-most
+-- leaf pages, which is what this benchmark measures.
+CREATE OR REPLACE FUNCTION bench_uuid_v7(ts timestamptz) RETURNS uuid AS $$
+  SELECT encode(
+    substring(int8send(floor(extract(epoch FROM ts) * 1000)::bigint) FROM 3)
+      || set_byte(set_byte(substring(r FROM 7),
+           0, (get_byte(r, 6) & 15) | 112),   -- 0111 xxxx: version 7
+           2, (get_byte(r, 8) & 63) | 128),   -- 10xx xxxx: RFC 4122 variant
+    'hex')::uuid
+  FROM uuid_send(gen_random_uuid()) AS r
+$$ LANGUAGE sql VOLATILE;
+
+DROP TABLE IF EXISTS bench_clicks_v4;
+DROP TABLE IF EXISTS bench_clicks_v7;
+CREATE TABLE bench_clicks_v4 (
+  id uuid PRIMARY KEY,
+  url_id uuid NOT NULL,
+  referrer varchar(255),
+  user_agent varchar(255),
+  ip_address varchar(255),
+  clicked_at timestamp NOT NULL
+);
+CREATE TABLE bench_clicks_v7 (LIKE bench_clicks_v4 INCLUDING ALL);
+
+-- Commits every batch like the application does, and reports the total time and rate
+CREATE OR REPLACE PROCEDURE bench_fill(target regclass, time_ordered boolean, total bigint) AS $$
+DECLARE
+  started timestamptz := clock_timestamp();
+  batch bigint;
+BEGIN
+  FOR batch IN 0 .. (total - 1) / 100000 LOOP
+    EXECUTE format(
+      'INSERT INTO %s SELECT CASE WHEN $1 THEN bench_uuid_v7(clock_timestamp()) ELSE gen_random_uuid() END,
+         gen_random_uuid(), ''https://example.com/'', ''Mozilla/5.0'', ''203.0.113.7'', now()
+       FROM generate_series(1, least(100000, $2 - $3 * 100000))', target)
+      USING time_ordered, total, batch;
+    COMMIT;
+  END LOOP;
+  RAISE NOTICE '% rows into %: % (% rows/s)', total, target, clock_timestamp() - started,
+    round(total / extract(epoch FROM clock_timestamp() - started));
+END
+$$ LANGUAGE plpgsql;
+
+CALL bench_fill('bench_clicks_v4', false, :rows);
+CALL bench_fill('bench_clicks_v7', true, :rows);
+
+SELECT c.relname AS index,
+       pg_size_pretty(pg_relation_size(c.oid)) AS size,
+       round(s.avg_leaf_density::numeric, 1) AS leaf_density_pct,
+       s.leaf_fragmentation AS leaf_fragmentation_pct
+FROM pg_class c, pgstatindex(c.oid::regclass) s
+WHERE c.relname IN ('bench_clicks_v4_pkey', 'bench_clicks_v7_pkey');
+
+DROP TABLE bench_clicks_v4;
+DROP TABLE bench_clicks_v7;
+DROP PROCEDURE bench_fill;
+DROP FUNCTION bench_uuid_v7;
@@ -0,0 +1,75 @@
+package com.urlshortener.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Primary pool plus one pool per read replica, used when {@code datasource.replica.urls} is set.
+ * Without replicas Spring Boot's single pool is used as before. Replicas cannot be combined with
+ * {@link ShardingConfig sharding}.
+ */
+@Configuration
+@ConditionalOnExpression("!'${datasource.replica.urls:}'.isBlank() && '${datasource.shards.urls:}'.isBlank()")
+public class DataSourceConfig {
+
+  @Bean
+  @ConfigurationProperties("spring.datasource.hikari")
+  public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+    HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    dataSource.setPoolName("primary");
+    return dataSource;
+  }
+
+  @Bean(destroyMethod = "shutdown")
+  public ReplicaRoutingDataSource replicaRoutingDataSource(HikariDataSource primaryDataSource,
+      DataSourceProperties properties,
+      @Value("${datasource.replica.urls}") String urls,
+      @Value("${datasource.replica.username:${spring.datasource.username:}}") String username,
+      @Value("${datasource.replica.password:${spring.datasource.password:}}") String password,
+      @Value("${datasource.replica.maximum-pool-size:10}") int maximumPoolSize,
+      @Value("${datasource.replica.lag-query}") String lagQuery,
+      @Value("${datasource.replica.max-lag-ms:2000}") long maxLagMillis,
+      @Value("${datasource.replica.lag-check-ms:1000}") long lagCheckMillis,
+      @Value("${datasource.replica.sticky-ms:5000}") long stickyMillis,
+      MeterRegistry meterRegistry) {
+    List<DataSource> replicas = new ArrayList<>();
+    String[] replicaUrls = Arrays.stream(urls.split(",")).map(String::trim).filter(url -> !url.isEmpty()).toArray(String[]::new);
+    for (int i = 0; i < replicaUrls.length; i++) {
+      HikariDataSource replica = new HikariDataSource();
+      replica.setPoolName("replica-" + i);
+      replica.setJdbcUrl(replicaUrls[i]);
+      replica.setUsername(username);
+      replica.setPassword(password);
+      if (properties.getDriverClassName() != null) {
+        replica.setDriverClassName(properties.getDriverClassName());
+      }
+      replica.setMaximumPoolSize(maximumPoolSize);
+      replica.setReadOnly(true);
+      // Lag checks must not wait long for a replica that is down
+      replica.setConnectionTimeout(Math.max(250, lagCheckMillis));
+      replicas.add(replica);
+    }
+    return new ReplicaRoutingDataSource(primaryDataSource, replicas, lagQuery, Duration.ofMillis(maxLagMillis),
+        Duration.ofMillis(lagCheckMillis), Duration.ofMillis(stickyMillis), meterRegistry);
+  }
+
+  @Bean
+  @Primary
+  public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+    return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+  }
+}
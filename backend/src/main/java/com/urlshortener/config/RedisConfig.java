@@ -1,81 +1,468 @@
 package com.urlshortener.config;
 
+import com.urlshortener.util.CircuitBreaker;
+import com.urlshortener.util.HashRing;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.Limit;
+import io.lettuce.core.Range;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.ScoredValue;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.ZAddArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.stereotype.Service;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Redis facade over one or more Redis endpoints. Keys are spread over the endpoints with a
+ * consistent-hash ring ({@link HashRing}), honouring {@code {...}} hash tags, so keys that must stay
+ * together share a tag. Adding an endpoint to {@code redis.nodes} moves only about 1/n of the keys;
+ * the moved rate limit counters and cached entries start over on their new node.
+ *
+ * <p>Commands to an endpoint share one multiplexed connection: callers never wait for a connection,
+ * and commands issued concurrently are written back to back without waiting for each other's
+ * replies, so they are pipelined automatically. The {@code *Async} variants return at once, which
+ * lets a request send several commands in one flush and only wait when it needs a result.
+ *
+ * <p>Failures surface as Jedis exceptions whatever the client underneath, so callers handle Redis
+ * errors in one way: {@link JedisDataException} for error replies, {@link JedisConnectionException}
+ * for timeouts, connection problems and an open circuit breaker. Each endpoint has its own breaker,
+ * so one failing endpoint does not cut off the others.
+ */
 @Configuration
 public class RedisConfig {
 
-  private final JedisPool jedisPool;
+  private final HashRing<Node> ring;
 
   public RedisConfig(
-      @Value("${spring.redis.host}") String redisHost,
-      @Value("${spring.redis.port}") int redisPort) {
-    JedisPoolConfig poolConfig = new JedisPoolConfig();
-    poolConfig.setMaxTotal(128);
-    poolConfig.setMaxIdle(128);
-    poolConfig.setMinIdle(16);
-    poolConfig.setTestOnBorrow(true);
-    poolConfig.setTestOnReturn(true);
-    poolConfig.setTestWhileIdle(true);
-    this.jedisPool = new JedisPool(poolConfig, redisHost, redisPort);
+      @Value("${redis.nodes:${spring.redis.host}:${spring.redis.port}}") String nodes,
+      @Value("${redis.timeout.connect-ms:250}") int connectTimeoutMillis,
+      @Value("${redis.timeout.command-ms:200}") int commandTimeoutMillis,
+      @Value("${redis.breaker.failure-threshold:5}") int failureThreshold,
+      @Value("${redis.breaker.open-seconds:10}") long openSeconds,
+      @Value("${redis.ring.virtual-nodes:160}") int virtualNodes,
+      MeterRegistry meterRegistry) {
+    Map<String, Node> endpoints = new LinkedHashMap<>();
+    for (String endpoint : nodes.split(",")) {
+      String name = endpoint.trim();
+      if (!name.isEmpty() && !endpoints.containsKey(name)) {
+        endpoints.put(name, new Node(HostAndPort.from(name), connectTimeoutMillis, commandTimeoutMillis,
+            new CircuitBreaker("redis " + name, failureThreshold, Duration.ofSeconds(openSeconds)), meterRegistry));
+      }
+    }
+    this.ring = new HashRing<>(endpoints, virtualNodes);
   }
 
   /**
    * Get a value from Redis by key
    */
   public String get(String key) {
-    try (Jedis jedis = jedisPool.getResource()) {
-      return jedis.get(key);
-    }
+    return await(submit(key, commands -> commands.get(key)));
   }
 
   /**
    * Set a key-value pair with expiration time in seconds
    */
   public void setex(String key, int seconds, String value) {
-    try (Jedis jedis = jedisPool.getResource()) {
-      jedis.setex(key, seconds, value);
-    }
+    await(submit(key, commands -> commands.setex(key, seconds, value)));
   }
 
   /**
    * Increment a key's value
    */
   public Long incr(String key) {
-    try (Jedis jedis = jedisPool.getResource()) {
-      return jedis.incr(key);
-    }
+    return await(submit(key, commands -> commands.incr(key)));
+  }
+
+  /**
+   * Increment several keys at once; the commands are pipelined and the new values returned by key
+   */
+  public Map<String, Long> incrby(Map<String, Long> increments) {
+    Map<String, CompletableFuture<Long>> pending = new LinkedHashMap<>();
+    increments.forEach((key, increment) -> pending.put(key, submit(key, commands -> commands.incrby(key, increment))));
+    Map<String, Long> values = new LinkedHashMap<>();
+    pending.forEach((key, future) -> values.put(key, await(future)));
+    return values;
   }
 
   /**
    * Set a key with value only if the key doesn't exist
    */
   public Long setnx(String key, String value) {
-    try (Jedis jedis = jedisPool.getResource()) {
-      return jedis.setnx(key, value);
-    }
+    return await(submit(key, commands -> commands.setnx(key, value))) ? 1L : 0L;
   }
 
   /**
    * Set a key's expiration time
    */
   public Long expire(String key, int seconds) {
-    try (Jedis jedis = jedisPool.getResource()) {
-      return jedis.expire(key, seconds);
-    }
+    return await(expireAsync(key, seconds)) ? 1L : 0L;
+  }
+
+  public CompletableFuture<Boolean> expireAsync(String key, int seconds) {
+    return submit(key, commands -> commands.expire(key, seconds));
   }
 
   /**
    * Delete a key
    */
   public Long del(String key) {
-    try (Jedis jedis = jedisPool.getResource()) {
-      return jedis.del(key);
+    return await(submit(key, commands -> commands.del(key)));
+  }
+
+  /**
+   * Add elements to a HyperLogLog sketch
+   */
+  public Long pfadd(String key, String... elements) {
+    return await(pfaddAsync(key, elements));
+  }
+
+  public CompletableFuture<Long> pfaddAsync(String key, String... elements) {
+    return submit(key, commands -> commands.pfadd(key, elements));
+  }
+
+  /**
+   * Approximate cardinality of the union of one or more HyperLogLog sketches. The keys must share
+   * a hash tag.
+   */
+  public long pfcount(String... keys) {
+    return await(sameNode(keys).submit(commands -> commands.pfcount(keys)));
+  }
+
+  /**
+   * Approximate cardinality of each sketch on its own, pipelined, in the order of the keys
+   */
+  public List<Long> pfcountEach(List<String> keys) {
+    List<CompletableFuture<Long>> pending = new ArrayList<>(keys.size());
+    for (String key : keys) {
+      pending.add(submit(key, commands -> commands.pfcount(key)));
+    }
+    List<Long> counts = new ArrayList<>(keys.size());
+    for (CompletableFuture<Long> future : pending) {
+      counts.add(await(future));
+    }
+    return counts;
+  }
+
+  /**
+   * Check whether a key exists
+   */
+  public boolean exists(String key) {
+    return await(submit(key, commands -> commands.exists(key))) > 0;
+  }
+
+  /**
+   * Add or update members of a sorted set
+   */
+  public Long zadd(String key, Map<String, Double> scoreMembers) {
+    Object[] scoresAndMembers = new Object[scoreMembers.size() * 2];
+    int i = 0;
+    for (Map.Entry<String, Double> entry : scoreMembers.entrySet()) {
+      scoresAndMembers[i++] = entry.getValue();
+      scoresAndMembers[i++] = entry.getKey();
+    }
+    return await(submit(key, commands -> commands.zadd(key, scoresAndMembers)));
+  }
+
+  /**
+   * Increment a sorted set member's score only if the member already exists (ZADD XX INCR)
+   */
+  public Double zincrbyIfMember(String key, double increment, String member) {
+    return await(zincrbyIfMemberAsync(key, increment, member));
+  }
+
+  public CompletableFuture<Double> zincrbyIfMemberAsync(String key, double increment, String member) {
+    return submit(key, commands -> commands.zaddincr(key, ZAddArgs.Builder.xx(), increment, member));
+  }
+
+  /**
+   * Remove members from a sorted set
+   */
+  public Long zrem(String key, String... members) {
+    return await(submit(key, commands -> commands.zrem(key, members)));
+  }
+
+  /**
+   * Highest-scored members of a sorted set with their scores, best first
+   */
+  public Map<String, Double> zrevrangeWithScores(String key, long start, long stop) {
+    List<ScoredValue<String>> range = await(submit(key, commands -> commands.zrevrangeWithScores(key, start, stop)));
+    Map<String, Double> members = new LinkedHashMap<>();
+    for (ScoredValue<String> member : range) {
+      members.put(member.getValue(), member.getScore());
+    }
+    return members;
+  }
+
+  /**
+   * Members of a sorted set scored at least {@code min} with their scores, lowest first, from
+   * {@code offset} for at most {@code count} members
+   */
+  public Map<String, Double> zrangeByScoreWithScores(String key, double min, long offset, long count) {
+    Range<Double> range = Range.from(Range.Boundary.including(min), Range.Boundary.unbounded());
+    List<ScoredValue<String>> page = await(submit(key, commands -> commands.zrangebyscoreWithScores(key, range, Limit.create(offset, count))));
+    Map<String, Double> members = new LinkedHashMap<>();
+    for (ScoredValue<String> member : page) {
+      members.put(member.getValue(), member.getScore());
+    }
+    return members;
+  }
+
+  /**
+   * Get the values of several keys; missing keys yield null. Keys on different endpoints are
+   * fetched with one MGET per endpoint, in parallel.
+   */
+  public List<String> mget(String... keys) {
+    Map<Node, List<String>> groups = ring.partition(List.of(keys));
+    Map<Node, CompletableFuture<List<KeyValue<String, String>>>> pending = new LinkedHashMap<>();
+    groups.forEach((node, group) -> pending.put(node, node.submit(commands -> commands.mget(group.toArray(String[]::new)))));
+    Map<String, String> values = new HashMap<>();
+    pending.forEach((node, future) -> {
+      for (KeyValue<String, String> value : await(future)) {
+        if (value.hasValue()) {
+          values.put(value.getKey(), value.getValue());
+        }
+      }
+    });
+    List<String> result = new ArrayList<>(keys.length);
+    for (String key : keys) {
+      result.add(values.get(key));
+    }
+    return result;
+  }
+
+  /**
+   * Publish a message on a channel. A channel lives on the endpoint its name hashes to, where its
+   * subscribers listen too.
+   */
+  public Long publish(String channel, String message) {
+    return await(submit(channel, commands -> commands.publish(channel, message)));
+  }
+
+  /**
+   * Subscribe to channels; blocks the calling thread until the subscriber unsubscribes or the
+   * connection fails. The subscription gets a dedicated connection, which bypasses the circuit
+   * breaker and the command timer; callers retry with their own backoff. The channels must live on
+   * the same endpoint.
+   */
+  public void subscribe(JedisPubSub subscriber, String... channels) {
+    Node node = sameNode(channels);
+    try (Jedis jedis = new Jedis(node.hostAndPort, node.subscriberConfig)) {
+      jedis.subscribe(subscriber, channels);
+    }
+  }
+
+  /**
+   * Run a Lua script returning an array by its SHA-1, sending the script body only if the server
+   * does not have it cached. The script's keys must share a hash tag.
+   */
+  public Object evalsha(String sha1, String script, List<String> keys, List<String> args) {
+    return await(evalshaAsync(sha1, script, keys, args));
+  }
+
+  public CompletableFuture<Object> evalshaAsync(String sha1, String script, List<String> keys, List<String> args) {
+    String[] keyArray = keys.toArray(String[]::new);
+    String[] argArray = args.toArray(String[]::new);
+    return sameNode(keyArray).submit(commands -> commands.<Object>evalsha(sha1, ScriptOutputType.MULTI, keyArray, argArray)
+        .toCompletableFuture()
+        .exceptionallyCompose(error -> unwrap(error) instanceof RedisNoScriptException
+            ? commands.<Object>eval(script, ScriptOutputType.MULTI, keyArray, argArray).toCompletableFuture()
+            : CompletableFuture.failedFuture(error)));
+  }
+
+  @PreDestroy
+  void close() {
+    ring.getNodes().values().forEach(Node::close);
+  }
+
+  /**
+   * Circuit breaker state of each endpoint, by {@code host:port}
+   */
+  public Map<String, CircuitBreaker.State> getCircuitStates() {
+    Map<String, CircuitBreaker.State> states = new LinkedHashMap<>();
+    ring.getNodes().forEach((name, node) -> states.put(name, node.circuitBreaker.getState()));
+    return states;
+  }
+
+  private <T> CompletableFuture<T> submit(String key, Function<RedisAsyncCommands<String, String>, ? extends CompletionStage<T>> command) {
+    return ring.nodeFor(key).submit(command);
+  }
+
+  // Multi-key commands run on a single endpoint, like CROSSSLOT checks in Redis Cluster
+  private Node sameNode(String... keys) {
+    Node node = ring.nodeFor(keys[0]);
+    for (int i = 1; i < keys.length; i++) {
+      if (ring.nodeFor(keys[i]) != node) {
+        throw new IllegalArgumentException("Keys of a multi-key command must share a hash tag: " + String.join(", ", keys));
+      }
+    }
+    return node;
+  }
+
+  private static <T> T await(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      throw translate(e);
+    }
+  }
+
+  private static JedisException translate(Throwable error) {
+    Throwable cause = unwrap(error);
+    if (cause instanceof JedisException jedisException) {
+      return jedisException;
+    }
+    if (cause instanceof RedisCommandExecutionException) {
+      return new JedisDataException(cause.getMessage(), cause);
+    }
+    return new JedisConnectionException(cause.getMessage(), cause);
+  }
+
+  private static Throwable unwrap(Throwable error) {
+    while (error instanceof CompletionException && error.getCause() != null) {
+      error = error.getCause();
+    }
+    return error;
+  }
+
+  /**
+   * One Redis endpoint: its multiplexed connection, circuit breaker and metrics.
+   */
+  private static final class Node {
+    private final HostAndPort hostAndPort;
+    private final RedisClient client;
+    private final JedisClientConfig subscriberConfig;
+    private final CircuitBreaker circuitBreaker;
+    private final Timer successTimer;
+    private final Timer failureTimer;
+    private final Counter rejectedCommands;
+    private volatile StatefulRedisConnection<String, String> connection;
+
+    private Node(HostAndPort hostAndPort, int connectTimeoutMillis, int commandTimeoutMillis,
+        CircuitBreaker circuitBreaker, MeterRegistry meterRegistry) {
+      this.hostAndPort = hostAndPort;
+      this.client = RedisClient.create(RedisURI.builder()
+          .withHost(hostAndPort.getHost())
+          .withPort(hostAndPort.getPort())
+          .withTimeout(Duration.ofMillis(commandTimeoutMillis))
+          .build());
+      // While the connection is down commands fail at once instead of queueing until it is back
+      client.setOptions(ClientOptions.builder()
+          .socketOptions(SocketOptions.builder().connectTimeout(Duration.ofMillis(connectTimeoutMillis)).build())
+          .timeoutOptions(TimeoutOptions.enabled(Duration.ofMillis(commandTimeoutMillis)))
+          .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+          .build());
+      this.subscriberConfig = DefaultJedisClientConfig.builder()
+          .connectionTimeoutMillis(connectTimeoutMillis)
+          .build();
+      this.circuitBreaker = circuitBreaker;
+
+      String node = hostAndPort.toString();
+      for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+        Gauge.builder("redis.circuit.state", circuitBreaker, breaker -> breaker.getState() == state ? 1 : 0)
+            .tags("node", node, "state", state.name().toLowerCase(Locale.ROOT))
+            .description("1 for the current state of the Redis circuit breaker")
+            .register(meterRegistry);
+      }
+      this.successTimer = Timer.builder("redis.commands").tags("node", node, "outcome", "success")
+          .publishPercentiles(0.5, 0.99, 0.999).register(meterRegistry);
+      this.failureTimer = Timer.builder("redis.commands").tags("node", node, "outcome", "failure")
+          .publishPercentiles(0.5, 0.99, 0.999).register(meterRegistry);
+      this.rejectedCommands = Counter.builder("redis.commands.rejected").tag("node", node)
+          .description("Commands not sent because the circuit breaker was open")
+          .register(meterRegistry);
+    }
+
+    /**
+     * Send a command through the circuit breaker without waiting for the reply. While the breaker is
+     * open the returned future has already failed, so callers never wait on an unhealthy server.
+     * Completion callbacks run on the client's I/O thread and must not block.
+     */
+    private <T> CompletableFuture<T> submit(Function<RedisAsyncCommands<String, String>, ? extends CompletionStage<T>> command) {
+      CircuitBreaker.Permit permit = circuitBreaker.tryAcquirePermission();
+      if (!permit.isGranted()) {
+        rejectedCommands.increment();
+        return CompletableFuture.failedFuture(new JedisConnectionException("Redis circuit breaker is open for " + hostAndPort));
+      }
+      long start = System.nanoTime();
+      CompletionStage<T> reply;
+      try {
+        reply = command.apply(connection().async());
+      } catch (RuntimeException e) {
+        reply = CompletableFuture.failedFuture(e);
+      }
+      return reply.toCompletableFuture().handle((result, error) -> {
+        long elapsed = System.nanoTime() - start;
+        JedisException failure = error == null ? null : translate(error);
+        // An error reply means the server answered: Redis itself is healthy
+        if (failure == null || failure instanceof JedisDataException) {
+          circuitBreaker.onSuccess(permit);
+          successTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        } else {
+          circuitBreaker.onFailure(permit);
+          failureTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        }
+        if (failure != null) {
+          throw failure;
+        }
+        return result;
+      });
+    }
+
+    // Connected on first use, so the application starts even when Redis is down; the client
+    // reconnects by itself afterwards
+    private StatefulRedisConnection<String, String> connection() {
+      StatefulRedisConnection<String, String> current = connection;
+      if (current == null) {
+        synchronized (this) {
+          if (connection == null) {
+            connection = client.connect();
+          }
+          current = connection;
+        }
+      }
+      return current;
+    }
+
+    private void close() {
+      StatefulRedisConnection<String, String> current = connection;
+      if (current != null) {
+        current.close();
+      }
+      client.shutdown();
     }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,176 @@
+package com.urlshortener.config;
+
+import com.urlshortener.util.ExpiringCache;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends read-only transactions to replica pools and everything else to the primary.
+ *
+ * <p>Replicas are picked round-robin among those whose replication lag, checked every
+ * {@code lagCheckInterval} with {@code lagQuery}, is within {@code maxLag}; a replica that cannot be
+ * checked counts as lagging. With no replica in bounds, reads go to the primary.
+ *
+ * <p>After a read-write transaction commits, the signed-in user's reads stay on the primary for
+ * {@code stickiness}, so a link just created is not missing from a replica that has not caught up.
+ *
+ * <p>The routing decision needs the transaction's read-only flag, which Spring sets after it asks
+ * for a connection, so this must be used behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+  static final String PRIMARY = "primary";
+
+  private final List<Replica> replicas = new ArrayList<>();
+  private final String lagQuery;
+  private final long maxLagMillis;
+  private final long lagCheckMillis;
+  private final ExpiringCache<String, Boolean> stickyUsers;
+  private final AtomicInteger next = new AtomicInteger();
+  private final ScheduledExecutorService lagChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "replica-lag");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicaDataSources, String lagQuery,
+      Duration maxLag, Duration lagCheckInterval, Duration stickiness, MeterRegistry meterRegistry) {
+    this.lagQuery = lagQuery;
+    this.maxLagMillis = maxLag.toMillis();
+    this.lagCheckMillis = lagCheckInterval.toMillis();
+    this.stickyUsers = new ExpiringCache<>(stickiness, 100_000);
+
+    Map<Object, Object> targets = new HashMap<>();
+    targets.put(PRIMARY, primary);
+    for (int i = 0; i < replicaDataSources.size(); i++) {
+      Replica replica = new Replica("replica-" + i, replicaDataSources.get(i));
+      replicas.add(replica);
+      targets.put(replica.name, replica.dataSource);
+      Gauge.builder("datasource.replica.lag", replica, r -> r.lagMillis)
+          .description("Replication lag in milliseconds, negative when it could not be checked")
+          .tag("replica", replica.name)
+          .baseUnit("milliseconds")
+          .register(meterRegistry);
+    }
+    setTargetDataSources(targets);
+    setDefaultTargetDataSource(primary);
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    super.afterPropertiesSet();
+    checkLag();
+    lagChecker.scheduleWithFixedDelay(this::checkLag, lagCheckMillis, lagCheckMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Called by Spring when the context closes.
+   */
+  public void shutdown() {
+    lagChecker.shutdownNow();
+    for (Replica replica : replicas) {
+      if (replica.dataSource instanceof AutoCloseable pool) {
+        try {
+          pool.close();
+        } catch (Exception e) {
+          log.warn("Could not close replica pool {}: {}", replica.name, e.getMessage());
+        }
+      }
+    }
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    boolean readOnly = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    String user = currentUser();
+    if (!readOnly) {
+      if (user != null && TransactionSynchronizationManager.isSynchronizationActive()) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            stickyUsers.put(user, Boolean.TRUE);
+          }
+        });
+      }
+      return PRIMARY;
+    }
+    if (user != null && stickyUsers.get(user) != null) {
+      return PRIMARY;
+    }
+    return pickReplica();
+  }
+
+  private String pickReplica() {
+    int size = replicas.size();
+    int start = Math.floorMod(next.getAndIncrement(), Math.max(1, size));
+    for (int i = 0; i < size; i++) {
+      Replica replica = replicas.get((start + i) % size);
+      if (replica.lagMillis >= 0 && replica.lagMillis <= maxLagMillis) {
+        return replica.name;
+      }
+    }
+    return PRIMARY;
+  }
+
+  /**
+   * Measure every replica's lag now; also runs every {@code lagCheckInterval}.
+   */
+  public void checkLag() {
+    for (Replica replica : replicas) {
+      try (Connection connection = replica.dataSource.getConnection();
+          Statement statement = connection.createStatement();
+          ResultSet result = statement.executeQuery(lagQuery)) {
+        long lag = result.next() ? Math.max(0, result.getLong(1)) : -1;
+        if (lag > maxLagMillis && replica.lagMillis <= maxLagMillis) {
+          log.warn("Replica {} is {} ms behind, reading from the primary", replica.name, lag);
+        }
+        replica.lagMillis = lag;
+      } catch (SQLException | RuntimeException e) {
+        if (replica.lagMillis >= 0) {
+          log.warn("Could not check replica {}, reading from the primary: {}", replica.name, e.getMessage());
+        }
+        replica.lagMillis = -1;
+      }
+    }
+  }
+
+  private static String currentUser() {
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    return authentication != null && authentication.isAuthenticated() ? authentication.getName() : null;
+  }
+
+  private static final class Replica {
+    private final String name;
+    private final DataSource dataSource;
+    // -1 until checked, or when the last check failed
+    private volatile long lagMillis = -1;
+
+    private Replica(String name, DataSource dataSource) {
+      this.name = name;
+      this.dataSource = dataSource;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package com.urlshortener.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the schema migrations before JPA starts, so Hibernate validates against the migrated schema.
+ */
+@Configuration
+@ConditionalOnProperty(name = "schema.migrations.enabled", havingValue = "true", matchIfMissing = true)
+public class SchemaMigrationConfig {
+
+  @Bean(initMethod = "migrate")
+  public SchemaMigrator schemaMigrator(DataSource dataSource,
+      @Value("${schema.migrations.locations:classpath:db/migration/*.sql}") String locations) {
+    return new SchemaMigrator(dataSource, locations);
+  }
+
+  /**
+   * Shards after the first have their own scripts, since they hold only the sharded tables.
+   * Empty when sharding is off.
+   */
+  @Bean
+  public List<SchemaMigrator> shardSchemaMigrators(ObjectProvider<ShardRoutingDataSource> shardRoutingDataSource,
+      @Value("${schema.migrations.shard-locations:classpath:db/shard/*.sql}") String locations) {
+    List<SchemaMigrator> migrators = new ArrayList<>();
+    ShardRoutingDataSource routing = shardRoutingDataSource.getIfAvailable();
+    if (routing != null) {
+      List<DataSource> shards = routing.getShards();
+      for (int i = 1; i < shards.size(); i++) {
+        SchemaMigrator migrator = new SchemaMigrator(shards.get(i), locations);
+        migrator.migrate();
+        migrators.add(migrator);
+      }
+    }
+    return migrators;
+  }
+
+  @Bean
+  public static EntityManagerFactoryDependsOnPostProcessor schemaMigratorDependency() {
+    return new EntityManagerFactoryDependsOnPostProcessor("schemaMigrator", "shardSchemaMigrators");
+  }
+}
@@ -0,0 +1,174 @@
+package com.urlshortener.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Applies versioned SQL scripts named {@code V<version>__<description>.sql}, in version order, each
+ * in its own transaction, and records them in {@code schema_version}. Scripts already applied are
+ * skipped; one that was edited after being applied stops startup, since databases would otherwise
+ * drift apart.
+ *
+ * <p>Nodes starting together take turns: the first holds a row lock on the table's version 0 row
+ * until it is done, and the others then find the scripts applied.
+ */
+@Slf4j
+public class SchemaMigrator {
+
+  private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+  private final DataSource dataSource;
+  private final String locationPattern;
+
+  public SchemaMigrator(DataSource dataSource, String locationPattern) {
+    this.dataSource = dataSource;
+    this.locationPattern = locationPattern;
+  }
+
+  /**
+   * Apply pending scripts and return the versions applied.
+   */
+  public List<Integer> migrate() {
+    List<Script> scripts = scripts();
+    try (Connection lock = dataSource.getConnection()) {
+      createHistoryTable(lock);
+      lock.setAutoCommit(false);
+      try (Statement statement = lock.createStatement()) {
+        statement.executeQuery("SELECT version FROM schema_version WHERE version = 0 FOR UPDATE").close();
+        List<Integer> applied = apply(scripts);
+        lock.commit();
+        return applied;
+      } catch (SQLException | RuntimeException e) {
+        lock.rollback();
+        throw e;
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException("Schema migration failed: " + e.getMessage(), e);
+    }
+  }
+
+  private List<Integer> apply(List<Script> scripts) throws SQLException {
+    List<Integer> applied = new ArrayList<>();
+    try (Connection connection = dataSource.getConnection()) {
+      Map<Integer, String> history = history(connection);
+      connection.setAutoCommit(false);
+      for (Script script : scripts) {
+        String checksum = history.get(script.version());
+        if (checksum != null) {
+          if (!checksum.equals(script.checksum())) {
+            throw new IllegalStateException("Migration V" + script.version() + " was changed after it was applied");
+          }
+          continue;
+        }
+        log.info("Applying schema migration V{} {}", script.version(), script.description());
+        try {
+          ScriptUtils.executeSqlScript(connection, new EncodedResource(script.resource(), StandardCharsets.UTF_8));
+          record(connection, script);
+          connection.commit();
+        } catch (SQLException | RuntimeException e) {
+          connection.rollback();
+          throw e;
+        }
+        applied.add(script.version());
+      }
+    }
+    return applied;
+  }
+
+  private static void createHistoryTable(Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+          "version integer NOT NULL PRIMARY KEY, " +
+          "description varchar(200) NOT NULL, " +
+          "checksum varchar(64) NOT NULL, " +
+          "applied_at timestamp NOT NULL)");
+      if (!history(connection).containsKey(0)) {
+        try {
+          statement.execute("INSERT INTO schema_version VALUES (0, '<< lock >>', '', CURRENT_TIMESTAMP)");
+        } catch (SQLException e) {
+          // Another node inserted it first
+          log.debug("Schema lock row already present: {}", e.getMessage());
+        }
+      }
+    }
+  }
+
+  private static Map<Integer, String> history(Connection connection) throws SQLException {
+    Map<Integer, String> history = new TreeMap<>();
+    try (Statement statement = connection.createStatement();
+        ResultSet rows = statement.executeQuery("SELECT version, checksum FROM schema_version")) {
+      while (rows.next()) {
+        history.put(rows.getInt(1), rows.getString(2));
+      }
+    }
+    return history;
+  }
+
+  private static void record(Connection connection, Script script) throws SQLException {
+    try (PreparedStatement insert = connection.prepareStatement("INSERT INTO schema_version VALUES (?, ?, ?, ?)")) {
+      insert.setInt(1, script.version());
+      insert.setString(2, script.description());
+      insert.setString(3, script.checksum());
+      insert.setTimestamp(4, Timestamp.valueOf(LocalDateTime.now()));
+      insert.executeUpdate();
+    }
+  }
+
+  private List<Script> scripts() {
+    try {
+      List<Script> scripts = new ArrayList<>();
+      for (Resource resource : new PathMatchingResourcePatternResolver().getResources(locationPattern)) {
+        Matcher name = SCRIPT_NAME.matcher(resource.getFilename() != null ? resource.getFilename() : "");
+        if (!name.matches()) {
+          throw new IllegalStateException("Migration script name must look like V1__description.sql: " + resource);
+        }
+        scripts.add(new Script(Integer.parseInt(name.group(1)), name.group(2).replace('_', ' '), resource,
+            checksum(resource.getContentAsByteArray())));
+      }
+      scripts.sort(Comparator.comparingInt(Script::version));
+      for (int i = 1; i < scripts.size(); i++) {
+        if (scripts.get(i).version() == scripts.get(i - 1).version()) {
+          throw new IllegalStateException("Two migration scripts have version " + scripts.get(i).version());
+        }
+      }
+      return scripts;
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not read migration scripts from " + locationPattern, e);
+    }
+  }
+
+  private static String checksum(byte[] content) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  private record Script(int version, String description, Resource resource, String checksum) {
+  }
+}
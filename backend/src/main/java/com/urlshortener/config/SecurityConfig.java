@@ -1,9 +1,15 @@
 package com.urlshortener.config;
 
+import com.urlshortener.controller.UrlController;
+import com.urlshortener.security.ApiKeyAuthenticationFilter;
+import com.urlshortener.security.BoundedPasswordEncoder;
 import com.urlshortener.security.JwtAuthenticationFilter;
 import com.urlshortener.security.RateLimitingFilter;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -24,6 +30,7 @@ import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 
@@ -33,12 +40,16 @@ import java.util.List;
 public class SecurityConfig {
   private final UserDetailsService userDetailsService;
   private final JwtAuthenticationFilter jwtAuthenticationFilter;
+  private final ApiKeyAuthenticationFilter apiKeyAuthenticationFilter;
   private final RateLimitingFilter rateLimitingFilter;
+  private final PasswordEncoder passwordEncoder;
 
-  public SecurityConfig(UserDetailsService userDetailsService, JwtAuthenticationFilter jwtAuthenticationFilter, RateLimitingFilter rateLimitingFilter) {
+  public SecurityConfig(UserDetailsService userDetailsService, JwtAuthenticationFilter jwtAuthenticationFilter, ApiKeyAuthenticationFilter apiKeyAuthenticationFilter, RateLimitingFilter rateLimitingFilter, PasswordEncoder passwordEncoder) {
     this.userDetailsService = userDetailsService;
     this.jwtAuthenticationFilter = jwtAuthenticationFilter;
+    this.apiKeyAuthenticationFilter = apiKeyAuthenticationFilter;
     this.rateLimitingFilter = rateLimitingFilter;
+    this.passwordEncoder = passwordEncoder;
   }
 
   @Bean
@@ -52,15 +63,20 @@ public class SecurityConfig {
         .cors(cors -> cors.configurationSource(corsConfigurationSource()))
         .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
         .authorizeHttpRequests(auth -> {
+          // Streaming responses finish on an async dispatch; the original request was already authorized
+          auth.dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll();
           auth.requestMatchers("/auth/**","/api-docs/**",
               "/swagger-ui/**").permitAll();
           auth.requestMatchers("/favicon.ico").permitAll();
+          auth.requestMatchers("/actuator/health").permitAll();
           auth.requestMatchers("/{shortCode:[a-zA-Z0-9]{1,10}}").permitAll();
           auth.anyRequest().authenticated();
         })
         .authenticationProvider(authenticationProvider())
         .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
-        .addFilterBefore(rateLimitingFilter, JwtAuthenticationFilter.class);
+        .addFilterBefore(apiKeyAuthenticationFilter, JwtAuthenticationFilter.class)
+        // After authentication, so signed-in callers are limited per user rather than per address
+        .addFilterAfter(rateLimitingFilter, JwtAuthenticationFilter.class);
 
     return http.build();
   }
@@ -70,7 +86,11 @@ public class SecurityConfig {
     CorsConfiguration configuration = new CorsConfiguration();
     configuration.setAllowedOrigins(List.of("http://localhost:3000"));
     configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
-    configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "X-Requested-With"));
+    configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "X-Requested-With", "If-None-Match",
+        ApiKeyAuthenticationFilter.HEADER));
+    configuration.setExposedHeaders(Arrays.asList("ETag", "Content-Disposition",
+        "RateLimit-Limit", "RateLimit-Remaining", "RateLimit-Reset", "RateLimit-Policy", "Retry-After",
+        "Link", UrlController.NEXT_CURSOR_HEADER));
     configuration.setMaxAge(3600L);
 
     UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
@@ -82,13 +102,20 @@ public class SecurityConfig {
   public DaoAuthenticationProvider authenticationProvider() {
     DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
     provider.setUserDetailsService(userDetailsService);
-    provider.setPasswordEncoder(passwordEncoder());
+    provider.setPasswordEncoder(passwordEncoder);
     return provider;
   }
 
+  // BCrypt costs ~100 ms of CPU per call, so it runs on a bounded pool instead of request threads
   @Bean
-  public PasswordEncoder passwordEncoder() {
-    return new BCryptPasswordEncoder();
+  public static PasswordEncoder passwordEncoder(
+      @Value("${security.password.workers:4}") int workers,
+      @Value("${security.password.queue-capacity:32}") int queueCapacity,
+      @Value("${security.password.max-wait-ms:2000}") long maxWaitMillis,
+      @Value("${security.password.retry-after-seconds:1}") long retryAfterSeconds,
+      MeterRegistry meterRegistry) {
+    return new BoundedPasswordEncoder(new BCryptPasswordEncoder(), workers, queueCapacity,
+        Duration.ofMillis(maxWaitMillis), retryAfterSeconds, meterRegistry);
   }
 
   @Bean
@@ -0,0 +1,64 @@
+package com.urlshortener.config;
+
+import com.urlshortener.repository.shard.ShardContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out connections from the shard in {@link ShardContext}. Shard 0 also holds the tables that
+ * are not sharded, so code that never enters a shard keeps working unchanged.
+ *
+ * <p>The shard is read when a connection is first used, so this must be used behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} for a shard entered
+ * inside a transaction to take effect.
+ */
+@Slf4j
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+  private final List<DataSource> shards;
+
+  public ShardRoutingDataSource(List<DataSource> shards) {
+    if (shards.isEmpty()) {
+      throw new IllegalArgumentException("At least one shard is required");
+    }
+    this.shards = List.copyOf(shards);
+    Map<Object, Object> targets = new HashMap<>();
+    for (int i = 0; i < shards.size(); i++) {
+      targets.put(i, shards.get(i));
+    }
+    setTargetDataSources(targets);
+    setDefaultTargetDataSource(shards.get(0));
+    // An unknown shard index is a bug, not something to silently serve from shard 0
+    setLenientFallback(false);
+  }
+
+  public List<DataSource> getShards() {
+    return shards;
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    return ShardContext.current();
+  }
+
+  /**
+   * Called by Spring when the context closes. Shard 0 is the Spring-managed pool and is closed by
+   * Spring itself.
+   */
+  public void shutdown() {
+    for (int i = 1; i < shards.size(); i++) {
+      if (shards.get(i) instanceof AutoCloseable pool) {
+        try {
+          pool.close();
+        } catch (Exception e) {
+          log.warn("Could not close pool of shard {}: {}", i, e.getMessage());
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package com.urlshortener.config;
+
+import com.urlshortener.repository.shard.HashRingShardResolver;
+import com.urlshortener.repository.shard.ShardResolver;
+import com.urlshortener.repository.shard.ShardRouter;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Spreads the urls and click_analytics tables over the main database (shard 0) and one database per
+ * URL in {@code datasource.shards.urls}, by short code. Without shard URLs there is a single shard
+ * and the router does nothing.
+ */
+@Configuration
+public class ShardingConfig {
+
+  @Bean
+  @ConditionalOnMissingBean(ShardResolver.class)
+  public ShardResolver shardResolver(@Value("${datasource.shards.urls:}") String urls,
+      @Value("${datasource.shards.virtual-nodes:160}") int virtualNodes) {
+    return new HashRingShardResolver(1 + shardUrls(urls).size(), virtualNodes);
+  }
+
+  @Bean(destroyMethod = "shutdown")
+  public ShardRouter shardRouter(ShardResolver shardResolver, PlatformTransactionManager transactionManager,
+      @Value("${datasource.shards.query-threads:8}") int queryThreads,
+      @Value("${datasource.shards.query-timeout-ms:10000}") long queryTimeoutMillis) {
+    return new ShardRouter(shardResolver, transactionManager, queryThreads, Duration.ofMillis(queryTimeoutMillis));
+  }
+
+  static List<String> shardUrls(String urls) {
+    return Arrays.stream(urls.split(",")).map(String::trim).filter(url -> !url.isEmpty()).toList();
+  }
+
+  @Configuration
+  @ConditionalOnExpression("!'${datasource.shards.urls:}'.isBlank()")
+  static class Sharded {
+
+    Sharded(@Value("${datasource.replica.urls:}") String replicaUrls) {
+      if (!replicaUrls.isBlank()) {
+        throw new IllegalStateException("datasource.shards.urls and datasource.replica.urls cannot be used together");
+      }
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+      HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+      dataSource.setPoolName("shard-0");
+      return dataSource;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ShardRoutingDataSource shardRoutingDataSource(HikariDataSource primaryDataSource,
+        DataSourceProperties properties, ShardResolver shardResolver,
+        @Value("${datasource.shards.urls}") String urls,
+        @Value("${datasource.shards.username:${spring.datasource.username:}}") String username,
+        @Value("${datasource.shards.password:${spring.datasource.password:}}") String password,
+        @Value("${datasource.shards.maximum-pool-size:10}") int maximumPoolSize) {
+      List<String> shardUrls = shardUrls(urls);
+      if (shardResolver.shardCount() != shardUrls.size() + 1) {
+        throw new IllegalStateException("The shard resolver expects " + shardResolver.shardCount()
+            + " shards but " + (shardUrls.size() + 1) + " are configured");
+      }
+      List<DataSource> shards = new ArrayList<>();
+      shards.add(primaryDataSource);
+      for (int i = 0; i < shardUrls.size(); i++) {
+        HikariDataSource shard = new HikariDataSource();
+        shard.setPoolName("shard-" + (i + 1));
+        shard.setJdbcUrl(shardUrls.get(i));
+        shard.setUsername(username);
+        shard.setPassword(password);
+        if (properties.getDriverClassName() != null) {
+          shard.setDriverClassName(properties.getDriverClassName());
+        }
+        shard.setMaximumPoolSize(maximumPoolSize);
+        shards.add(shard);
+      }
+      return new ShardRoutingDataSource(shards);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+      return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+  }
+}
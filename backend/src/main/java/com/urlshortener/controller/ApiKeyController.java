@@ -0,0 +1,71 @@
+package com.urlshortener.controller;
+
+import com.urlshortener.dto.ApiKeyRequest;
+import com.urlshortener.dto.ApiKeyResponse;
+import com.urlshortener.exception.UnauthorizedException;
+import com.urlshortener.security.ApiKeyAuthenticationToken;
+import com.urlshortener.security.UserPrincipal;
+import com.urlshortener.service.ApiKeyService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.validation.Valid;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api-keys")
+public class ApiKeyController {
+
+  private final ApiKeyService apiKeyService;
+
+  public ApiKeyController(ApiKeyService apiKeyService) {
+    this.apiKeyService = apiKeyService;
+  }
+
+  @PostMapping
+  @Operation(summary = "Create an API key", description = "Creates a long-lived key for machine clients; the key is only returned in this response")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "201", content = { @Content(schema = @Schema(implementation = ApiKeyResponse.class), mediaType = "application/json") }),
+      @ApiResponse(responseCode = "400", description = "Blank name", content = @Content),
+      @ApiResponse(responseCode = "401", description = "Keys can only be managed with a signed-in session", content = @Content)
+  })
+  public ResponseEntity<ApiKeyResponse> createKey(@Valid @RequestBody ApiKeyRequest request, Authentication authentication) {
+    UUID userId = sessionUserId(authentication);
+    return ResponseEntity.status(HttpStatus.CREATED).body(apiKeyService.createKey(request, userId));
+  }
+
+  @GetMapping
+  @Operation(summary = "Get API keys", description = "Returns the user's active API keys, without the keys themselves")
+  public ResponseEntity<List<ApiKeyResponse>> getKeys(Authentication authentication) {
+    UUID userId = sessionUserId(authentication);
+    return ResponseEntity.ok(apiKeyService.getUserKeys(userId));
+  }
+
+  @DeleteMapping("/{id}")
+  @Operation(summary = "Revoke an API key", description = "Revokes the key on every node")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "204", description = "Key revoked", content = @Content),
+      @ApiResponse(responseCode = "404", description = "Key not found", content = @Content)
+  })
+  public ResponseEntity<Void> revokeKey(@PathVariable UUID id, Authentication authentication) {
+    UUID userId = sessionUserId(authentication);
+    apiKeyService.revokeKey(id, userId);
+    return ResponseEntity.noContent().build();
+  }
+
+  // A leaked key must not be able to mint or revoke keys
+  private static UUID sessionUserId(Authentication authentication) {
+    if (authentication instanceof ApiKeyAuthenticationToken) {
+      throw new UnauthorizedException("API keys cannot manage API keys");
+    }
+    return UserPrincipal.idOf(authentication);
+  }
+}
@@ -1,5 +1,6 @@
 package com.urlshortener.controller;
 
+import com.urlshortener.dto.UrlSummary;
 import com.urlshortener.service.UrlService;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
@@ -25,11 +26,13 @@ public class RedirectController {
     String referrer = request.getHeader("Referer");
     String ipAddress = request.getRemoteAddr();
 
-    String longUrl = urlService.getLongUrlAndIncrementClicks(shortCode, referrer, userAgent, ipAddress);
+    UrlSummary url = urlService.resolveClick(shortCode, referrer, userAgent, ipAddress);
 
     RedirectView redirectView = new RedirectView();
-    redirectView.setUrl(longUrl);
-    redirectView.setStatusCode(HttpStatus.MOVED_PERMANENTLY);
+    redirectView.setUrl(url.getLongUrl());
+    // Browsers keep a 301 for good and would go on redirecting after the link expired
+    boolean limited = url.getExpiresAt() != null || url.getMaxClicks() != null;
+    redirectView.setStatusCode(limited ? HttpStatus.FOUND : HttpStatus.MOVED_PERMANENTLY);
     return redirectView;
   }
 }
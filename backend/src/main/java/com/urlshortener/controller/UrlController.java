@@ -1,9 +1,17 @@
 package com.urlshortener.controller;
 
+import com.urlshortener.dto.AccountAnalyticsResponse;
 import com.urlshortener.dto.AnalyticsResponse;
+import com.urlshortener.dto.LinkClicks;
+import com.urlshortener.dto.UrlPage;
 import com.urlshortener.dto.UrlRequest;
 import com.urlshortener.dto.UrlResponse;
+import com.urlshortener.security.UserPrincipal;
+import com.urlshortener.service.AnalyticsCache;
 import com.urlshortener.service.AnalyticsService;
+import com.urlshortener.service.ClickExportService;
+import com.urlshortener.service.ClickStreamHub;
+import com.urlshortener.service.LeaderboardService;
 import com.urlshortener.service.UrlService;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -13,20 +21,39 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ETag;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.OutputStream;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/urls")
 @RequiredArgsConstructor
 public class UrlController {
 
+  public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
   private final UrlService urlService;
   private final AnalyticsService analyticsService;
+  private final ClickExportService clickExportService;
+  private final ClickStreamHub clickStreamHub;
+  private final AnalyticsCache analyticsCache;
+  private final LeaderboardService leaderboardService;
 
   @PostMapping("/shorten")
   @Operation(summary = "Create a shortened URL", description = "Creates a new shortened URL from the provided original URL")
@@ -37,46 +64,151 @@ public class UrlController {
       @ApiResponse(responseCode = "403", description = "Permission denied", content = @Content)
   })
   public ResponseEntity<UrlResponse> shortenUrl(@Valid @RequestBody UrlRequest request, Authentication authentication) {
-    String username = authentication.getName();
-    UrlResponse response = urlService.createShortUrl(request, username);
+    UUID userId = UserPrincipal.idOf(authentication);
+    UrlResponse response = urlService.createShortUrl(request, userId);
     return ResponseEntity.status(HttpStatus.CREATED).body(response);
   }
 
   @GetMapping
-  @Operation(summary = "Get all user URLs", description = "Returns a list of all user URLs")
+  @Operation(summary = "Get user URLs", description = "Returns a page of the user's URLs, newest first, optionally filtered by a short code or long URL prefix. When more follow, the Link (rel=\"next\") and X-Next-Cursor headers point to the next page")
   @ApiResponses(value = {
-      @ApiResponse(responseCode = "200", description = "List of user URLs", content = { @Content(schema = @Schema(implementation = UrlResponse.class), mediaType = "application/json") }),
+      @ApiResponse(responseCode = "200", description = "Page of user URLs", content = { @Content(schema = @Schema(implementation = UrlResponse.class), mediaType = "application/json") }),
+      @ApiResponse(responseCode = "400", description = "Invalid cursor or limit", content = @Content),
       @ApiResponse(responseCode = "403", description = "Permission denied", content = @Content),
 
   })
-  public ResponseEntity<List<UrlResponse>> getUserUrls(Authentication authentication) {
-    String username = authentication.getName();
-    List<UrlResponse> urls = urlService.getUserUrls(username);
-    return ResponseEntity.ok(urls);
+  public ResponseEntity<List<UrlResponse>> getUserUrls(
+      @RequestParam(required = false) String cursor,
+      @RequestParam(required = false) Integer limit,
+      @RequestParam(required = false) String q,
+      Authentication authentication) {
+    UUID userId = UserPrincipal.idOf(authentication);
+    UrlPage page = urlService.getUserUrls(userId, cursor, limit, q);
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+    if (page.getNextCursor() != null) {
+      String next = ServletUriComponentsBuilder.fromCurrentRequest()
+          .replaceQueryParam("cursor", page.getNextCursor())
+          .toUriString();
+      response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"")
+          .header(NEXT_CURSOR_HEADER, page.getNextCursor());
+    }
+    return response.body(page.getUrls());
+  }
+
+  @GetMapping("/top")
+  @Operation(summary = "Get the most clicked user URLs", description = "Returns the user's URLs with the most clicks, best first")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Most clicked URLs", content = { @Content(schema = @Schema(implementation = LinkClicks.class), mediaType = "application/json") }),
+      @ApiResponse(responseCode = "400", description = "Invalid limit", content = @Content),
+      @ApiResponse(responseCode = "403", description = "Permission denied", content = @Content)
+  })
+  public ResponseEntity<List<LinkClicks>> getTopUrls(@RequestParam(defaultValue = "10") int limit, Authentication authentication) {
+    UUID userId = UserPrincipal.idOf(authentication);
+    return ResponseEntity.ok(leaderboardService.getTopLinks(userId, limit));
   }
 
   @GetMapping("/{shortCode}")
   @Operation(summary = "Get a shortened URL", description = "Returns the original URL for the provided shortened URL")
   @ApiResponses(value = {
       @ApiResponse(responseCode = "200", description = "Shortened URL", content = { @Content(schema = @Schema(implementation = UrlResponse.class), mediaType = "application/json") }),
+      @ApiResponse(responseCode = "403", description = "Permission denied", content = @Content),
       @ApiResponse(responseCode = "404", description = "Shortened URL not found", content = @Content)
   })
   public ResponseEntity<UrlResponse> getUrl(@PathVariable String shortCode, Authentication authentication) {
-    String username = authentication.getName();
-    UrlResponse url = urlService.getUrl(shortCode, username);
+    UUID userId = UserPrincipal.idOf(authentication);
+    UrlResponse url = urlService.getUrl(shortCode, userId);
     return ResponseEntity.ok(url);
   }
 
+  @GetMapping("/analytics")
+  @Operation(summary = "Get analytics across all user URLs", description = "Returns totals, a daily click series and top links, referrers and browsers over all user URLs; defaults to the last 30 days")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Account analytics", content = { @Content(schema = @Schema(implementation = AccountAnalyticsResponse.class), mediaType = "application/json") }),
+      @ApiResponse(responseCode = "400", description = "Invalid date range or limit", content = @Content),
+      @ApiResponse(responseCode = "403", description = "Permission denied", content = @Content)
+  })
+  public ResponseEntity<AccountAnalyticsResponse> getAccountAnalytics(
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+      @RequestParam(defaultValue = "10") int limit,
+      Authentication authentication) {
+    UUID userId = UserPrincipal.idOf(authentication);
+    return ResponseEntity.ok(analyticsService.getAccountAnalytics(userId, from, to, limit));
+  }
+
   @GetMapping("/analytics/{shortCode}")
   @Operation(summary = "Get analytics for a shortened URL", description = "Returns analytics for the provided shortened URL")
   @ApiResponses(value = {
       @ApiResponse(responseCode = "200", description = "Analytics", content = { @Content(schema = @Schema(implementation = AnalyticsResponse.class), mediaType = "application/json") }),
+      @ApiResponse(responseCode = "304", description = "Analytics unchanged since the ETag in If-None-Match", content = @Content),
+      @ApiResponse(responseCode = "403", description = "Permission denied", content = @Content),
       @ApiResponse(responseCode = "404", description = "Shortened URL not found", content = @Content)
   })
-  public ResponseEntity<AnalyticsResponse> getUrlAnalytics(@PathVariable String shortCode, Authentication authentication) {
-    String username = authentication.getName();
-    AnalyticsResponse analytics = analyticsService.getUrlAnalytics(shortCode, username);
-    return ResponseEntity.ok(analytics);
+  public ResponseEntity<AnalyticsResponse> getUrlAnalytics(@PathVariable String shortCode,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+      Authentication authentication) {
+    UUID userId = UserPrincipal.idOf(authentication);
+    AnalyticsCache.Entry analytics = analyticsCache.get(shortCode, userId, () -> analyticsService.getUrlAnalytics(shortCode, userId));
+    // Revalidate on every view; an unchanged result costs a cache lookup and an empty 304
+    CacheControl cacheControl = CacheControl.noCache().cachePrivate();
+    if (noneMatchFails(ifNoneMatch, analytics.getEtag())) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(analytics.getEtag()).cacheControl(cacheControl).build();
+    }
+    return ResponseEntity.ok().eTag(analytics.getEtag()).cacheControl(cacheControl).body(analytics.getResponse());
+  }
+
+  @GetMapping("/analytics/{shortCode}/export")
+  @Operation(summary = "Export raw clicks for a shortened URL", description = "Streams every click of the URL as NDJSON or CSV, optionally limited to a date range and gzip-compressed")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Click export stream"),
+      @ApiResponse(responseCode = "400", description = "Invalid format or date range", content = @Content),
+      @ApiResponse(responseCode = "403", description = "Permission denied", content = @Content),
+      @ApiResponse(responseCode = "404", description = "Shortened URL not found", content = @Content)
+  })
+  public ResponseEntity<StreamingResponseBody> exportClicks(
+      @PathVariable String shortCode,
+      @RequestParam(defaultValue = "ndjson") String format,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+      @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+      Authentication authentication) {
+    UUID userId = UserPrincipal.idOf(authentication);
+    ClickExportService.Format exportFormat = ClickExportService.Format.parse(format);
+    // Checked before the body streams, while a bad range can still be a 400
+    ClickExportService.checkRange(from, to);
+    UUID urlId = analyticsService.getOwnedUrlId(shortCode, userId);
+    boolean gzip = acceptsGzip(acceptEncoding);
+
+    StreamingResponseBody body = outputStream -> {
+      OutputStream out = gzip ? new GZIPOutputStream(outputStream, 64 * 1024) : outputStream;
+      clickExportService.writeClicks(shortCode, urlId, exportFormat, from, to, out);
+      if (gzip) {
+        ((GZIPOutputStream) out).finish();
+      }
+    };
+
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+        .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + shortCode + "-clicks." + exportFormat.getExtension() + "\"")
+        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    if (gzip) {
+      response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+    }
+    return response.body(body);
+  }
+
+  @GetMapping(value = "/analytics/{shortCode}/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  @Operation(summary = "Live clicks for a shortened URL", description = "Server-Sent Events stream with one 'click' event per new click")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Event stream"),
+      @ApiResponse(responseCode = "403", description = "Permission denied", content = @Content),
+      @ApiResponse(responseCode = "404", description = "Shortened URL not found", content = @Content),
+      @ApiResponse(responseCode = "429", description = "Too many live streams open", content = @Content)
+  })
+  public SseEmitter liveClicks(@PathVariable String shortCode, Authentication authentication) {
+    UUID userId = UserPrincipal.idOf(authentication);
+    UUID urlId = analyticsService.getOwnedUrlId(shortCode, userId);
+    return clickStreamHub.subscribe(urlId, userId);
   }
 
   @DeleteMapping("/{shortCode}")
@@ -87,8 +219,57 @@ public class UrlController {
       @ApiResponse(responseCode = "403", description = "Permission denied", content = @Content)
   })
   public ResponseEntity<Void> deleteUrl(@PathVariable String shortCode, Authentication authentication) {
-    String username = authentication.getName();
-    urlService.deleteUrl(shortCode, username);
+    UUID userId = UserPrincipal.idOf(authentication);
+    urlService.deleteUrl(shortCode, userId);
     return ResponseEntity.noContent().build();
   }
+
+  // If-None-Match may list several tags, weak or strong, or be "*"; for a GET they are compared
+  // weakly and "*" matches any current representation (RFC 9110, section 13.1.2)
+  private static boolean noneMatchFails(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    ETag current = ETag.create(etag);
+    for (ETag requested : ETag.parse(ifNoneMatch)) {
+      if (requested.isWildcard() || requested.compare(current, false)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // gzip unless Accept-Encoding weighs it at q=0, directly or through "*", or prefers identity
+  // (RFC 9110, section 12.5.3)
+  private static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    Double gzip = null;
+    double wildcard = -1;
+    double identity = -1;
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.split(";");
+      String name = parts[0].trim().toLowerCase(Locale.ROOT);
+      double quality = 1;
+      for (int i = 1; i < parts.length; i++) {
+        String parameter = parts[i].trim();
+        if (parameter.length() > 2 && parameter.regionMatches(true, 0, "q=", 0, 2)) {
+          try {
+            quality = Double.parseDouble(parameter.substring(2));
+          } catch (NumberFormatException e) {
+            quality = 0;
+          }
+        }
+      }
+      switch (name) {
+        case "gzip", "x-gzip" -> gzip = quality;
+        case "*" -> wildcard = quality;
+        case "identity" -> identity = quality;
+        default -> { }
+      }
+    }
+    double gzipQuality = gzip != null ? gzip : Math.max(wildcard, 0);
+    return gzipQuality > 0 && gzipQuality >= identity;
+  }
 }
@@ -0,0 +1,26 @@
+package com.urlshortener.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccountAnalyticsResponse implements Serializable {
+  private LocalDate from;
+  private LocalDate to;
+  private Long totalUrls;
+  private Long totalClicks;
+  private Map<String, Long> clicksByDay;
+  private List<LinkClicks> topLinks;
+  private Map<String, Long> topReferrers;
+  private Map<String, Long> topBrowsers;
+}
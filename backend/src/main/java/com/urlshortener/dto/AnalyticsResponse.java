@@ -19,7 +19,9 @@ public class AnalyticsResponse implements Serializable {
   private String shortUrl;
   private String longUrl;
   private Integer totalClicks;
+  private Long uniqueVisitors;
   private Map<String, Long> clicksByDay;
+  private Map<String, Long> uniqueVisitorsByDay;
   private Map<String, Long> referrerCounts;
   private Map<String, Long> browserCounts;
 }
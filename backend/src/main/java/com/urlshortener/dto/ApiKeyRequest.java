@@ -0,0 +1,24 @@
+package com.urlshortener.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Getter
+@Schema(description = "API key request body")
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ApiKeyRequest implements Serializable {
+
+  @NotBlank(message = "Name is required")
+  @Size(max = 100, message = "Name must be at most 100 characters")
+  @Schema(description = "Label for the key", example = "billing-service", requiredMode = Schema.RequiredMode.REQUIRED)
+  private String name;
+}
@@ -0,0 +1,31 @@
+package com.urlshortener.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.urlshortener.entity.ApiKeyTier;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Schema(description = "API key response body")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ApiKeyResponse implements Serializable {
+  private UUID id;
+  private String name;
+  private String prefix;
+  private ApiKeyTier tier;
+  private LocalDateTime createdAt;
+  @Schema(description = "The key itself, only returned when it is created")
+  private String key;
+}
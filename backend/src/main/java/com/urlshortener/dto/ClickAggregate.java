@@ -0,0 +1,43 @@
+package com.urlshortener.dto;
+
+import lombok.Getter;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Mergeable click counts over a set of URLs. Referrers and user agents are kept raw so partial
+ * aggregates from different partitions can be merged before they are bucketed for display.
+ */
+@Getter
+public class ClickAggregate {
+  private final Map<UUID, Long> clicksByUrl = new HashMap<>();
+  private final Map<LocalDate, Long> clicksByDay = new HashMap<>();
+  private final Map<String, Long> clicksByReferrer = new HashMap<>();
+  private final Map<String, Long> clicksByUserAgent = new HashMap<>();
+
+  public void add(ClickEvent click) {
+    clicksByUrl.merge(click.getUrlId(), 1L, Long::sum);
+    clicksByDay.merge(click.getClickedAt().toLocalDate(), 1L, Long::sum);
+    if (click.getReferrer() != null && !click.getReferrer().isEmpty()) {
+      clicksByReferrer.merge(click.getReferrer(), 1L, Long::sum);
+    }
+    if (click.getUserAgent() != null && !click.getUserAgent().isEmpty()) {
+      clicksByUserAgent.merge(click.getUserAgent(), 1L, Long::sum);
+    }
+  }
+
+  public ClickAggregate merge(ClickAggregate other) {
+    other.clicksByUrl.forEach((key, count) -> clicksByUrl.merge(key, count, Long::sum));
+    other.clicksByDay.forEach((key, count) -> clicksByDay.merge(key, count, Long::sum));
+    other.clicksByReferrer.forEach((key, count) -> clicksByReferrer.merge(key, count, Long::sum));
+    other.clicksByUserAgent.forEach((key, count) -> clicksByUserAgent.merge(key, count, Long::sum));
+    return this;
+  }
+
+  public long getTotalClicks() {
+    return clicksByUrl.values().stream().mapToLong(Long::longValue).sum();
+  }
+}
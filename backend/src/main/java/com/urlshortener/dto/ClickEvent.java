@@ -0,0 +1,22 @@
+package com.urlshortener.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClickEvent implements Serializable {
+  private UUID urlId;
+  private LocalDateTime clickedAt;
+  private String referrer;
+  private String userAgent;
+  private String ipAddress;
+}
@@ -0,0 +1,19 @@
+package com.urlshortener.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LinkClicks implements Serializable {
+  private String shortCode;
+  private String shortUrl;
+  private String longUrl;
+  private Long clicks;
+}
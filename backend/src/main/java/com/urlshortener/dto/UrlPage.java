@@ -0,0 +1,16 @@
+package com.urlshortener.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One page of a user's links and the cursor of the next page, null on the last page.
+ */
+@Getter
+@AllArgsConstructor
+public class UrlPage {
+  private List<UrlResponse> urls;
+  private String nextCursor;
+}
@@ -1,12 +1,15 @@
 package com.urlshortener.dto;
 
 import java.io.Serializable;
+import java.time.LocalDateTime;
 
 import org.hibernate.validator.constraints.URL;
 
 import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.Future;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Positive;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -17,10 +20,20 @@ import lombok.Setter;
 @Getter
 @Schema(description = "Shortened URL request body")
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class UrlRequest implements Serializable {
 
   @NotEmpty(message = "Original URL is required")
   @URL(message = "Invalid URL")
   @Schema(description = "Original URL", example = "https://www.example.com", requiredMode = Schema.RequiredMode.REQUIRED)
   private String longUrl;
+
+  @Future(message = "Expiry must be in the future")
+  @Schema(description = "When the link stops redirecting; never if omitted", example = "2030-01-01T00:00:00")
+  private LocalDateTime expiresAt;
+
+  @Positive(message = "Max clicks must be positive")
+  @Schema(description = "Number of redirects after which the link stops redirecting; unlimited if omitted", example = "100")
+  private Integer maxClicks;
 }
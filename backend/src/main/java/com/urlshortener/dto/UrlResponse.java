@@ -25,4 +25,6 @@ public class UrlResponse implements Serializable {
   private String longUrl;
   private LocalDateTime createdAt;
   private Integer clicks;
+  private LocalDateTime expiresAt;
+  private Integer maxClicks;
 }
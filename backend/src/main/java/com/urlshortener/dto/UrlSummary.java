@@ -0,0 +1,32 @@
+package com.urlshortener.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * The columns of a URL that lookups by short code need, with the owner's id for the permission
+ * check, read without loading the entity.
+ */
+@Getter
+@AllArgsConstructor
+public class UrlSummary {
+  private UUID id;
+  private UUID ownerId;
+  private String shortCode;
+  private String longUrl;
+  private Integer clicks;
+  private LocalDateTime createdAt;
+  private LocalDateTime expiresAt;
+  private Integer maxClicks;
+
+  /**
+   * Whether the link has passed its expiry time or used up its clicks, decided from the columns
+   * already read.
+   */
+  public boolean isExpired(LocalDateTime now) {
+    return (expiresAt != null && !expiresAt.isAfter(now)) || (maxClicks != null && clicks >= maxClicks);
+  }
+}
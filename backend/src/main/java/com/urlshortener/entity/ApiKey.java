@@ -0,0 +1,45 @@
+package com.urlshortener.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Long-lived credential for machine clients. Only a SHA-256 hash of the key is stored; the key
+ * itself is shown once, when it is created.
+ */
+@Builder
+@Getter
+@Setter
+@Entity
+@Table(name = "api_keys")
+@AllArgsConstructor
+@NoArgsConstructor
+public class ApiKey extends BaseEntity {
+
+  @ManyToOne(fetch = FetchType.LAZY)
+  @JoinColumn(name = "user_id", nullable = false)
+  private User user;
+
+  @Column(nullable = false, length = 100)
+  private String name;
+
+  @Column(name = "key_hash", nullable = false, unique = true, length = 64)
+  private String keyHash;
+
+  // First characters of the key, so its owner can tell keys apart
+  @Column(nullable = false, length = 12)
+  private String prefix;
+
+  @Enumerated(EnumType.STRING)
+  @Column(nullable = false, length = 20)
+  private ApiKeyTier tier;
+
+  @Column(name = "revoked_at")
+  private LocalDateTime revokedAt;
+}
@@ -0,0 +1,10 @@
+package com.urlshortener.entity;
+
+/**
+ * Rate limit tier of an API key. The request limits of each tier are configured under
+ * {@code rate.limit.api-key.*}.
+ */
+public enum ApiKeyTier {
+  STANDARD,
+  PREMIUM
+}
@@ -2,8 +2,6 @@ package com.urlshortener.entity;
 
 import java.time.LocalDateTime;
 
-import org.hibernate.annotations.CreationTimestamp;
-
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
@@ -27,6 +25,7 @@ import lombok.Setter;
 @Setter
 @Entity
 @Table(name = "click_analytics")
+@TimeOrderedIds
 @AllArgsConstructor
 @NoArgsConstructor
 public class ClickAnalytics extends BaseEntity{
@@ -44,7 +43,15 @@ public class ClickAnalytics extends BaseEntity{
   @Column(nullable = true)
   private String ipAddress;
 
+  // Set by the caller, so the row lands on the same day as the rest of the click's bookkeeping;
+  // @CreationTimestamp would overwrite it with the insert time
   @Column(name = "clicked_at", nullable = false)
-  @CreationTimestamp
   private LocalDateTime clickedAt;
+
+  @PrePersist
+  void defaultClickedAt() {
+    if (clickedAt == null) {
+      clickedAt = LocalDateTime.now();
+    }
+  }
 }
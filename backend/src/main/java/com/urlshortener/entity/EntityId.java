@@ -0,0 +1,18 @@
+package com.urlshortener.entity;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * UUID primary key generated by {@link EntityIdGenerator}: random by default, time-ordered for
+ * entities annotated with {@link TimeOrderedIds}.
+ */
+@IdGeneratorType(EntityIdGenerator.class)
+@Target({ ElementType.FIELD, ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface EntityId {
+}
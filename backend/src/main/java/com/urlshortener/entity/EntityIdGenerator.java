@@ -0,0 +1,49 @@
+package com.urlshortener.entity;
+
+import com.urlshortener.util.TimeOrderedUuid;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
+import org.hibernate.mapping.PersistentClass;
+
+import java.lang.reflect.Member;
+import java.util.EnumSet;
+import java.util.UUID;
+
+/**
+ * Chooses the id scheme once per entity when the mapping is built. {@link BaseEntity} declares a
+ * single id for every table, so the choice is made from the concrete entity class.
+ */
+public class EntityIdGenerator implements BeforeExecutionGenerator {
+
+  private final boolean timeOrdered;
+
+  public EntityIdGenerator(EntityId config, Member idMember, CustomIdGeneratorCreationContext context) {
+    this(isTimeOrdered(context.getPersistentClass()));
+  }
+
+  EntityIdGenerator(boolean timeOrdered) {
+    this.timeOrdered = timeOrdered;
+  }
+
+  @Override
+  public Object generate(SharedSessionContractImplementor session, Object owner, Object currentValue, EventType eventType) {
+    return timeOrdered ? TimeOrderedUuid.next() : UUID.randomUUID();
+  }
+
+  @Override
+  public EnumSet<EventType> getEventTypes() {
+    return EventTypeSets.INSERT_ONLY;
+  }
+
+  public boolean isTimeOrdered() {
+    return timeOrdered;
+  }
+
+  static boolean isTimeOrdered(PersistentClass persistentClass) {
+    Class<?> entity = persistentClass != null ? persistentClass.getMappedClass() : null;
+    return entity != null && entity.isAnnotationPresent(TimeOrderedIds.class);
+  }
+}
@@ -0,0 +1,15 @@
+package com.urlshortener.entity;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Gives an entity time-ordered (version 7) UUIDs instead of random ones. Meant for insert-heavy
+ * tables, where random keys scatter inserts over the whole primary key index.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface TimeOrderedIds {
+}
@@ -13,12 +13,15 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.SQLRestriction;
 
 @Builder
 @Getter
 @Setter
 @Entity
 @Table(name = "urls")
+// Deleted links stay until UrlPurger has removed their clicks; entity queries never see them
+@SQLRestriction("deleted_at IS NULL")
 @AllArgsConstructor
 @NoArgsConstructor
 public class Url extends BaseEntity {
@@ -37,6 +40,17 @@ public class Url extends BaseEntity {
   @ColumnDefault("0")
   private Integer clicks;
 
-  @OneToMany(mappedBy = "url", cascade = CascadeType.ALL)
+  // Either limit ends the link: redirects answer 410 and UrlExpirySweeper deletes it later
+  @Column(name = "expires_at")
+  private LocalDateTime expiresAt;
+
+  @Column(name = "max_clicks")
+  private Integer maxClicks;
+
+  @Column(name = "deleted_at")
+  private LocalDateTime deletedAt;
+
+  // No cascade: removing a link's clicks is UrlPurger's job, in batches outside the request
+  @OneToMany(mappedBy = "url")
   private List<ClickAnalytics> clickAnalytics;
 }
\ No newline at end of file
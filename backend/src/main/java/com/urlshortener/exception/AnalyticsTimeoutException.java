@@ -0,0 +1,16 @@
+package com.urlshortener.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class AnalyticsTimeoutException extends RuntimeException {
+
+  public AnalyticsTimeoutException(String message) {
+    super(message);
+  }
+
+  public AnalyticsTimeoutException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
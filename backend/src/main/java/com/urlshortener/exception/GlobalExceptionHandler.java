@@ -1,6 +1,7 @@
 package com.urlshortener.exception;
 
 import jakarta.validation.ConstraintViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.BadCredentialsException;
@@ -39,6 +40,39 @@ public class GlobalExceptionHandler {
     return new ResponseEntity<>(errorResponse, HttpStatus.UNAUTHORIZED);
   }
 
+  @ExceptionHandler(ForbiddenException.class)
+  public ResponseEntity<ErrorResponse> handleForbiddenException(ForbiddenException ex, WebRequest request) {
+    ErrorResponse errorResponse = new ErrorResponse(
+        HttpStatus.FORBIDDEN.value(),
+        ex.getMessage(),
+        request.getDescription(false),
+        LocalDateTime.now()
+    );
+    return new ResponseEntity<>(errorResponse, HttpStatus.FORBIDDEN);
+  }
+
+  @ExceptionHandler(GoneException.class)
+  public ResponseEntity<ErrorResponse> handleGoneException(GoneException ex, WebRequest request) {
+    ErrorResponse errorResponse = new ErrorResponse(
+        HttpStatus.GONE.value(),
+        ex.getMessage(),
+        request.getDescription(false),
+        LocalDateTime.now()
+    );
+    return new ResponseEntity<>(errorResponse, HttpStatus.GONE);
+  }
+
+  @ExceptionHandler(TooManyRequestsException.class)
+  public ResponseEntity<ErrorResponse> handleTooManyRequestsException(TooManyRequestsException ex, WebRequest request) {
+    ErrorResponse errorResponse = new ErrorResponse(
+        HttpStatus.TOO_MANY_REQUESTS.value(),
+        ex.getMessage(),
+        request.getDescription(false),
+        LocalDateTime.now()
+    );
+    return new ResponseEntity<>(errorResponse, HttpStatus.TOO_MANY_REQUESTS);
+  }
+
   @ExceptionHandler(BadCredentialsException.class)
   public ResponseEntity<ErrorResponse> handleBadCredentialsException(BadCredentialsException ex, WebRequest request) {
     ErrorResponse errorResponse = new ErrorResponse(
@@ -79,6 +113,30 @@ public class GlobalExceptionHandler {
     return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
   }
 
+  @ExceptionHandler(ServiceOverloadedException.class)
+  public ResponseEntity<ErrorResponse> handleServiceOverloadedException(ServiceOverloadedException ex, WebRequest request) {
+    ErrorResponse errorResponse = new ErrorResponse(
+        HttpStatus.SERVICE_UNAVAILABLE.value(),
+        ex.getMessage(),
+        request.getDescription(false),
+        LocalDateTime.now()
+    );
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, Long.toString(ex.getRetryAfterSeconds()))
+        .body(errorResponse);
+  }
+
+  @ExceptionHandler(AnalyticsTimeoutException.class)
+  public ResponseEntity<ErrorResponse> handleAnalyticsTimeoutException(AnalyticsTimeoutException ex, WebRequest request) {
+    ErrorResponse errorResponse = new ErrorResponse(
+        HttpStatus.SERVICE_UNAVAILABLE.value(),
+        ex.getMessage(),
+        request.getDescription(false),
+        LocalDateTime.now()
+    );
+    return new ResponseEntity<>(errorResponse, HttpStatus.SERVICE_UNAVAILABLE);
+  }
+
   @ExceptionHandler(IllegalArgumentException.class)
   public ResponseEntity<ErrorResponse> handleIllegalArgumentException(IllegalArgumentException ex, WebRequest request) {
     ErrorResponse errorResponse = new ErrorResponse(
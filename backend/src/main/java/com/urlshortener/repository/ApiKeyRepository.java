@@ -0,0 +1,21 @@
+package com.urlshortener.repository;
+
+import com.urlshortener.entity.ApiKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface ApiKeyRepository extends JpaRepository<ApiKey, UUID> {
+
+  @Query("SELECT k FROM ApiKey k JOIN FETCH k.user WHERE k.revokedAt IS NULL")
+  List<ApiKey> findAllActive();
+
+  List<ApiKey> findByUserIdAndRevokedAtIsNullOrderByCreatedAtDesc(UUID userId);
+
+  Optional<ApiKey> findByIdAndUserId(UUID id, UUID userId);
+}
@@ -2,11 +2,14 @@ package com.urlshortener.repository;
 
 import com.urlshortener.entity.ClickAnalytics;
 import com.urlshortener.entity.Url;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -14,6 +17,45 @@ import java.util.UUID;
 public interface ClickAnalyticsRepository extends JpaRepository<ClickAnalytics, UUID> {
   List<ClickAnalytics> findByUrl(Url url);
 
+  /**
+   * One page of a URL's clicks in {@code [startDate, endDate]}, in {@code (clickedAt, id)} order and
+   * strictly after that position, as {@code id, clickedAt, referrer, userAgent, ipAddress}. Each
+   * page is a short query of its own, so walking any number of clicks keeps no connection between
+   * pages.
+   */
+  @Query("SELECT c.id, c.clickedAt, c.referrer, c.userAgent, c.ipAddress FROM ClickAnalytics c " +
+      "WHERE c.url.id = :urlId AND c.clickedAt BETWEEN :startDate AND :endDate " +
+      "AND (c.clickedAt > :afterClickedAt OR (c.clickedAt = :afterClickedAt AND c.id > :afterId)) " +
+      "ORDER BY c.clickedAt, c.id")
+  List<Object[]> findPageByUrlIdAndDateRange(UUID urlId, LocalDateTime startDate, LocalDateTime endDate,
+      LocalDateTime afterClickedAt, UUID afterId, Pageable pageable);
+
+  @Query("SELECT c.url.id, COUNT(c) FROM ClickAnalytics c " +
+      "WHERE c.url.id IN :urlIds AND c.clickedAt BETWEEN :startDate AND :endDate GROUP BY c.url.id")
+  List<Object[]> countByUrl(Collection<UUID> urlIds, LocalDateTime startDate, LocalDateTime endDate);
+
+  @Query("SELECT CAST(c.clickedAt AS LocalDate), COUNT(c) FROM ClickAnalytics c " +
+      "WHERE c.url.id IN :urlIds AND c.clickedAt BETWEEN :startDate AND :endDate GROUP BY CAST(c.clickedAt AS LocalDate)")
+  List<Object[]> countByDay(Collection<UUID> urlIds, LocalDateTime startDate, LocalDateTime endDate);
+
+  @Query("SELECT c.referrer, COUNT(c) FROM ClickAnalytics c " +
+      "WHERE c.url.id IN :urlIds AND c.clickedAt BETWEEN :startDate AND :endDate AND c.referrer <> '' GROUP BY c.referrer")
+  List<Object[]> countByReferrer(Collection<UUID> urlIds, LocalDateTime startDate, LocalDateTime endDate);
+
+  @Query("SELECT c.userAgent, COUNT(c) FROM ClickAnalytics c " +
+      "WHERE c.url.id IN :urlIds AND c.clickedAt BETWEEN :startDate AND :endDate AND c.userAgent <> '' GROUP BY c.userAgent")
+  List<Object[]> countByUserAgent(Collection<UUID> urlIds, LocalDateTime startDate, LocalDateTime endDate);
+
   @Query("SELECT COUNT(c) FROM ClickAnalytics c WHERE c.url = :url AND c.clickedAt BETWEEN :startDate AND :endDate")
   long countByUrlAndDateRange(Url url, LocalDateTime startDate, LocalDateTime endDate);
+
+  /**
+   * Delete up to {@code limit} clicks of a deleted URL in one set-based statement, without loading
+   * them. Returns the number deleted; fewer than {@code limit} means none are left.
+   */
+  @Modifying
+  @Query(value = "DELETE FROM click_analytics WHERE id IN (SELECT c.id FROM click_analytics c " +
+      "JOIN urls u ON u.id = c.url_id WHERE u.short_code = :shortCode AND u.deleted_at IS NOT NULL LIMIT :limit)",
+      nativeQuery = true)
+  int deleteBatchOfDeletedUrl(String shortCode, int limit);
 }
@@ -0,0 +1,46 @@
+package com.urlshortener.repository;
+
+import com.urlshortener.dto.ClickAggregate;
+import com.urlshortener.dto.ClickEvent;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Storage engine for raw click events. The implementation is chosen with {@code analytics.click-store}:
+ * {@code jpa} (default) keeps one row per click in {@code click_analytics}, {@code segment} appends
+ * fixed-size binary records to rolling segment files.
+ */
+public interface ClickStore {
+
+  /**
+   * Bounds for an all-time scan that every backing store can represent.
+   */
+  LocalDateTime ALL_TIME_FROM = LocalDateTime.of(1970, 1, 1, 0, 0);
+  LocalDateTime ALL_TIME_TO = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+  /**
+   * Persist a single click.
+   */
+  void record(ClickEvent click);
+
+  /**
+   * Stream every click of a URL whose timestamp lies in {@code [from, to]} to the consumer,
+   * without materializing the result.
+   */
+  void scan(UUID urlId, LocalDateTime from, LocalDateTime to, Consumer<ClickEvent> consumer);
+
+  /**
+   * Count clicks of several URLs in {@code [from, to]}. The default walks every click; stores that
+   * can group server-side should override it.
+   */
+  default ClickAggregate aggregate(Collection<UUID> urlIds, LocalDateTime from, LocalDateTime to) {
+    ClickAggregate aggregate = new ClickAggregate();
+    for (UUID urlId : urlIds) {
+      scan(urlId, from, to, aggregate::add);
+    }
+    return aggregate;
+  }
+}
@@ -0,0 +1,90 @@
+package com.urlshortener.repository;
+
+import com.urlshortener.dto.ClickAggregate;
+import com.urlshortener.dto.ClickEvent;
+import com.urlshortener.entity.ClickAnalytics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+@Repository
+@ConditionalOnProperty(name = "analytics.click-store", havingValue = "jpa", matchIfMissing = true)
+public class JpaClickStore implements ClickStore {
+
+  private static final int SCAN_PAGE_SIZE = 1000;
+
+  private final ClickAnalyticsRepository clickAnalyticsRepository;
+  private final UrlRepository urlRepository;
+
+  public JpaClickStore(ClickAnalyticsRepository clickAnalyticsRepository, UrlRepository urlRepository) {
+    this.clickAnalyticsRepository = clickAnalyticsRepository;
+    this.urlRepository = urlRepository;
+  }
+
+  @Override
+  @Transactional
+  public void record(ClickEvent click) {
+    ClickAnalytics analytics = ClickAnalytics.builder()
+        .url(urlRepository.getReferenceById(click.getUrlId()))
+        .referrer(click.getReferrer())
+        .userAgent(click.getUserAgent())
+        .ipAddress(click.getIpAddress())
+        .clickedAt(click.getClickedAt())
+        .build();
+    clickAnalyticsRepository.save(analytics);
+  }
+
+  /**
+   * Walks the clicks in keyset pages of {@value #SCAN_PAGE_SIZE}. Outside a transaction each page
+   * borrows a connection only for its own query, so a slow consumer such as an export download
+   * does not hold one for the whole walk.
+   */
+  @Override
+  public void scan(UUID urlId, LocalDateTime from, LocalDateTime to, Consumer<ClickEvent> consumer) {
+    // Just before the range, so the first page starts at its beginning
+    LocalDateTime afterClickedAt = from.minusNanos(1);
+    UUID afterId = new UUID(0, 0);
+    List<Object[]> page;
+    do {
+      page = clickAnalyticsRepository.findPageByUrlIdAndDateRange(urlId, from, to, afterClickedAt, afterId,
+          PageRequest.of(0, SCAN_PAGE_SIZE));
+      for (Object[] row : page) {
+        consumer.accept(new ClickEvent(urlId, (LocalDateTime) row[1], (String) row[2], (String) row[3], (String) row[4]));
+      }
+      if (!page.isEmpty()) {
+        Object[] last = page.get(page.size() - 1);
+        afterId = (UUID) last[0];
+        afterClickedAt = (LocalDateTime) last[1];
+      }
+    } while (page.size() == SCAN_PAGE_SIZE);
+  }
+
+  /**
+   * Grouped queries instead of a row walk: the database returns one row per group, not per click.
+   */
+  @Override
+  @Transactional(readOnly = true)
+  public ClickAggregate aggregate(Collection<UUID> urlIds, LocalDateTime from, LocalDateTime to) {
+    ClickAggregate aggregate = new ClickAggregate();
+    if (urlIds.isEmpty()) {
+      return aggregate;
+    }
+    clickAnalyticsRepository.countByUrl(urlIds, from, to)
+        .forEach(row -> aggregate.getClicksByUrl().put((UUID) row[0], (Long) row[1]));
+    clickAnalyticsRepository.countByDay(urlIds, from, to)
+        .forEach(row -> aggregate.getClicksByDay().put((LocalDate) row[0], (Long) row[1]));
+    clickAnalyticsRepository.countByReferrer(urlIds, from, to)
+        .forEach(row -> aggregate.getClicksByReferrer().put((String) row[0], (Long) row[1]));
+    clickAnalyticsRepository.countByUserAgent(urlIds, from, to)
+        .forEach(row -> aggregate.getClicksByUserAgent().put((String) row[0], (Long) row[1]));
+    return aggregate;
+  }
+}
@@ -1,12 +1,16 @@
 package com.urlshortener.repository;
 
+import com.urlshortener.dto.UrlSummary;
 import com.urlshortener.entity.Url;
 import com.urlshortener.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -14,13 +18,95 @@ import java.util.UUID;
 @Repository
 public interface UrlRepository extends JpaRepository<Url, UUID> {
   Optional<Url> findByShortCode(String shortCode);
+
+  /**
+   * One statement for the URL and its owner's id: empty means no such URL, another owner means the
+   * caller may not see it.
+   */
+  @Query("SELECT new com.urlshortener.dto.UrlSummary(u.id, u.user.id, u.shortCode, u.longUrl, u.clicks, u.createdAt, " +
+      "u.expiresAt, u.maxClicks) " +
+      "FROM Url u WHERE u.shortCode = :shortCode")
+  Optional<UrlSummary> findSummaryByShortCode(String shortCode);
   List<Url> findByUser(User user);
 
+  // Explicit queries compare the foreign key column; the derived form joins users, which shards
+  // other than the first do not have
+  @Query("SELECT u FROM Url u WHERE u.user.id = :userId")
+  List<Url> findByUserId(UUID userId);
+
+  /**
+   * A page of a user's links, newest first, strictly after the {@code (createdAt, id)} cursor. The
+   * redundant {@code createdAt <=} bound lets the database start the index scan at the cursor.
+   */
+  @Query("SELECT u FROM Url u WHERE u.user.id = :userId AND u.createdAt <= :createdAt " +
+      "AND (u.createdAt < :createdAt OR (u.createdAt = :createdAt AND u.id < :id)) " +
+      "ORDER BY u.createdAt DESC, u.id DESC")
+  List<Url> findPageByUserId(UUID userId, LocalDateTime createdAt, UUID id, Pageable pageable);
+
+  /**
+   * As {@link #findPageByUserId}, keeping links whose short code or long URL starts with the
+   * {@code LIKE} pattern {@code prefix}.
+   */
+  @Query("SELECT u FROM Url u WHERE u.user.id = :userId AND u.createdAt <= :createdAt " +
+      "AND (u.createdAt < :createdAt OR (u.createdAt = :createdAt AND u.id < :id)) " +
+      "AND (u.shortCode LIKE :prefix ESCAPE '!' OR u.longUrl LIKE :prefix ESCAPE '!') " +
+      "ORDER BY u.createdAt DESC, u.id DESC")
+  List<Url> searchPageByUserId(UUID userId, LocalDateTime createdAt, UUID id, String prefix, Pageable pageable);
+
+  @Query("SELECT u.id FROM Url u WHERE u.user.id = :userId")
+  List<UUID> findIdsByUserId(UUID userId);
+
+  @Query("SELECT u.shortCode, u.clicks FROM Url u WHERE u.user.id = :userId")
+  List<Object[]> findClicksByUserId(UUID userId);
+
+  List<Url> findByShortCodeIn(Collection<String> shortCodes);
+
+  @Query("SELECT u FROM Url u WHERE u.user.id = :userId ORDER BY u.clicks DESC")
+  List<Url> findByUserIdOrderByClicksDesc(UUID userId, Pageable pageable);
+
+  /**
+   * Count a click unless the link's click cap is used up; returns 0 when it was. The click that
+   * reaches the cap also stamps {@code expiresAt}, so the sweeper finds capped links by its index.
+   */
   @Modifying
-  @Query("UPDATE Url u SET u.clicks = u.clicks + 1 WHERE u.shortCode = :shortCode")
-  void incrementClicks(String shortCode);
+  @Query("UPDATE Url u SET u.clicks = u.clicks + 1, " +
+      "u.expiresAt = CASE WHEN u.clicks + 1 >= u.maxClicks THEN :now ELSE u.expiresAt END " +
+      "WHERE u.shortCode = :shortCode AND (u.maxClicks IS NULL OR u.clicks < u.maxClicks)")
+  int incrementClicks(String shortCode, LocalDateTime now);
 
+  /**
+   * Links that expired before {@code cutoff}, oldest first, as short code and owner id; a range
+   * scan of the {@code (deleted_at, expires_at)} index.
+   */
+  @Query("SELECT u.shortCode, u.user.id FROM Url u WHERE u.expiresAt < :cutoff ORDER BY u.expiresAt")
+  List<Object[]> findExpired(LocalDateTime cutoff, Pageable pageable);
+
+  @Modifying
+  @Query("UPDATE Url u SET u.deletedAt = :deletedAt WHERE u.shortCode IN :shortCodes AND u.deletedAt IS NULL")
+  int markDeletedByShortCodes(Collection<String> shortCodes, LocalDateTime deletedAt);
+
+  // Native, so that the codes of deleted links still waiting to be purged count as taken
+  @Query(value = "SELECT COUNT(*) > 0 FROM urls WHERE short_code = :shortCode", nativeQuery = true)
   boolean existsByShortCode(String shortCode);
 
-  Optional<Url> findByLongUrlAndUser(String longUrl, User user);
+  /**
+   * Soft delete: the link disappears from every entity query at once, and UrlPurger removes it
+   * and its clicks later.
+   */
+  @Modifying
+  @Query("UPDATE Url u SET u.deletedAt = :deletedAt WHERE u.id = :id AND u.deletedAt IS NULL")
+  int markDeleted(UUID id, LocalDateTime deletedAt);
+
+  @Query(value = "SELECT short_code FROM urls WHERE deleted_at IS NOT NULL ORDER BY deleted_at LIMIT :limit", nativeQuery = true)
+  List<String> findDeletedShortCodes(int limit);
+
+  @Modifying
+  @Query(value = "DELETE FROM urls WHERE short_code = :shortCode AND deleted_at IS NOT NULL", nativeQuery = true)
+  int purgeDeleted(String shortCode);
+
+  /**
+   * The user's unlimited links to a URL, the only ones shared between shorten requests. Limited
+   * links are always new rows, so a user may own several links to the same URL.
+   */
+  List<Url> findByLongUrlAndUserAndExpiresAtIsNullAndMaxClicksIsNull(String longUrl, User user);
 }
@@ -0,0 +1,150 @@
+package com.urlshortener.repository.clicklog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.UUID;
+
+/**
+ * One file of fixed-size click records. Layout of a 64 byte record:
+ * <pre>
+ *  0  url id, most significant bits   (long)
+ *  8  url id, least significant bits  (long)
+ * 16  clicked at, epoch millis        (long)
+ * 24  user agent dictionary id        (int, -1 for none)
+ * 28  referrer dictionary id          (int, -1 for none)
+ * 32  ip address length               (byte, 0, 4 or 16)
+ * 33  ip address bytes                (16 bytes)
+ * 49  reserved
+ * </pre>
+ * The newest segment is appended to; older ones are sealed, memory-mapped read-only and carry
+ * their sparse index in a sidecar {@code .idx} file.
+ */
+class ClickLogSegment implements AutoCloseable {
+
+  static final int RECORD_SIZE = 64;
+  static final int IP_OFFSET = 33;
+
+  interface RecordVisitor {
+    void visit(ByteBuffer buffer, int offset);
+  }
+
+  private final Path file;
+  private final FileChannel channel;
+  private final SegmentIndex index;
+  private volatile long records;
+  private volatile MappedByteBuffer sealedView;
+
+  private ClickLogSegment(Path file, FileChannel channel, SegmentIndex index, long records) {
+    this.file = file;
+    this.channel = channel;
+    this.index = index;
+    this.records = records;
+  }
+
+  static ClickLogSegment open(Path file) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    long records = channel.size() / RECORD_SIZE;
+    // Drop a torn trailing record left behind by a crash mid-write
+    if (channel.size() != records * RECORD_SIZE) {
+      channel.truncate(records * RECORD_SIZE);
+    }
+    Path indexFile = indexFile(file);
+    if (Files.exists(indexFile)) {
+      ClickLogSegment segment = new ClickLogSegment(file, channel, SegmentIndex.readFrom(indexFile), records);
+      segment.sealedView = channel.map(FileChannel.MapMode.READ_ONLY, 0, records * RECORD_SIZE);
+      return segment;
+    }
+    ClickLogSegment segment = new ClickLogSegment(file, channel, new SegmentIndex(), records);
+    segment.rebuildIndex();
+    return segment;
+  }
+
+  /**
+   * Append one encoded record. Callers serialize appends.
+   */
+  void append(ByteBuffer record, UUID urlId, long timestamp) throws IOException {
+    long position = records * RECORD_SIZE;
+    while (record.hasRemaining()) {
+      position += channel.write(record, position);
+    }
+    index.add(records, urlId, timestamp);
+    records++;
+  }
+
+  long sizeInBytes() {
+    return records * RECORD_SIZE;
+  }
+
+  boolean isSealed() {
+    return sealedView != null;
+  }
+
+  /**
+   * Flush, persist the sparse index and switch to a read-only mapping.
+   */
+  void seal() throws IOException {
+    channel.force(false);
+    index.writeTo(indexFile(file));
+    sealedView = channel.map(FileChannel.MapMode.READ_ONLY, 0, sizeInBytes());
+  }
+
+  void force() throws IOException {
+    channel.force(false);
+  }
+
+  /**
+   * Visit every record of the URL in {@code [from, to]}, walking candidate blocks sequentially.
+   */
+  void scan(UUID urlId, long from, long to, RecordVisitor visitor) throws IOException {
+    BitSet blocks = index.candidateBlocks(urlId, from, to);
+    if (blocks.isEmpty()) {
+      return;
+    }
+    long visible = records;
+    ByteBuffer view = sealedView != null
+        ? sealedView.duplicate()
+        : channel.map(FileChannel.MapMode.READ_ONLY, 0, visible * RECORD_SIZE);
+    long msb = urlId.getMostSignificantBits();
+    long lsb = urlId.getLeastSignificantBits();
+    for (int block = blocks.nextSetBit(0); block >= 0; block = blocks.nextSetBit(block + 1)) {
+      long first = (long) block * SegmentIndex.BLOCK_RECORDS;
+      long last = Math.min(first + SegmentIndex.BLOCK_RECORDS, visible);
+      for (long record = first; record < last; record++) {
+        int offset = (int) (record * RECORD_SIZE);
+        if (view.getLong(offset) != msb || view.getLong(offset + 8) != lsb) {
+          continue;
+        }
+        long timestamp = view.getLong(offset + 16);
+        if (timestamp >= from && timestamp <= to) {
+          visitor.visit(view, offset);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private void rebuildIndex() throws IOException {
+    if (records == 0) {
+      return;
+    }
+    MappedByteBuffer view = channel.map(FileChannel.MapMode.READ_ONLY, 0, records * RECORD_SIZE);
+    for (long record = 0; record < records; record++) {
+      int offset = (int) (record * RECORD_SIZE);
+      index.add(record, new UUID(view.getLong(offset), view.getLong(offset + 8)), view.getLong(offset + 16));
+    }
+  }
+
+  private static Path indexFile(Path segmentFile) {
+    return segmentFile.resolveSibling(segmentFile.getFileName().toString().replace(".log", ".idx"));
+  }
+}
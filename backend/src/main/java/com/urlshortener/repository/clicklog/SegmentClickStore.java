@@ -0,0 +1,192 @@
+package com.urlshortener.repository.clicklog;
+
+import com.urlshortener.dto.ClickEvent;
+import com.urlshortener.repository.ClickStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Click store backed by an append-only binary log of rolling segment files, enabled with
+ * {@code analytics.click-store=segment}. Writes are a single positional write of a 64 byte record;
+ * reads walk memory-mapped segments guided by each segment's sparse URL/time index.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "analytics.click-store", havingValue = "segment")
+public class SegmentClickStore implements ClickStore {
+
+  private static final Pattern IP_LITERAL = Pattern.compile("^[0-9a-fA-F:.]+$");
+  private static final String SEGMENT_SUFFIX = ".log";
+
+  @Value("${analytics.segment.dir:./data/clicks}")
+  private String directory;
+
+  @Value("${analytics.segment.max-bytes:67108864}")
+  private long maxSegmentBytes;
+
+  @Value("${analytics.segment.dictionary.max-entries:100000}")
+  private int maxDictionaryEntries;
+
+  @Value("${analytics.segment.dictionary.max-value-length:256}")
+  private int maxDictionaryValueLength;
+
+  private final List<ClickLogSegment> segments = new CopyOnWriteArrayList<>();
+  private Path root;
+  private StringDictionary dictionary;
+  private ClickLogSegment active;
+  private long nextSegmentNumber;
+
+  @PostConstruct
+  void open() throws IOException {
+    // Records are addressed with int offsets into a segment's mapping
+    if (maxSegmentBytes < ClickLogSegment.RECORD_SIZE || maxSegmentBytes > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("analytics.segment.max-bytes must be between "
+          + ClickLogSegment.RECORD_SIZE + " and " + Integer.MAX_VALUE);
+    }
+    root = Paths.get(directory);
+    Files.createDirectories(root);
+    dictionary = new StringDictionary(root.resolve("dictionary.dat"), maxDictionaryEntries, maxDictionaryValueLength);
+    try (Stream<Path> files = Files.list(root)) {
+      List<Path> segmentFiles = files
+          .filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+          .sorted()
+          .toList();
+      for (Path file : segmentFiles) {
+        segments.add(ClickLogSegment.open(file));
+        nextSegmentNumber = segmentNumber(file) + 1;
+      }
+    }
+    ClickLogSegment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+    active = last != null && !last.isSealed() ? last : roll();
+    log.info("Opened click log at {} with {} segment(s)", root.toAbsolutePath(), segments.size());
+  }
+
+  @PreDestroy
+  void close() throws IOException {
+    synchronized (this) {
+      dictionary.force();
+      active.force();
+      for (ClickLogSegment segment : segments) {
+        segment.close();
+      }
+      dictionary.close();
+    }
+  }
+
+  @Override
+  public void record(ClickEvent click) {
+    long timestamp = toEpochMillis(click.getClickedAt() != null ? click.getClickedAt() : LocalDateTime.now());
+    try {
+      ByteBuffer record = ByteBuffer.allocate(ClickLogSegment.RECORD_SIZE);
+      record.putLong(click.getUrlId().getMostSignificantBits())
+          .putLong(click.getUrlId().getLeastSignificantBits())
+          .putLong(timestamp)
+          .putInt(dictionary.idOf(click.getUserAgent()))
+          .putInt(dictionary.idOf(click.getReferrer()));
+      byte[] ip = ipBytes(click.getIpAddress());
+      record.put((byte) ip.length).put(ip);
+      record.clear();
+      synchronized (this) {
+        if (active.sizeInBytes() + ClickLogSegment.RECORD_SIZE > maxSegmentBytes) {
+          active.seal();
+          active = roll();
+        }
+        active.append(record, click.getUrlId(), timestamp);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not append click for " + click.getUrlId(), e);
+    }
+  }
+
+  @Override
+  public void scan(UUID urlId, LocalDateTime from, LocalDateTime to, Consumer<ClickEvent> consumer) {
+    long fromMillis = toEpochMillis(from);
+    long toMillis = toEpochMillis(to);
+    try {
+      for (ClickLogSegment segment : segments) {
+        segment.scan(urlId, fromMillis, toMillis, (buffer, offset) -> consumer.accept(decode(urlId, buffer, offset)));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not scan clicks for " + urlId, e);
+    }
+  }
+
+  private ClickLogSegment roll() throws IOException {
+    Path file = root.resolve(String.format("clicks-%020d%s", nextSegmentNumber++, SEGMENT_SUFFIX));
+    ClickLogSegment segment = ClickLogSegment.open(file);
+    segments.add(segment);
+    return segment;
+  }
+
+  private ClickEvent decode(UUID urlId, ByteBuffer buffer, int offset) {
+    return ClickEvent.builder()
+        .urlId(urlId)
+        .clickedAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(buffer.getLong(offset + 16)), ZoneId.systemDefault()))
+        .userAgent(dictionary.valueOf(buffer.getInt(offset + 24)))
+        .referrer(dictionary.valueOf(buffer.getInt(offset + 28)))
+        .ipAddress(ipString(buffer, offset))
+        .build();
+  }
+
+  private static byte[] ipBytes(String ipAddress) {
+    // getByName does not touch DNS for literals; anything else is not worth storing
+    if (ipAddress == null || !IP_LITERAL.matcher(ipAddress).matches()) {
+      return new byte[0];
+    }
+    try {
+      return InetAddress.getByName(ipAddress).getAddress();
+    } catch (UnknownHostException e) {
+      return new byte[0];
+    }
+  }
+
+  private static String ipString(ByteBuffer buffer, int offset) {
+    int length = buffer.get(offset + 32);
+    if (length == 0) {
+      return null;
+    }
+    byte[] ip = new byte[length];
+    buffer.get(offset + ClickLogSegment.IP_OFFSET, ip);
+    try {
+      return InetAddress.getByAddress(ip).getHostAddress();
+    } catch (UnknownHostException e) {
+      return null;
+    }
+  }
+
+  private static long toEpochMillis(LocalDateTime time) {
+    try {
+      return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    } catch (ArithmeticException e) {
+      // Open-ended ranges such as LocalDateTime.MIN/MAX
+      return time.getYear() < 1970 ? Long.MIN_VALUE : Long.MAX_VALUE;
+    }
+  }
+
+  private static long segmentNumber(Path file) {
+    String name = file.getFileName().toString();
+    return Long.parseLong(name.substring("clicks-".length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+}
@@ -0,0 +1,116 @@
+package com.urlshortener.repository.clicklog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Sparse index for one segment: which fixed-size blocks contain records of a URL, and the
+ * timestamp range of every block. A scan only touches blocks that match both the URL and the range.
+ */
+class SegmentIndex {
+
+  static final int BLOCK_RECORDS = 1024;
+
+  private final Map<UUID, BitSet> blocksByUrl = new HashMap<>();
+  private long[] blockMin = new long[16];
+  private long[] blockMax = new long[16];
+  private int blockCount;
+  private long minTimestamp = Long.MAX_VALUE;
+  private long maxTimestamp = Long.MIN_VALUE;
+
+  synchronized void add(long recordNumber, UUID urlId, long timestamp) {
+    int block = (int) (recordNumber / BLOCK_RECORDS);
+    if (block >= blockCount) {
+      if (block >= blockMin.length) {
+        blockMin = Arrays.copyOf(blockMin, blockMin.length * 2);
+        blockMax = Arrays.copyOf(blockMax, blockMax.length * 2);
+      }
+      blockMin[block] = Long.MAX_VALUE;
+      blockMax[block] = Long.MIN_VALUE;
+      blockCount = block + 1;
+    }
+    blockMin[block] = Math.min(blockMin[block], timestamp);
+    blockMax[block] = Math.max(blockMax[block], timestamp);
+    minTimestamp = Math.min(minTimestamp, timestamp);
+    maxTimestamp = Math.max(maxTimestamp, timestamp);
+    blocksByUrl.computeIfAbsent(urlId, id -> new BitSet()).set(block);
+  }
+
+  /**
+   * Blocks holding records of the URL within {@code [from, to]}; a private copy safe to iterate
+   * while the segment keeps growing.
+   */
+  synchronized BitSet candidateBlocks(UUID urlId, long from, long to) {
+    BitSet blocks = blocksByUrl.get(urlId);
+    if (blocks == null || maxTimestamp < from || minTimestamp > to) {
+      return new BitSet();
+    }
+    BitSet candidates = (BitSet) blocks.clone();
+    for (int block = candidates.nextSetBit(0); block >= 0; block = candidates.nextSetBit(block + 1)) {
+      if (blockMax[block] < from || blockMin[block] > to) {
+        candidates.clear(block);
+      }
+    }
+    return candidates;
+  }
+
+  synchronized void writeTo(Path file) throws IOException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      out.writeLong(minTimestamp);
+      out.writeLong(maxTimestamp);
+      out.writeInt(blockCount);
+      for (int i = 0; i < blockCount; i++) {
+        out.writeLong(blockMin[i]);
+        out.writeLong(blockMax[i]);
+      }
+      out.writeInt(blocksByUrl.size());
+      for (Map.Entry<UUID, BitSet> entry : blocksByUrl.entrySet()) {
+        out.writeLong(entry.getKey().getMostSignificantBits());
+        out.writeLong(entry.getKey().getLeastSignificantBits());
+        long[] words = entry.getValue().toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) {
+          out.writeLong(word);
+        }
+      }
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  static SegmentIndex readFrom(Path file) throws IOException {
+    SegmentIndex index = new SegmentIndex();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      index.minTimestamp = in.readLong();
+      index.maxTimestamp = in.readLong();
+      index.blockCount = in.readInt();
+      index.blockMin = new long[Math.max(16, index.blockCount)];
+      index.blockMax = new long[Math.max(16, index.blockCount)];
+      for (int i = 0; i < index.blockCount; i++) {
+        index.blockMin[i] = in.readLong();
+        index.blockMax[i] = in.readLong();
+      }
+      int urls = in.readInt();
+      for (int i = 0; i < urls; i++) {
+        UUID urlId = new UUID(in.readLong(), in.readLong());
+        long[] words = new long[in.readInt()];
+        for (int w = 0; w < words.length; w++) {
+          words[w] = in.readLong();
+        }
+        index.blocksByUrl.put(urlId, BitSet.valueOf(words));
+      }
+    }
+    return index;
+  }
+}
@@ -0,0 +1,132 @@
+package com.urlshortener.repository.clicklog;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only string dictionary so click records can store user agents and referrers as int ids.
+ * Entries are persisted as {@code [int length][utf-8 bytes]}; an entry's id is its position in the file.
+ *
+ * <p>The values come from request headers, so the dictionary is bounded: values are cut to
+ * {@code maxLength} characters, and once it holds {@code maxEntries} values a new one is recorded as
+ * {@link #OVERFLOW_ID} and reads back as absent. Values already known keep their id.
+ *
+ * <p>A new entry is forced to disk before its id is handed out, so a click record can never reach
+ * the disk ahead of the value it refers to. Ids past the end still read back as absent, in case
+ * the dictionary was lost or restored from an older copy.
+ */
+@Slf4j
+class StringDictionary implements AutoCloseable {
+
+  static final int NULL_ID = -1;
+  static final int OVERFLOW_ID = -2;
+
+  private final FileChannel channel;
+  private final int maxEntries;
+  private final int maxLength;
+  private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+  private final List<String> values = new ArrayList<>();
+  private boolean overflowLogged;
+
+  StringDictionary(Path file, int maxEntries, int maxLength) throws IOException {
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.maxEntries = maxEntries;
+    this.maxLength = maxLength;
+    load();
+  }
+
+  int idOf(String value) throws IOException {
+    if (value == null) {
+      return NULL_ID;
+    }
+    value = truncate(value);
+    Integer id = ids.get(value);
+    if (id != null) {
+      return id;
+    }
+    synchronized (this) {
+      id = ids.get(value);
+      if (id != null) {
+        return id;
+      }
+      if (values.size() >= maxEntries) {
+        if (!overflowLogged) {
+          log.warn("Click log dictionary is full at {} values; new user agents and referrers are not stored", maxEntries);
+          overflowLogged = true;
+        }
+        return OVERFLOW_ID;
+      }
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      ByteBuffer entry = ByteBuffer.allocate(Integer.BYTES + bytes.length);
+      entry.putInt(bytes.length).put(bytes).flip();
+      while (entry.hasRemaining()) {
+        channel.write(entry, channel.size());
+      }
+      channel.force(false);
+      id = values.size();
+      values.add(value);
+      ids.put(value, id);
+      return id;
+    }
+  }
+
+  synchronized String valueOf(int id) {
+    return id < 0 || id >= values.size() ? null : values.get(id);
+  }
+
+  synchronized int size() {
+    return values.size();
+  }
+
+  void force() throws IOException {
+    channel.force(false);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private String truncate(String value) {
+    if (value.length() <= maxLength) {
+      return value;
+    }
+    // Never split a surrogate pair
+    int end = Character.isHighSurrogate(value.charAt(maxLength - 1)) ? maxLength - 1 : maxLength;
+    return value.substring(0, end);
+  }
+
+  private void load() throws IOException {
+    long size = channel.size();
+    long position = 0;
+    ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+    while (position + Integer.BYTES <= size) {
+      header.clear();
+      channel.read(header, position);
+      int length = header.flip().getInt();
+      if (position + Integer.BYTES + length > size) {
+        break;
+      }
+      ByteBuffer body = ByteBuffer.allocate(length);
+      channel.read(body, position + Integer.BYTES);
+      String value = new String(body.array(), StandardCharsets.UTF_8);
+      ids.put(value, values.size());
+      values.add(value);
+      position += Integer.BYTES + length;
+    }
+    // Drop a torn trailing entry left behind by a crash mid-write
+    if (position < size) {
+      channel.truncate(position);
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package com.urlshortener.repository.shard;
+
+import com.urlshortener.util.HashRing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Places short codes on a consistent-hash ring of shards, so adding a shard moves only about
+ * 1/n of the existing links to it.
+ */
+public class HashRingShardResolver implements ShardResolver {
+
+  private final HashRing<Integer> ring;
+  private final int shardCount;
+
+  public HashRingShardResolver(int shardCount, int virtualNodes) {
+    Map<String, Integer> shards = new LinkedHashMap<>();
+    for (int i = 0; i < shardCount; i++) {
+      shards.put("shard-" + i, i);
+    }
+    this.ring = new HashRing<>(shards, virtualNodes);
+    this.shardCount = shardCount;
+  }
+
+  @Override
+  public int shardCount() {
+    return shardCount;
+  }
+
+  @Override
+  public int shardFor(String shortCode) {
+    return shardCount == 1 ? 0 : ring.nodeFor(shortCode);
+  }
+}
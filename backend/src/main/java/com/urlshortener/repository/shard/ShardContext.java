@@ -0,0 +1,38 @@
+package com.urlshortener.repository.shard;
+
+/**
+ * The shard the current thread's next connection comes from. Unset means shard 0, which also holds
+ * every table that is not sharded.
+ */
+public final class ShardContext {
+
+  private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+  private ShardContext() {
+  }
+
+  public static int current() {
+    Integer shard = CURRENT.get();
+    return shard != null ? shard : 0;
+  }
+
+  /**
+   * Route to {@code shard} until the returned scope is closed, which restores the previous shard.
+   */
+  public static Scope enter(int shard) {
+    Integer previous = CURRENT.get();
+    CURRENT.set(shard);
+    return () -> {
+      if (previous != null) {
+        CURRENT.set(previous);
+      } else {
+        CURRENT.remove();
+      }
+    };
+  }
+
+  public interface Scope extends AutoCloseable {
+    @Override
+    void close();
+  }
+}
@@ -0,0 +1,15 @@
+package com.urlshortener.repository.shard;
+
+/**
+ * Decides which shard owns a short code. Declare a bean of this type to replace the default
+ * consistent-hash assignment.
+ */
+public interface ShardResolver {
+
+  int shardCount();
+
+  /**
+   * A shard index in {@code [0, shardCount())}; must always give the same answer for the same code.
+   */
+  int shardFor(String shortCode);
+}
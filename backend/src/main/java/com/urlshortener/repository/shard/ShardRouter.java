@@ -0,0 +1,166 @@
+package com.urlshortener.repository.shard;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Routes url queries to the shard that owns a short code, and runs queries that are not keyed by
+ * short code, such as a user's links, on every shard.
+ *
+ * <p>A transaction keeps the connection it first used, so a shard must be entered with {@link #use}
+ * before the transaction runs its first statement. Gathered queries run on worker threads, each in
+ * its own read-only transaction, and never touch the caller's connection.
+ *
+ * <p>With a single shard nothing is routed and gathered queries run directly in the caller's
+ * transaction.
+ */
+public class ShardRouter {
+
+  private final ShardResolver resolver;
+  private final TransactionTemplate readOnly;
+  private final ExecutorService pool;
+  private final long timeoutMillis;
+
+  public ShardRouter(ShardResolver resolver, PlatformTransactionManager transactionManager, int threads, Duration timeout) {
+    this.resolver = resolver;
+    this.timeoutMillis = timeout.toMillis();
+    if (resolver.shardCount() > 1) {
+      this.readOnly = new TransactionTemplate(transactionManager);
+      this.readOnly.setReadOnly(true);
+      AtomicInteger counter = new AtomicInteger();
+      this.pool = Executors.newFixedThreadPool(Math.max(threads, resolver.shardCount()), runnable -> {
+        Thread thread = new Thread(runnable, "shard-query-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    } else {
+      this.readOnly = null;
+      this.pool = null;
+    }
+  }
+
+  /**
+   * An unsharded router.
+   */
+  public static ShardRouter single() {
+    return new ShardRouter(new HashRingShardResolver(1, 1), null, 0, Duration.ZERO);
+  }
+
+  public boolean isSharded() {
+    return pool != null;
+  }
+
+  public int shardCount() {
+    return resolver.shardCount();
+  }
+
+  public int shardFor(String shortCode) {
+    return resolver.shardFor(shortCode);
+  }
+
+  /**
+   * Route this thread to the shard owning {@code shortCode} until the scope is closed.
+   */
+  public ShardContext.Scope use(String shortCode) {
+    return ShardContext.enter(shardFor(shortCode));
+  }
+
+  public ShardContext.Scope use(int shard) {
+    return ShardContext.enter(shard);
+  }
+
+  /**
+   * Run {@code query} on every shard and concatenate the results in shard order.
+   */
+  public <T> List<T> gather(Supplier<? extends Collection<T>> query) {
+    List<T> all = new ArrayList<>();
+    gatherByShard(query).values().forEach(all::addAll);
+    return all;
+  }
+
+  /**
+   * Run {@code query} on every shard, keeping each shard's results apart.
+   */
+  public <T> Map<Integer, List<T>> gatherByShard(Supplier<? extends Collection<T>> query) {
+    if (!isSharded()) {
+      return Map.of(0, new ArrayList<>(query.get()));
+    }
+    List<Integer> shards = new ArrayList<>();
+    for (int shard = 0; shard < shardCount(); shard++) {
+      shards.add(shard);
+    }
+    return run(shards, shard -> query.get());
+  }
+
+  /**
+   * Split {@code shortCodes} by owning shard and run {@code query} once per shard with only that
+   * shard's codes.
+   */
+  public <T> List<T> gather(Collection<String> shortCodes, Function<Collection<String>, ? extends Collection<T>> query) {
+    if (!isSharded()) {
+      return new ArrayList<>(query.apply(shortCodes));
+    }
+    Map<Integer, List<String>> codesByShard = new LinkedHashMap<>();
+    for (String shortCode : shortCodes) {
+      codesByShard.computeIfAbsent(shardFor(shortCode), shard -> new ArrayList<>()).add(shortCode);
+    }
+    List<T> all = new ArrayList<>();
+    run(codesByShard.keySet(), shard -> query.apply(codesByShard.get(shard))).values().forEach(all::addAll);
+    return all;
+  }
+
+  private <T> Map<Integer, List<T>> run(Collection<Integer> shards, Function<Integer, ? extends Collection<T>> query) {
+    List<Callable<List<T>>> tasks = new ArrayList<>();
+    for (Integer shard : shards) {
+      tasks.add(() -> {
+        try (ShardContext.Scope scope = ShardContext.enter(shard)) {
+          return readOnly.execute(status -> new ArrayList<>(query.apply(shard)));
+        }
+      });
+    }
+
+    try {
+      // invokeAll cancels whatever has not finished when the timeout elapses
+      List<Future<List<T>>> results = pool.invokeAll(tasks, timeoutMillis, TimeUnit.MILLISECONDS);
+      Map<Integer, List<T>> byShard = new LinkedHashMap<>();
+      int i = 0;
+      for (Integer shard : shards) {
+        byShard.put(shard, results.get(i++).get());
+      }
+      return byShard;
+    } catch (CancellationException e) {
+      throw new IllegalStateException("Shard query did not finish within " + timeoutMillis + " ms", e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof RuntimeException runtime ? runtime : new IllegalStateException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while querying shards", e);
+    }
+  }
+
+  /**
+   * Called by Spring when the context closes.
+   */
+  public void shutdown() {
+    if (pool != null) {
+      pool.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package com.urlshortener.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.urlshortener.service.ApiKeyService;
+import io.micrometer.common.lang.NonNull;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Authenticates requests carrying an {@code X-API-Key} header against the in-memory key index.
+ * Requests without the header are left to the JWT filter.
+ */
+@Component
+public class ApiKeyAuthenticationFilter extends OncePerRequestFilter {
+
+  public static final String HEADER = "X-API-Key";
+
+  private final ApiKeyService apiKeyService;
+
+  public ApiKeyAuthenticationFilter(ApiKeyService apiKeyService) {
+    this.apiKeyService = apiKeyService;
+  }
+
+  @Override
+  protected void doFilterInternal(@NonNull HttpServletRequest request,
+      @NonNull HttpServletResponse response,
+      @NonNull FilterChain filterChain)
+      throws ServletException, IOException {
+    String rawKey = request.getHeader(HEADER);
+    if (rawKey == null) {
+      filterChain.doFilter(request, response);
+      return;
+    }
+
+    ApiKeyIdentity apiKey = apiKeyService.authenticate(rawKey.trim());
+    if (apiKey == null) {
+      response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+      response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+
+      final Map<String, Object> body = new HashMap<>();
+      body.put("status", HttpServletResponse.SC_UNAUTHORIZED);
+      body.put("error", "Error");
+      body.put("message", "Invalid API key");
+      body.put("path", request.getServletPath());
+
+      new ObjectMapper().writeValue(response.getOutputStream(), body);
+      return;
+    }
+
+    ApiKeyAuthenticationToken authentication = new ApiKeyAuthenticationToken(apiKey);
+    authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+    SecurityContextHolder.getContext().setAuthentication(authentication);
+    filterChain.doFilter(request, response);
+  }
+}
@@ -0,0 +1,40 @@
+package com.urlshortener.security;
+
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+
+import java.util.List;
+
+/**
+ * Authentication of a request made with an API key. The principal is the key's owner, so
+ * controllers treat it like a signed-in user.
+ */
+public class ApiKeyAuthenticationToken extends AbstractAuthenticationToken {
+
+  private final UserPrincipal principal;
+  private final ApiKeyIdentity apiKey;
+
+  public ApiKeyAuthenticationToken(ApiKeyIdentity apiKey) {
+    this(apiKey, new UserPrincipal(apiKey.userId(), apiKey.username(), List.of("ROLE_USER")));
+  }
+
+  private ApiKeyAuthenticationToken(ApiKeyIdentity apiKey, UserPrincipal principal) {
+    super(principal.getAuthorities());
+    this.apiKey = apiKey;
+    this.principal = principal;
+    setAuthenticated(true);
+  }
+
+  public ApiKeyIdentity getApiKey() {
+    return apiKey;
+  }
+
+  @Override
+  public Object getCredentials() {
+    return null;
+  }
+
+  @Override
+  public UserPrincipal getPrincipal() {
+    return principal;
+  }
+}
@@ -0,0 +1,12 @@
+package com.urlshortener.security;
+
+import com.urlshortener.entity.ApiKeyTier;
+
+import java.util.UUID;
+
+/**
+ * What the in-memory index knows about an active API key: enough to authenticate and rate limit a
+ * request without touching the database.
+ */
+public record ApiKeyIdentity(UUID keyId, UUID userId, String username, ApiKeyTier tier) {
+}
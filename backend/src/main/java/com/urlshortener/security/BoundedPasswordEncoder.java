@@ -0,0 +1,116 @@
+package com.urlshortener.security;
+
+import com.urlshortener.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Password encoder that runs the deliberately slow hashing of its delegate on a small, fixed pool
+ * with a bounded queue. Request threads only wait for the result, so a burst of logins cannot use
+ * more CPU than the pool has workers. When the queue is full, or the result does not arrive in time,
+ * the request is shed with {@link ServiceOverloadedException} instead of piling up.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+  private final PasswordEncoder delegate;
+  private final ThreadPoolExecutor executor;
+  private final long maxWaitMillis;
+  private final long retryAfterSeconds;
+  private final Timer encodeTimer;
+  private final Timer matchesTimer;
+  private final Counter rejected;
+
+  public BoundedPasswordEncoder(PasswordEncoder delegate, int workers, int queueCapacity, Duration maxWait,
+      long retryAfterSeconds, MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    this.maxWaitMillis = maxWait.toMillis();
+    this.retryAfterSeconds = retryAfterSeconds;
+    AtomicInteger threads = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+          Thread thread = new Thread(runnable, "password-hash-" + threads.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+
+    Gauge.builder("auth.password.queue", executor, pool -> pool.getQueue().size())
+        .description("Password hashing tasks waiting for a worker")
+        .register(meterRegistry);
+    Gauge.builder("auth.password.active", executor, ThreadPoolExecutor::getActiveCount)
+        .description("Password hashing tasks running")
+        .register(meterRegistry);
+    this.encodeTimer = Timer.builder("auth.password.hash").tag("operation", "encode")
+        .publishPercentiles(0.5, 0.99).register(meterRegistry);
+    this.matchesTimer = Timer.builder("auth.password.hash").tag("operation", "matches")
+        .publishPercentiles(0.5, 0.99).register(meterRegistry);
+    this.rejected = Counter.builder("auth.password.rejected")
+        .description("Password hashing requests shed because the pool was saturated")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public String encode(CharSequence rawPassword) {
+    return run(() -> delegate.encode(rawPassword), encodeTimer);
+  }
+
+  @Override
+  public boolean matches(CharSequence rawPassword, String encodedPassword) {
+    return run(() -> delegate.matches(rawPassword, encodedPassword), matchesTimer);
+  }
+
+  @Override
+  public boolean upgradeEncoding(String encodedPassword) {
+    return delegate.upgradeEncoding(encodedPassword);
+  }
+
+  /**
+   * Called by Spring when the context closes.
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private <T> T run(Callable<T> task, Timer timer) {
+    Future<T> result;
+    try {
+      result = executor.submit(() -> timer.recordCallable(task));
+    } catch (RejectedExecutionException e) {
+      throw overloaded();
+    }
+    try {
+      return result.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      // Still queued: drop it so the worker does not hash for a caller that has gone
+      result.cancel(false);
+      throw overloaded();
+    } catch (InterruptedException e) {
+      result.cancel(false);
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while hashing a password", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw new IllegalStateException("Password hashing failed", e.getCause());
+    }
+  }
+
+  private ServiceOverloadedException overloaded() {
+    rejected.increment();
+    return new ServiceOverloadedException("Too many sign-in attempts in progress, try again shortly", retryAfterSeconds);
+  }
+}
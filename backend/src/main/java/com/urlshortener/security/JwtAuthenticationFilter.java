@@ -1,6 +1,7 @@
 package com.urlshortener.security;
 
 import io.micrometer.common.lang.NonNull;
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -10,8 +11,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
@@ -22,17 +21,21 @@ import java.util.HashMap;
 import java.util.Map;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.urlshortener.service.TokenRevocationService;
+import com.urlshortener.service.UserCache;
 
 @Slf4j
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
   private final JwtTokenProvider jwtTokenProvider;
-  private final UserDetailsService userDetailsService;
+  private final UserCache userCache;
+  private final TokenRevocationService tokenRevocationService;
 
-  public JwtAuthenticationFilter(JwtTokenProvider jwtTokenProvider, UserDetailsService userDetailsService) {
+  public JwtAuthenticationFilter(JwtTokenProvider jwtTokenProvider, UserCache userCache, TokenRevocationService tokenRevocationService) {
     this.jwtTokenProvider = jwtTokenProvider;
-    this.userDetailsService = userDetailsService;
+    this.userCache = userCache;
+    this.tokenRevocationService = tokenRevocationService;
   }
 
   @Override
@@ -43,19 +46,29 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     log.debug("JwtAuthenticationFilter called for URI: {}", request.getRequestURI());
     try {
       final String jwt;
-      final String userName;
+      final TokenClaims claims;
 
       jwt = jwtTokenProvider.getJwtFromRequest(request);
-      userName = jwt != null ? jwtTokenProvider.getUsername(jwt) : null;
+      // Verified once here; expired or tampered tokens throw and are answered with 401 below
+      claims = jwt != null ? jwtTokenProvider.parseToken(jwt) : null;
 
-      if (userName != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-        UserDetails userDetails = userDetailsService.loadUserByUsername(userName);
+      if (claims != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+        if (claims.isRefreshToken()) {
+          throw new JwtException("Refresh tokens cannot be used to authenticate requests");
+        }
+        if (tokenRevocationService.isRevoked(claims)) {
+          throw new JwtException("Token has been revoked");
+        }
+        // The principal comes from the token; only tokens issued without user claims need the user loaded
+        UserPrincipal principal = claims.getUserId() != null
+            ? new UserPrincipal(claims.getUserId(), claims.getSubject(), claims.getRoles())
+            : UserPrincipal.from(userCache.getByUsername(claims.getSubject()));
 
-        if (jwtTokenProvider.validateToken(jwt, userDetails)) {
+        if (principal.isEnabled()) {
           UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-              userDetails,
+              principal,
               null,
-              userDetails.getAuthorities()
+              principal.getAuthorities()
           );
           authToken.setDetails(
               new WebAuthenticationDetailsSource().buildDetails(request)
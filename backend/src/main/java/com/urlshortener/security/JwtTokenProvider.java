@@ -1,5 +1,7 @@
 package com.urlshortener.security;
 
+import com.urlshortener.entity.User;
+import com.urlshortener.util.ExpiringCache;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
 import jakarta.annotation.PostConstruct;
@@ -7,30 +9,28 @@ import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.UUID;
 
 @Slf4j
 @Component
 public class JwtTokenProvider {
 
-  private final UserDetailsService userDetailsService;
-
-  public JwtTokenProvider(UserDetailsService userDetailsService) {
-    this.userDetailsService = userDetailsService;
-  }
-
   @Value("${jwt.secret}")
   private String secretKey;
 
@@ -40,11 +40,23 @@ public class JwtTokenProvider {
   @Value("${jwt.refreshToken.expiration}")
   private long refreshTokenExpiration;
 
+  @Value("${jwt.verified-cache.ttl-seconds:300}")
+  private long verifiedCacheTtlSeconds;
+
+  @Value("${jwt.verified-cache.max-entries:10000}")
+  private int verifiedCacheMaxEntries;
+
   private SecretKey key;
+  private JwtParser parser;
+  // SHA-256 of recently verified tokens, so the raw tokens are not kept in memory
+  private ExpiringCache<String, TokenClaims> verifiedTokens;
 
   @PostConstruct
   protected void init() {
     this.key = Keys.hmacShaKeyFor(secretKey.getBytes(StandardCharsets.UTF_8));
+    // Parsers are immutable and thread-safe, so one instance serves every request
+    this.parser = Jwts.parser().verifyWith(key).build();
+    this.verifiedTokens = new ExpiringCache<>(Duration.ofSeconds(verifiedCacheTtlSeconds), verifiedCacheMaxEntries);
   }
 
   public String createAccessToken(String username) {
@@ -57,6 +69,7 @@ public class JwtTokenProvider {
 
     return Jwts.builder()
         .claims(extraClaims)
+        .id(UUID.randomUUID().toString())
         .subject(username)
         .issuedAt(now)
         .expiration(validity)
@@ -64,6 +77,17 @@ public class JwtTokenProvider {
         .compact();
   }
 
+  /**
+   * Access token carrying the user id and roles, so requests can be authenticated without
+   * loading the user.
+   */
+  public String createAccessToken(User user) {
+    Map<String, Object> claims = new HashMap<>();
+    claims.put("uid", user.getId().toString());
+    claims.put("roles", user.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+    return createAccessToken(claims, user.getUsername());
+  }
+
   public String createRefreshToken(String username) {
     return createRefreshToken(new HashMap<>(), username);
   }
@@ -75,6 +99,7 @@ public class JwtTokenProvider {
 
     return Jwts.builder()
         .claims(extraClaims)
+        .id(UUID.randomUUID().toString())
         .subject(username)
         .issuedAt(now)
         .expiration(validity)
@@ -82,55 +107,51 @@ public class JwtTokenProvider {
         .compact();
   }
 
-  public Authentication getAuthentication(String token) {
-    String username = getUsername(token);
-    UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-    return new UsernamePasswordAuthenticationToken(userDetails, "", userDetails.getAuthorities());
-  }
-
-  public String getUsername(String token) {
-    return extractClaim(token, Claims::getSubject);
-  }
+  /**
+   * Verify a token and return its claims. A token verified recently is answered from the cache
+   * without checking its signature again; cached entries never outlive the token itself.
+   *
+   * @throws JwtException if the token is malformed, tampered with or expired
+   */
+  public TokenClaims parseToken(String token) {
+    if (!StringUtils.hasText(token)) {
+      throw new IllegalArgumentException("JWT string is empty");
+    }
+    String hash = hash(token);
+    TokenClaims cached = verifiedTokens.get(hash);
+    if (cached != null) {
+      return cached;
+    }
 
-  public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-    final Claims claims = extractAllClaims(token);
-    return claimsResolver.apply(claims);
+    Claims claims = parser.parseSignedClaims(token).getPayload();
+    TokenClaims verified = TokenClaims.builder()
+        .tokenId(hash)
+        .subject(claims.getSubject())
+        .type(claims.get("type", String.class))
+        .issuedAt(claims.getIssuedAt() != null ? claims.getIssuedAt().toInstant() : null)
+        .expiresAt(claims.getExpiration().toInstant())
+        .userId(claims.get("uid") != null ? UUID.fromString(claims.get("uid", String.class)) : null)
+        .roles(roles(claims))
+        .build();
+    verifiedTokens.put(hash, verified, Duration.between(Instant.now(), verified.getExpiresAt()));
+    return verified;
   }
 
-  private Claims extractAllClaims(String token) {
-    return Jwts
-        .parser()
-        .verifyWith((SecretKey) key)
-        .build()
-        .parseSignedClaims(token)
-        .getPayload();
+  private static List<String> roles(Claims claims) {
+    Object roles = claims.get("roles");
+    if (!(roles instanceof Collection<?> values)) {
+      return List.of();
+    }
+    return values.stream().map(String::valueOf).toList();
   }
 
-  public boolean validateToken(String token, UserDetails userDetails) {
+  private static String hash(String token) {
     try {
-      final String username = getUsername(token);
-      return (username.equals(userDetails.getUsername())) && !isTokenExpired(token);
-
-    } catch (MalformedJwtException e) {
-      log.error("Invalid JWT token: {}", e.getMessage());
-    } catch (ExpiredJwtException e) {
-      log.error("JWT token is expired: {}", e.getMessage());
-    } catch (UnsupportedJwtException e) {
-      log.error("JWT token is unsupported: {}", e.getMessage());
-    } catch (IllegalArgumentException e) {
-      log.error("JWT claims string is empty: {}", e.getMessage());
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(digest);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
     }
-
-    return false;
-  }
-
-  public boolean isTokenExpired(String token) {
-    final Date expiration = extractExpiration(token);
-    return expiration.before(new Date());
-  }
-
-  private Date extractExpiration(String token) {
-    return extractClaim(token, Claims::getExpiration);
   }
 
   public String getJwtFromRequest(HttpServletRequest request) {
@@ -0,0 +1,198 @@
+package com.urlshortener.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Two-level rate limiter: each node takes quota from Redis in chunks and spends it from an
+ * in-process bucket, so most requests are decided without a network call. A request that finds the
+ * bucket empty waits for a lease; once half of a lease is spent the next one is taken
+ * asynchronously, but never by the request that has just waited for one.
+ *
+ * <p>Chunks follow each key's demand: twice what it spent per lease lifetime during its last lease,
+ * and at most {@code rate.limit.lease.fraction} of the limit. Leased units are already counted in
+ * Redis, so the nodes together never admit more than the limit, and units left when a lease expires
+ * are handed back to Redis. A node therefore holds quota that other nodes cannot use for at most one
+ * lease lifetime, and units are spent at most that long after Redis counted them.
+ */
+@Slf4j
+@Component
+@Primary
+@ConditionalOnProperty(name = "rate.limit.lease.enabled", havingValue = "true", matchIfMissing = true)
+public class LeasingRateLimiter implements RateLimiter {
+
+  private final RedisRateLimiter remote;
+  private final double leaseFraction;
+  private final int maxKeys;
+  private final Map<String, LocalBucket> buckets = new ConcurrentHashMap<>();
+  private LongSupplier clock = System::currentTimeMillis;
+
+  public LeasingRateLimiter(RedisRateLimiter remote,
+      @Value("${rate.limit.lease.fraction:0.1}") double leaseFraction,
+      @Value("${rate.limit.lease.max-keys:100000}") int maxKeys) {
+    if (leaseFraction <= 0 || leaseFraction > 1) {
+      throw new IllegalArgumentException("rate.limit.lease.fraction must be in (0, 1]");
+    }
+    this.remote = remote;
+    this.leaseFraction = leaseFraction;
+    this.maxKeys = maxKeys;
+  }
+
+  @Override
+  public RateLimitDecision tryAcquire(String key, long limit, Duration window) {
+    LocalBucket bucket = buckets.get(key);
+    if (bucket == null) {
+      if (buckets.size() >= maxKeys) {
+        evictIdle();
+      }
+      bucket = buckets.computeIfAbsent(key, LocalBucket::new);
+    }
+
+    long leaseMillis = Math.max(1, (long) (window.toMillis() * leaseFraction));
+    synchronized (bucket) {
+      long now = clock.getAsLong();
+      bucket.limit = limit;
+      bucket.window = window;
+      expire(bucket, now, leaseMillis);
+      long chunk = bucket.chunk(chunkSize(limit));
+      boolean leased = false;
+      if (bucket.tokens == 0 && now >= bucket.exhaustedUntil) {
+        // Nothing left locally and Redis may have quota: this request waits for the lease
+        bucket.apply(remote.acquire(key, limit, window, chunk), now, leaseMillis);
+        leased = true;
+      }
+      if (bucket.tokens == 0) {
+        return new RateLimitDecision(false, limit, 0,
+            Math.max(0, bucket.resetAt - now), Math.max(1, bucket.exhaustedUntil - now));
+      }
+      bucket.tokens--;
+      bucket.spent++;
+      if (!leased && bucket.tokens * 2 <= chunk && !bucket.refilling && bucket.remoteRemaining > 0) {
+        bucket.refilling = true;
+        refillAsync(bucket, chunk, leaseMillis);
+      }
+      return new RateLimitDecision(true, limit, bucket.remoteRemaining + bucket.tokens,
+          Math.max(0, bucket.resetAt - now), 0);
+    }
+  }
+
+  long chunkSize(long limit) {
+    return Math.max(1, (long) Math.ceil(limit * leaseFraction));
+  }
+
+  private void refillAsync(LocalBucket bucket, long chunk, long leaseMillis) {
+    // Applied off the Redis I/O thread: a request holding the bucket lock may be waiting on that
+    // thread for its own lease
+    remote.acquireAsync(bucket.key, bucket.limit, bucket.window, chunk).whenCompleteAsync((grant, error) -> {
+      if (error != null) {
+        log.warn("Could not lease rate limit quota for {}: {}", bucket.key, error.getMessage());
+      }
+      synchronized (bucket) {
+        bucket.refilling = false;
+        if (grant != null) {
+          long now = clock.getAsLong();
+          expire(bucket, now, leaseMillis);
+          bucket.apply(grant, now, leaseMillis);
+        }
+      }
+    });
+  }
+
+  // Ends a lease that has run out: unspent units go back to Redis, and what was spent sizes the next chunk
+  private void expire(LocalBucket bucket, long now, long leaseMillis) {
+    if (!bucket.leased || now < bucket.leaseExpiresAt) {
+      return;
+    }
+    returnUnspent(bucket);
+    long leaseLifetimes = Math.max(1, (bucket.leaseExpiresAt - bucket.leaseStartedAt) / leaseMillis);
+    bucket.demand = (bucket.spent + leaseLifetimes - 1) / leaseLifetimes;
+    bucket.leased = false;
+  }
+
+  private void returnUnspent(LocalBucket bucket) {
+    if (bucket.tokens > 0) {
+      remote.refundAsync(bucket.key, bucket.limit, bucket.window, bucket.tokens, bucket.countedIn)
+          .exceptionally(error -> {
+            log.warn("Could not return rate limit quota for {}: {}", bucket.key, error.getMessage());
+            return null;
+          });
+      bucket.tokens = 0;
+    }
+  }
+
+  // Buckets without a live lease or a pending rejection hold nothing worth keeping
+  private void evictIdle() {
+    long now = clock.getAsLong();
+    buckets.values().removeIf(bucket -> {
+      synchronized (bucket) {
+        if (!bucket.isIdle(now)) {
+          return false;
+        }
+        returnUnspent(bucket);
+        return true;
+      }
+    });
+  }
+
+  int size() {
+    return buckets.size();
+  }
+
+  private static final class LocalBucket {
+    private final String key;
+    private long limit;
+    private Duration window;
+    private long tokens;
+    private boolean leased;
+    private long leaseStartedAt;
+    private long leaseExpiresAt;
+    // Units spent since the lease started, and per lease lifetime during the last one (-1: unknown)
+    private long spent;
+    private long demand = -1;
+    // Window the latest grant was counted in, where unspent units are returned
+    private long countedIn;
+    // What Redis had left after the last lease, for the RateLimit-Remaining header
+    private long remoteRemaining;
+    private long resetAt;
+    // Redis had no quota until then; requests are rejected locally meanwhile
+    private long exhaustedUntil;
+    private boolean refilling;
+
+    private LocalBucket(String key) {
+      this.key = key;
+    }
+
+    private long chunk(long maxChunk) {
+      return demand < 0 ? maxChunk : Math.max(1, Math.min(maxChunk, demand * 2));
+    }
+
+    private void apply(RedisRateLimiter.Grant grant, long now, long leaseMillis) {
+      tokens += grant.granted();
+      if (grant.granted() > 0) {
+        if (!leased) {
+          leased = true;
+          leaseStartedAt = now;
+          spent = 0;
+        }
+        leaseExpiresAt = now + leaseMillis;
+        countedIn = grant.window();
+      } else {
+        exhaustedUntil = now + grant.retryAfterMillis();
+      }
+      remoteRemaining = grant.remaining();
+      resetAt = now + grant.resetMillis();
+    }
+
+    private synchronized boolean isIdle(long now) {
+      return !refilling && now >= leaseExpiresAt && now >= exhaustedUntil;
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.urlshortener.security;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory token buckets, used while Redis is unavailable. Limits are per node, so the effective
+ * limit across the cluster is the configured one times the number of nodes unless the caller
+ * scales it down.
+ */
+public class LocalRateLimiter implements RateLimiter {
+
+  private final int maxKeys;
+  private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+  public LocalRateLimiter(int maxKeys) {
+    this.maxKeys = maxKeys;
+  }
+
+  @Override
+  public RateLimitDecision tryAcquire(String key, long limit, Duration window) {
+    long now = System.nanoTime();
+    long windowNanos = window.toNanos();
+    if (buckets.size() >= maxKeys && !buckets.containsKey(key)) {
+      // A bucket untouched for a whole window is full again and can be recreated at no cost
+      buckets.values().removeIf(bucket -> bucket.isFull(now, windowNanos));
+    }
+    Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(limit, now));
+    synchronized (bucket) {
+      double rate = (double) limit / windowNanos;
+      bucket.tokens = Math.min(limit, bucket.tokens + (now - bucket.updatedAt) * rate);
+      bucket.updatedAt = now;
+      long resetMillis = (long) Math.ceil((limit - bucket.tokens) / rate / 1_000_000);
+      if (bucket.tokens < 1) {
+        long retryMillis = Math.max(1, (long) Math.ceil((1 - bucket.tokens) / rate / 1_000_000));
+        return new RateLimitDecision(false, limit, 0, resetMillis, retryMillis);
+      }
+      bucket.tokens -= 1;
+      return new RateLimitDecision(true, limit, (long) bucket.tokens, resetMillis, 0);
+    }
+  }
+
+  private static final class Bucket {
+    private double tokens;
+    private long updatedAt;
+
+    private Bucket(long tokens, long updatedAt) {
+      this.tokens = tokens;
+      this.updatedAt = updatedAt;
+    }
+
+    private synchronized boolean isFull(long now, long windowNanos) {
+      return now - updatedAt >= windowNanos;
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package com.urlshortener.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outcome of a rate limit check, with what the client needs to pace itself.
+ */
+@Getter
+@AllArgsConstructor
+public class RateLimitDecision {
+  private final boolean allowed;
+  private final long limit;
+  private final long remaining;
+  // Until the quota is fully available again
+  private final long resetMillis;
+  // Until a rejected request could succeed; zero when allowed
+  private final long retryAfterMillis;
+}
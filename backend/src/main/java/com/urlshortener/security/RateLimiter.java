@@ -0,0 +1,11 @@
+package com.urlshortener.security;
+
+import java.time.Duration;
+
+public interface RateLimiter {
+
+  /**
+   * Take one unit of quota for the key, allowing at most {@code limit} units per {@code window}.
+   */
+  RateLimitDecision tryAcquire(String key, long limit, Duration window);
+}
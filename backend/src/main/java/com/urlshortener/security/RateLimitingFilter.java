@@ -1,15 +1,12 @@
 package com.urlshortener.security;
 
-import com.urlshortener.config.RedisConfig;
-import com.urlshortener.service.AuthService;
-
+import com.urlshortener.entity.ApiKeyTier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.util.AntPathMatcher;
-import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import jakarta.servlet.FilterChain;
@@ -18,10 +15,14 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.exceptions.JedisException;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class RateLimitingFilter extends OncePerRequestFilter {
@@ -35,10 +36,23 @@ public class RateLimitingFilter extends OncePerRequestFilter {
   @Value("${rate.limit.unauthenticated.window}")
   private int UNAUTHENTICATED_WINDOW;
 
-  // Inject the Redis service
-  private final RedisConfig redisConfig;
+  // Redis-backed limits are shared by every node; while Redis is unavailable each node enforces
+  // its share of the limit on its own
+  @Value("${rate.limit.fallback.nodes:1}")
+  private int fallbackNodes;
+
+  // API keys are limited per key, by tier, over their own window
+  @Value("${rate.limit.api-key.window:60}")
+  private int API_KEY_WINDOW;
+
+  @Value("${rate.limit.api-key.standard:1000}")
+  private int API_KEY_STANDARD_LIMIT;
 
-  private final JwtTokenProvider jwtTokenProvider;
+  @Value("${rate.limit.api-key.premium:10000}")
+  private int API_KEY_PREMIUM_LIMIT;
+
+  private final RateLimiter rateLimiter;
+  private final RateLimiter fallbackLimiter = new LocalRateLimiter(100_000);
 
   // Paths that should be excluded from rate limiting
   private static final List<String> EXCLUDED_PATHS = Arrays.asList(
@@ -71,36 +85,51 @@ public class RateLimitingFilter extends OncePerRequestFilter {
     boolean isAuthenticated = authentication != null && authentication.isAuthenticated() &&
         !authentication.getPrincipal().equals("anonymousUser");
 
-    // Create different Redis keys based on authentication status
+    // Create different Redis keys based on authentication status; the hash tag keeps one
+    // caller's counters together on a sharded Redis
     String key;
     int timeWindow;
-
-    if (isAuthenticated) {
+    int limit = MAX_REQUESTS;
+
+    if (authentication instanceof ApiKeyAuthenticationToken apiKeyAuthentication) {
+      ApiKeyIdentity apiKey = apiKeyAuthentication.getApiKey();
+      key = "rate_limit:key:{" + apiKey.keyId() + "}";
+      timeWindow = API_KEY_WINDOW;
+      limit = apiKey.tier() == ApiKeyTier.PREMIUM ? API_KEY_PREMIUM_LIMIT : API_KEY_STANDARD_LIMIT;
+    } else if (isAuthenticated) {
       String username = authentication.getName();
-      key = "rate_limit:auth:" + username + ":" + requestPath;
+      key = "rate_limit:auth:{" + username + "}:" + requestPath;
       timeWindow = AUTHENTICATED_WINDOW;
     } else {
-      key = "rate_limit:unauth:" + clientIp;
+      key = "rate_limit:unauth:{" + clientIp + "}";
       timeWindow = UNAUTHENTICATED_WINDOW;
     }
 
-    String requestCount = redisConfig.get(key);
-
-    if (requestCount == null) {
-      redisConfig.setex(key, timeWindow, "1");
-    } else {
-      int currentCount = Integer.parseInt(requestCount);
+    RateLimitDecision decision;
+    try {
+      decision = rateLimiter.tryAcquire(key, limit, Duration.ofSeconds(timeWindow));
+    } catch (JedisException e) {
+      log.debug("Rate limiting locally, Redis unavailable: {}", e.getMessage());
+      decision = fallbackLimiter.tryAcquire(key, Math.max(1, limit / Math.max(1, fallbackNodes)),
+          Duration.ofSeconds(timeWindow));
+    }
 
-      if (currentCount >= MAX_REQUESTS) {
-        String jwt = jwtTokenProvider.getJwtFromRequest(request);
-        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
-        response.getWriter().write("Rate limit exceeded. Try again later.");
-        return;
-      }
+    response.setHeader("RateLimit-Limit", Long.toString(decision.getLimit()));
+    response.setHeader("RateLimit-Remaining", Long.toString(decision.getRemaining()));
+    response.setHeader("RateLimit-Reset", Long.toString(seconds(decision.getResetMillis())));
+    response.setHeader("RateLimit-Policy", limit + ";w=" + timeWindow);
 
-      redisConfig.incr(key);
+    if (!decision.isAllowed()) {
+      response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+      response.setHeader("Retry-After", Long.toString(Math.max(1, seconds(decision.getRetryAfterMillis()))));
+      response.getWriter().write("Rate limit exceeded. Try again later.");
+      return;
     }
 
     filterChain.doFilter(request, response);
   }
-}
\ No newline at end of file
+
+  private static long seconds(long millis) {
+    return (millis + 999) / 1000;
+  }
+}
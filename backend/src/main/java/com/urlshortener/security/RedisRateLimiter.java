@@ -0,0 +1,223 @@
+package com.urlshortener.security;
+
+import com.urlshortener.config.RedisConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Rate limiter that decides inside Redis with a Lua script: read, update and expiry happen in one
+ * atomic round trip, so concurrent requests cannot slip past the limit between a read and a write.
+ * The scripts use the Redis clock, so nodes with skewed clocks still agree.
+ */
+@Component
+public class RedisRateLimiter implements RateLimiter {
+
+  public enum Algorithm {
+    /** Smooth refill of {@code limit} tokens per window; allows bursts up to the limit. */
+    TOKEN_BUCKET,
+    /** Weighted count of the current and previous fixed windows; no burst at window edges. */
+    SLIDING_WINDOW;
+
+    public static Algorithm parse(String value) {
+      return Algorithm.valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+  }
+
+  // KEYS[1] bucket hash; ARGV limit, window ms, permits wanted.
+  // Returns {granted, remaining, reset ms, retry ms, 0}
+  private static final String TOKEN_BUCKET_SCRIPT = """
+      local limit = tonumber(ARGV[1])
+      local window = tonumber(ARGV[2])
+      local requested = tonumber(ARGV[3])
+      local time = redis.call('TIME')
+      local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+      local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+      local tokens = tonumber(state[1])
+      local ts = tonumber(state[2])
+      if tokens == nil or ts == nil then
+        tokens = limit
+        ts = now
+      end
+      local rate = limit / window
+      tokens = math.min(limit, tokens + math.max(0, now - ts) * rate)
+      local granted = math.min(requested, math.floor(tokens))
+      local retry = 0
+      if granted > 0 then
+        tokens = tokens - granted
+      else
+        retry = math.ceil((1 - tokens) / rate)
+      end
+      redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', now)
+      redis.call('PEXPIRE', KEYS[1], window)
+      return {granted, math.floor(tokens), math.ceil((limit - tokens) / rate), retry, 0}
+      """;
+
+  // KEYS[1] bucket hash; ARGV limit, window ms, permits returned. A bucket that has expired is
+  // full already and is left alone
+  private static final String TOKEN_BUCKET_REFUND_SCRIPT = """
+      local limit = tonumber(ARGV[1])
+      local window = tonumber(ARGV[2])
+      local returned = tonumber(ARGV[3])
+      local time = redis.call('TIME')
+      local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+      local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+      local tokens = tonumber(state[1])
+      local ts = tonumber(state[2])
+      if tokens ~= nil and ts ~= nil then
+        tokens = math.min(limit, tokens + math.max(0, now - ts) * limit / window + returned)
+        redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', now)
+      end
+      return {0}
+      """;
+
+  // KEYS[1] hash of per-window counts; ARGV limit, window ms, permits wanted.
+  // Returns {granted, remaining, reset ms, retry ms, window the grant was counted in}
+  private static final String SLIDING_WINDOW_SCRIPT = """
+      local limit = tonumber(ARGV[1])
+      local window = tonumber(ARGV[2])
+      local requested = tonumber(ARGV[3])
+      local time = redis.call('TIME')
+      local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+      local current = math.floor(now / window)
+      local counts = redis.call('HMGET', KEYS[1], current, current - 1)
+      local count = tonumber(counts[1]) or 0
+      local previous = tonumber(counts[2]) or 0
+      local elapsed = (now % window) / window
+      local weighted = previous * (1 - elapsed) + count
+      local granted = math.min(requested, math.max(0, math.floor(limit - weighted)))
+      local retry = 0
+      if granted > 0 then
+        redis.call('HINCRBY', KEYS[1], current, granted)
+        weighted = weighted + granted
+      else
+        -- Wait until the previous window's weight has decayed enough, in this window if possible
+        local wait = nil
+        if previous > 0 and limit - count - 1 >= 0 then
+          local target = 1 - (limit - count - 1) / previous
+          if target < 1 then
+            wait = math.ceil((target - elapsed) * window)
+          end
+        end
+        if wait == nil then
+          -- Otherwise this window's count becomes the decaying previous count of the next one
+          local target = 0
+          if count > 0 then
+            target = math.max(0, 1 - (limit - 1) / count)
+          end
+          wait = window - (now % window) + math.ceil(target * window)
+        end
+        retry = math.max(wait, 1)
+      end
+      for _, field in ipairs(redis.call('HKEYS', KEYS[1])) do
+        if tonumber(field) < current - 1 then
+          redis.call('HDEL', KEYS[1], field)
+        end
+      end
+      redis.call('PEXPIRE', KEYS[1], window * 2)
+      return {granted, math.max(0, math.floor(limit - weighted)), window - (now % window), retry, current}
+      """;
+
+  // KEYS[1] hash of per-window counts; ARGV limit, window ms, permits returned, window they were
+  // counted in. A window that has been dropped no longer counts towards the limit and is left alone
+  private static final String SLIDING_WINDOW_REFUND_SCRIPT = """
+      local count = tonumber(redis.call('HGET', KEYS[1], ARGV[4]))
+      if count ~= nil then
+        redis.call('HSET', KEYS[1], ARGV[4], math.max(0, count - tonumber(ARGV[3])))
+      end
+      return {0}
+      """;
+
+  private final RedisConfig redisConfig;
+  private final Algorithm algorithm;
+  private final String script;
+  private final String scriptSha;
+  private final String refundScript;
+  private final String refundScriptSha;
+
+  public RedisRateLimiter(RedisConfig redisConfig,
+      @Value("${rate.limit.algorithm:sliding-window}") String algorithm) {
+    this.redisConfig = redisConfig;
+    this.algorithm = Algorithm.parse(algorithm);
+    this.script = this.algorithm == Algorithm.TOKEN_BUCKET ? TOKEN_BUCKET_SCRIPT : SLIDING_WINDOW_SCRIPT;
+    this.scriptSha = sha1(script);
+    this.refundScript = this.algorithm == Algorithm.TOKEN_BUCKET ? TOKEN_BUCKET_REFUND_SCRIPT : SLIDING_WINDOW_REFUND_SCRIPT;
+    this.refundScriptSha = sha1(refundScript);
+  }
+
+  /**
+   * Up to this many units of quota taken from Redis in one round trip. {@code window} identifies the
+   * fixed window a sliding-window grant was counted in, for {@link #refundAsync}.
+   */
+  public record Grant(long granted, long remaining, long resetMillis, long retryAfterMillis, long window) {
+
+    public Grant(long granted, long remaining, long resetMillis, long retryAfterMillis) {
+      this(granted, remaining, resetMillis, retryAfterMillis, 0);
+    }
+  }
+
+  @Override
+  public RateLimitDecision tryAcquire(String key, long limit, Duration window) {
+    Grant grant = acquire(key, limit, window, 1);
+    return new RateLimitDecision(grant.granted() > 0, limit, grant.remaining(),
+        grant.resetMillis(), grant.retryAfterMillis());
+  }
+
+  /**
+   * Take up to {@code permits} units at once; fewer, or none, are granted when the quota runs short.
+   */
+  public Grant acquire(String key, long limit, Duration window, long permits) {
+    return toGrant(redisConfig.evalsha(scriptSha, script, List.of(key), arguments(limit, window, permits)));
+  }
+
+  /**
+   * Like {@link #acquire}, without waiting for the reply.
+   */
+  public CompletableFuture<Grant> acquireAsync(String key, long limit, Duration window, long permits) {
+    return redisConfig.evalshaAsync(scriptSha, script, List.of(key), arguments(limit, window, permits))
+        .thenApply(RedisRateLimiter::toGrant);
+  }
+
+  /**
+   * Give back units of a grant that were not spent, without waiting for the reply.
+   */
+  public CompletableFuture<Object> refundAsync(String key, long limit, Duration window, long permits, long countedIn) {
+    return redisConfig.evalshaAsync(refundScriptSha, refundScript, List.of(key),
+        List.of(Long.toString(limit), Long.toString(window.toMillis()), Long.toString(permits), Long.toString(countedIn)));
+  }
+
+  private static List<String> arguments(long limit, Duration window, long permits) {
+    return List.of(Long.toString(limit), Long.toString(window.toMillis()), Long.toString(permits));
+  }
+
+  private static Grant toGrant(Object reply) {
+    List<?> values = (List<?>) reply;
+    return new Grant(
+        ((Number) values.get(0)).longValue(),
+        ((Number) values.get(1)).longValue(),
+        ((Number) values.get(2)).longValue(),
+        ((Number) values.get(3)).longValue(),
+        ((Number) values.get(4)).longValue());
+  }
+
+  public Algorithm getAlgorithm() {
+    return algorithm;
+  }
+
+  private static String sha1(String script) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(digest);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 not available", e);
+    }
+  }
+}
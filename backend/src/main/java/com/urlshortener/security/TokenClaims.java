@@ -0,0 +1,33 @@
+package com.urlshortener.security;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The claims of a verified token, read once per request. Access tokens also carry the user id
+ * and roles; tokens issued before that have neither.
+ */
+@Getter
+@Builder
+public class TokenClaims {
+  // SHA-256 of the encoded token; identifies it for caching and revocation without keeping it
+  private final String tokenId;
+  private final String subject;
+  private final String type;
+  private final Instant issuedAt;
+  private final Instant expiresAt;
+  private final UUID userId;
+  private final List<String> roles;
+
+  public boolean isRefreshToken() {
+    return "refresh".equals(type);
+  }
+
+  public boolean isExpired() {
+    return expiresAt.isBefore(Instant.now());
+  }
+}
@@ -0,0 +1,51 @@
+package com.urlshortener.security;
+
+import com.urlshortener.entity.User;
+import com.urlshortener.exception.UnauthorizedException;
+import lombok.Getter;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The authenticated caller as read from an access token: id, username and roles, with no
+ * database entity behind it.
+ */
+@Getter
+public class UserPrincipal implements UserDetails {
+
+  private final UUID id;
+  private final String username;
+  private final List<GrantedAuthority> authorities;
+
+  public UserPrincipal(UUID id, String username, Collection<String> roles) {
+    this.id = id;
+    this.username = username;
+    this.authorities = roles.stream().<GrantedAuthority>map(SimpleGrantedAuthority::new).toList();
+  }
+
+  public static UserPrincipal from(User user) {
+    return new UserPrincipal(user.getId(), user.getUsername(),
+        user.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+  }
+
+  /**
+   * The id of the authenticated caller.
+   */
+  public static UUID idOf(Authentication authentication) {
+    if (authentication != null && authentication.getPrincipal() instanceof UserPrincipal principal) {
+      return principal.getId();
+    }
+    throw new UnauthorizedException("Authentication required");
+  }
+
+  @Override
+  public String getPassword() {
+    return null;
+  }
+}
@@ -0,0 +1,98 @@
+package com.urlshortener.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.urlshortener.dto.AnalyticsResponse;
+import com.urlshortener.util.ExpiringCache;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Short-lived cache of computed analytics per short code. Every ingested click stamps the short code
+ * with a new version, and a cached result is only served while the version it was computed at is
+ * still current, so a click that lands while a result is being computed can never be masked.
+ */
+@Component
+public class AnalyticsCache {
+
+  @Getter
+  public static class Entry {
+    private final AnalyticsResponse response;
+    private final String etag;
+    private final UUID owner;
+    private final long version;
+
+    Entry(AnalyticsResponse response, String etag, UUID owner, long version) {
+      this.response = response;
+      this.etag = etag;
+      this.owner = owner;
+      this.version = version;
+    }
+  }
+
+  private final ObjectMapper objectMapper;
+  private final ExpiringCache<String, Entry> results;
+  private final ExpiringCache<String, Long> versions;
+  private final AtomicLong sequence = new AtomicLong();
+
+  public AnalyticsCache(ObjectMapper objectMapper,
+      @Value("${analytics.cache.ttl-seconds:30}") long ttlSeconds,
+      @Value("${analytics.cache.max-entries:10000}") int maxEntries) {
+    this.objectMapper = objectMapper;
+    this.results = new ExpiringCache<>(Duration.ofSeconds(ttlSeconds), maxEntries);
+    // Versions outlive results so a dropped version can only mean the result is gone as well
+    this.versions = new ExpiringCache<>(Duration.ofSeconds(ttlSeconds * 2), maxEntries * 4);
+  }
+
+  /**
+   * Serve the cached analytics for the owner, or compute, fingerprint and cache them.
+   */
+  public Entry get(String shortCode, UUID userId, Supplier<AnalyticsResponse> loader) {
+    long version = currentVersion(shortCode);
+    Entry cached = results.get(shortCode);
+    if (cached != null && cached.version == version && cached.owner.equals(userId)) {
+      return cached;
+    }
+
+    AnalyticsResponse response = loader.get();
+    Entry entry = new Entry(response, etag(response), userId, version);
+    results.put(shortCode, entry);
+    return entry;
+  }
+
+  /**
+   * Called on ingest: any result computed before this click is stale from now on.
+   */
+  public void onClick(String shortCode) {
+    versions.put(shortCode, sequence.incrementAndGet());
+  }
+
+  /**
+   * Called when the link is deleted: drop its result and move the version on, so a computation
+   * that started before the delete is not served either.
+   */
+  public void evict(String shortCode) {
+    onClick(shortCode);
+    results.invalidate(shortCode);
+  }
+
+  private long currentVersion(String shortCode) {
+    Long version = versions.get(shortCode);
+    return version != null ? version : 0L;
+  }
+
+  private String etag(AnalyticsResponse response) {
+    try {
+      return "\"" + DigestUtils.md5DigestAsHex(objectMapper.writeValueAsBytes(response)) + "\"";
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Could not fingerprint analytics response", e);
+    }
+  }
+}
@@ -1,127 +1,321 @@
 package com.urlshortener.service;
 
+import com.urlshortener.dto.AccountAnalyticsResponse;
 import com.urlshortener.dto.AnalyticsResponse;
-import com.urlshortener.entity.ClickAnalytics;
+import com.urlshortener.dto.ClickAggregate;
+import com.urlshortener.dto.LinkClicks;
+import com.urlshortener.dto.UrlSummary;
 import com.urlshortener.entity.Url;
-import com.urlshortener.entity.User;
+import com.urlshortener.exception.AnalyticsTimeoutException;
+import com.urlshortener.exception.ForbiddenException;
 import com.urlshortener.exception.ResourceNotFoundException;
-import com.urlshortener.exception.UnauthorizedException;
-import com.urlshortener.repository.ClickAnalyticsRepository;
+import com.urlshortener.repository.ClickStore;
 import com.urlshortener.repository.UrlRepository;
-import com.urlshortener.repository.UserRepository;
-import lombok.RequiredArgsConstructor;
+import com.urlshortener.repository.shard.ShardContext;
+import com.urlshortener.repository.shard.ShardRouter;
+import com.urlshortener.util.ClickClassifier;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionTimedOutException;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 public class AnalyticsService {
 
   private final UrlRepository urlRepository;
-  private final UserRepository userRepository;
-  private final ClickAnalyticsRepository clickAnalyticsRepository;
+  private final ClickStore clickStore;
+  private final UniqueVisitorService uniqueVisitorService;
+  private final ClickClassifier clickClassifier;
+  private final ShardRouter shardRouter;
+  private final PlatformTransactionManager transactionManager;
 
-  public AnalyticsService(UrlRepository urlRepository, UserRepository userRepository, ClickAnalyticsRepository clickAnalyticsRepository) {
+  public AnalyticsService(UrlRepository urlRepository, ClickStore clickStore, UniqueVisitorService uniqueVisitorService, ClickClassifier clickClassifier, ShardRouter shardRouter, PlatformTransactionManager transactionManager) {
     this.urlRepository = urlRepository;
-    this.userRepository = userRepository;
-    this.clickAnalyticsRepository = clickAnalyticsRepository;
+    this.clickStore = clickStore;
+    this.uniqueVisitorService = uniqueVisitorService;
+    this.clickClassifier = clickClassifier;
+    this.shardRouter = shardRouter;
+    this.transactionManager = transactionManager;
+  }
+
+  /**
+   * Resolve a URL id after checking the caller owns it.
+   */
+  @Transactional(readOnly = true)
+  public UUID getOwnedUrlId(String shortCode, UUID userId) {
+    try (ShardContext.Scope scope = shardRouter.use(shortCode)) {
+      return findOwned(shortCode, userId).getId();
+    }
   }
 
   @Value("${url.short.domain}")
   private String shortDomain;
 
+  @Value("${analytics.account.default-days:30}")
+  private int defaultDays;
+
+  @Value("${analytics.account.max-days:366}")
+  private int maxDays;
+
+  @Value("${analytics.account.partition-size:2000}")
+  private int partitionSize;
+
+  @Value("${analytics.account.parallelism:2}")
+  private int parallelism;
+
+  @Value("${analytics.account.timeout-seconds:20}")
+  private long timeoutSeconds;
+
+  private volatile ExecutorService aggregationPool;
+
   @Transactional(readOnly = true)
-  public AnalyticsResponse getUrlAnalytics(String shortCode, String username) {
-    Url url = urlRepository.findByShortCode(shortCode)
-        .orElseThrow(() -> new ResourceNotFoundException("URL not found"));
+  public AnalyticsResponse getUrlAnalytics(String shortCode, UUID userId) {
+    try (ShardContext.Scope scope = shardRouter.use(shortCode)) {
+      UrlSummary url = findOwned(shortCode, userId);
+
+      // Aggregate in a single pass so memory stays proportional to the number of groups, not clicks
+      Map<String, Long> clicksByDay = new HashMap<>();
+      Map<String, Long> referrerCounts = new HashMap<>();
+      Map<String, Long> browserCounts = new HashMap<>();
+      clickStore.scan(url.getId(), ClickStore.ALL_TIME_FROM, ClickStore.ALL_TIME_TO, click -> {
+        clicksByDay.merge(click.getClickedAt().toLocalDate().format(DateTimeFormatter.ISO_DATE), 1L, Long::sum);
+        if (click.getReferrer() != null && !click.getReferrer().isEmpty()) {
+          referrerCounts.merge(clickClassifier.referrerDomain(click.getReferrer()), 1L, Long::sum);
+        }
+        if (click.getUserAgent() != null && !click.getUserAgent().isEmpty()) {
+          browserCounts.merge(clickClassifier.browser(click.getUserAgent()), 1L, Long::sum);
+        }
+      });
+
+      // Unique visitors come from the per-day sketches, merged over the days that saw clicks
+      List<LocalDate> activeDays = clicksByDay.keySet().stream()
+          .map(LocalDate::parse)
+          .collect(Collectors.toList());
+
+      // Both are null without Redis; the rest of the report does not depend on them
+      Long uniqueVisitors = uniqueVisitorService.countUniqueVisitors(url.getId(), activeDays);
+      Map<String, Long> uniqueVisitorsByDay = uniqueVisitorService.uniqueVisitorsByDay(url.getId(), activeDays);
+
+      return AnalyticsResponse.builder()
+          .urlId(url.getId())
+          .shortCode(url.getShortCode())
+          .shortUrl(shortDomain + "/" + url.getShortCode())
+          .longUrl(url.getLongUrl())
+          .totalClicks(url.getClicks())
+          .uniqueVisitors(uniqueVisitors)
+          .clicksByDay(clicksByDay)
+          .uniqueVisitorsByDay(uniqueVisitorsByDay)
+          .referrerCounts(referrerCounts)
+          .browserCounts(browserCounts)
+          .build();
+    }
+  }
+
+  /**
+   * Totals, a daily series and top lists over all of a user's URLs. The URLs are split into
+   * partitions that are aggregated concurrently and merged, and the date range is capped so the
+   * cost stays bounded for accounts with very many links. Throws {@link AnalyticsTimeoutException}
+   * when the aggregation runs past {@code analytics.account.timeout-seconds}.
+   */
+  public AccountAnalyticsResponse getAccountAnalytics(UUID userId, LocalDate from, LocalDate to, int limit) {
+    LocalDate end = to != null ? to : LocalDate.now();
+    LocalDate start = from != null ? from : end.minusDays(defaultDays - 1L);
+    if (start.isAfter(end)) {
+      throw new IllegalArgumentException("'from' must not be after 'to'");
+    }
+    if (ChronoUnit.DAYS.between(start, end) >= maxDays) {
+      throw new IllegalArgumentException("Date range must not exceed " + maxDays + " days");
+    }
+    if (limit < 1) {
+      throw new IllegalArgumentException("'limit' must be positive");
+    }
+
+    Map<Integer, List<UUID>> urlIdsByShard = shardRouter.gatherByShard(() -> urlRepository.findIdsByUserId(userId));
+    ClickAggregate aggregate = aggregate(urlIdsByShard, start.atStartOfDay(), end.atTime(LocalTime.MAX));
+
+    Map<String, Long> clicksByDay = new TreeMap<>();
+    for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+      clicksByDay.put(day.format(DateTimeFormatter.ISO_DATE), aggregate.getClicksByDay().getOrDefault(day, 0L));
+    }
 
-    User user = userRepository.findByUsername(username)
-        .orElseThrow(() -> new ResourceNotFoundException("User not found"));
-
-    if (!url.getUser().getId().equals(user.getId())) {
-      throw new UnauthorizedException("You don't have permission to view analytics for this URL");
-    }
-
-    List<ClickAnalytics> clicksList = clickAnalyticsRepository.findByUrl(url);
-
-    // Group clicks by day
-    Map<String, Long> clicksByDay = clicksList.stream()
-        .collect(Collectors.groupingBy(
-            click -> click.getClickedAt().toLocalDate().format(DateTimeFormatter.ISO_DATE),
-            Collectors.counting()
-        ));
-
-    // Group by referrer
-    Map<String, Long> referrerCounts = clicksList.stream()
-        .filter(click -> click.getReferrer() != null && !click.getReferrer().isEmpty())
-        .collect(Collectors.groupingBy(
-            this::extractDomain,
-            Collectors.counting()
-        ));
-
-    // Group by browser
-    Map<String, Long> browserCounts = clicksList.stream()
-        .filter(click -> click.getUserAgent() != null && !click.getUserAgent().isEmpty())
-        .collect(Collectors.groupingBy(
-            this::extractBrowser,
-            Collectors.counting()
-        ));
-
-    return AnalyticsResponse.builder()
-        .urlId(url.getId())
-        .shortCode(url.getShortCode())
-        .shortUrl(shortDomain + "/" + url.getShortCode())
-        .longUrl(url.getLongUrl())
-        .totalClicks(url.getClicks())
+    return AccountAnalyticsResponse.builder()
+        .from(start)
+        .to(end)
+        .totalUrls(urlIdsByShard.values().stream().mapToLong(List::size).sum())
+        .totalClicks(aggregate.getTotalClicks())
         .clicksByDay(clicksByDay)
-        .referrerCounts(referrerCounts)
-        .browserCounts(browserCounts)
+        .topLinks(topLinks(aggregate.getClicksByUrl(), limit))
+        .topReferrers(top(aggregate.getClicksByReferrer(), clickClassifier::referrerDomain, limit))
+        .topBrowsers(top(aggregate.getClicksByUserAgent(), clickClassifier::browser, limit))
         .build();
   }
 
-  private String extractDomain(ClickAnalytics click) {
-    String referrer = click.getReferrer();
-    if (referrer == null || referrer.isEmpty()) {
-      return "Direct";
+  private ClickAggregate aggregate(Map<Integer, List<UUID>> urlIdsByShard, LocalDateTime from, LocalDateTime to) {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+    // Clicks live on the shard of their URL, so a partition never spans shards
+    List<Callable<ClickAggregate>> partitions = new ArrayList<>();
+    urlIdsByShard.forEach((shard, urlIds) -> {
+      for (int i = 0; i < urlIds.size(); i += partitionSize) {
+        List<UUID> partition = urlIds.subList(i, Math.min(i + partitionSize, urlIds.size()));
+        partitions.add(() -> aggregatePartition(shard, partition, from, to, deadline));
+      }
+    });
+    if (partitions.isEmpty()) {
+      return new ClickAggregate();
     }
+    if (partitions.size() == 1 || parallelism <= 1) {
+      ClickAggregate merged = new ClickAggregate();
+      for (Callable<ClickAggregate> partition : partitions) {
+        merged.merge(call(partition));
+      }
+      return merged;
+    }
+
+    try {
+      // invokeAll cancels whatever has not finished when the timeout elapses; the statements those
+      // workers were running end at the same deadline through their query timeout
+      List<Future<ClickAggregate>> results = aggregationPool().invokeAll(partitions, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+      ClickAggregate merged = new ClickAggregate();
+      for (Future<ClickAggregate> result : results) {
+        merged.merge(result.get());
+      }
+      return merged;
+    } catch (CancellationException e) {
+      throw timedOut(e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof RuntimeException runtime ? runtime : new IllegalStateException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while aggregating account analytics", e);
+    }
+  }
+
+  // Runs in a transaction that times out at the deadline, which sets each statement's JDBC query
+  // timeout to the time left, so a statement never outlives the request that started it
+  private ClickAggregate aggregatePartition(int shard, List<UUID> partition, LocalDateTime from, LocalDateTime to, long deadline) {
+    long remainingNanos = deadline - System.nanoTime();
+    if (remainingNanos <= 0) {
+      throw timedOut(null);
+    }
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+    transaction.setReadOnly(true);
+    transaction.setTimeout((int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toSeconds(remainingNanos + TimeUnit.SECONDS.toNanos(1) - 1)));
+    try (ShardContext.Scope scope = shardRouter.use(shard)) {
+      return transaction.execute(status -> clickStore.aggregate(partition, from, to));
+    } catch (QueryTimeoutException | TransactionTimedOutException e) {
+      throw timedOut(e);
+    }
+  }
+
+  private AnalyticsTimeoutException timedOut(Throwable cause) {
+    return new AnalyticsTimeoutException("Account analytics did not finish within " + timeoutSeconds + " seconds", cause);
+  }
+
+  // The URL and its owner in one statement: missing is 404, someone else's is 403
+  private UrlSummary findOwned(String shortCode, UUID userId) {
+    UrlSummary url = urlRepository.findSummaryByShortCode(shortCode)
+        .orElseThrow(() -> new ResourceNotFoundException("URL not found"));
+    if (!url.getOwnerId().equals(userId)) {
+      throw new ForbiddenException("You don't have permission to view analytics for this URL");
+    }
+    return url;
+  }
+
+  private List<LinkClicks> topLinks(Map<UUID, Long> clicksByUrl, int limit) {
+    List<Map.Entry<UUID, Long>> top = clicksByUrl.entrySet().stream()
+        .sorted(Map.Entry.<UUID, Long>comparingByValue().reversed())
+        .limit(limit)
+        .collect(Collectors.toList());
+    List<UUID> topIds = top.stream().map(Map.Entry::getKey).collect(Collectors.toList());
+    Map<UUID, Url> urls = shardRouter.gather(() -> urlRepository.findAllById(topIds))
+        .stream()
+        .collect(Collectors.toMap(Url::getId, Function.identity()));
+
+    List<LinkClicks> links = new ArrayList<>();
+    for (Map.Entry<UUID, Long> entry : top) {
+      Url url = urls.get(entry.getKey());
+      if (url != null) {
+        links.add(LinkClicks.builder()
+            .shortCode(url.getShortCode())
+            .shortUrl(shortDomain + "/" + url.getShortCode())
+            .longUrl(url.getLongUrl())
+            .clicks(entry.getValue())
+            .build());
+      }
+    }
+    return links;
+  }
+
+  private static Map<String, Long> top(Map<String, Long> rawCounts, Function<String, String> bucket, int limit) {
+    Map<String, Long> counts = new HashMap<>();
+    rawCounts.forEach((raw, count) -> counts.merge(bucket.apply(raw), count, Long::sum));
+    return counts.entrySet().stream()
+        .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+        .limit(limit)
+        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a, LinkedHashMap::new));
+  }
 
+  private static ClickAggregate call(Callable<ClickAggregate> partition) {
     try {
-      Pattern pattern = Pattern.compile("^(?:https?://)?(?:www\\.)?([^:/\\n?]+)");
-      Matcher matcher = pattern.matcher(referrer);
-      return matcher.find() ? matcher.group(1) : "Unknown";
+      return partition.call();
+    } catch (RuntimeException e) {
+      throw e;
     } catch (Exception e) {
-      return "Unknown";
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private ExecutorService aggregationPool() {
+    ExecutorService pool = aggregationPool;
+    if (pool == null) {
+      synchronized (this) {
+        pool = aggregationPool;
+        if (pool == null) {
+          // Each worker holds a database connection while it runs, so keep this below the pool size
+          pool = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "account-analytics");
+            thread.setDaemon(true);
+            return thread;
+          });
+          aggregationPool = pool;
+        }
+      }
     }
+    return pool;
   }
 
-  private String extractBrowser(ClickAnalytics click) {
-    String userAgent = click.getUserAgent();
-    if (userAgent == null || userAgent.isEmpty()) {
-      return "Unknown";
-    }
-
-    if (userAgent.contains("Chrome") && !userAgent.contains("Chromium")) {
-      return "Chrome";
-    } else if (userAgent.contains("Firefox")) {
-      return "Firefox";
-    } else if (userAgent.contains("Safari") && !userAgent.contains("Chrome")) {
-      return "Safari";
-    } else if (userAgent.contains("Edge")) {
-      return "Edge";
-    } else if (userAgent.contains("MSIE") || userAgent.contains("Trident")) {
-      return "Internet Explorer";
-    } else {
-      return "Other";
+  @PreDestroy
+  void shutdown() {
+    if (aggregationPool != null) {
+      aggregationPool.shutdownNow();
     }
   }
 }
@@ -0,0 +1,239 @@
+package com.urlshortener.service;
+
+import com.urlshortener.config.RedisConfig;
+import com.urlshortener.dto.ApiKeyRequest;
+import com.urlshortener.dto.ApiKeyResponse;
+import com.urlshortener.entity.ApiKey;
+import com.urlshortener.entity.ApiKeyTier;
+import com.urlshortener.exception.ResourceNotFoundException;
+import com.urlshortener.repository.ApiKeyRepository;
+import com.urlshortener.repository.UserRepository;
+import com.urlshortener.security.ApiKeyIdentity;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * API keys for machine clients. Keys are random, so a plain SHA-256 hash is enough to store them
+ * safely, and every active key is held in an in-memory index from hash to owner and tier. A request
+ * is authenticated with one hash and one map lookup.
+ *
+ * <p>The index is rebuilt from the database when a key is created or revoked on any node (announced
+ * over Redis pub/sub) and periodically, to cover messages missed while Redis was unavailable.
+ */
+@Slf4j
+@Service
+public class ApiKeyService {
+
+  public static final String KEY_PREFIX = "usk_";
+  private static final String CHANNEL = "api-keys";
+  private static final int PREFIX_LENGTH = 12;
+
+  private final ApiKeyRepository apiKeyRepository;
+  private final UserRepository userRepository;
+  private final RedisConfig redisConfig;
+  private final SecureRandom random = new SecureRandom();
+  private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+    Thread thread = new Thread(runnable, "api-keys");
+    thread.setDaemon(true);
+    return thread;
+  });
+  // Replaced as a whole on every reload, so lookups never see a half-built index
+  private volatile Map<String, ApiKeyIdentity> index = Map.of();
+  private volatile Subscriber subscriber;
+  private volatile boolean running;
+
+  @Value("${api-keys.resync-seconds:300}")
+  private long resyncSeconds;
+
+  @Value("${api-keys.default-tier:STANDARD}")
+  private ApiKeyTier defaultTier;
+
+  public ApiKeyService(ApiKeyRepository apiKeyRepository, UserRepository userRepository, RedisConfig redisConfig) {
+    this.apiKeyRepository = apiKeyRepository;
+    this.userRepository = userRepository;
+    this.redisConfig = redisConfig;
+  }
+
+  @PostConstruct
+  void start() {
+    running = true;
+    reload();
+    scheduler.execute(this::listen);
+    scheduler.scheduleWithFixedDelay(this::reload, resyncSeconds, resyncSeconds, TimeUnit.SECONDS);
+  }
+
+  @PreDestroy
+  void stop() {
+    running = false;
+    Subscriber current = subscriber;
+    if (current != null && current.isSubscribed()) {
+      current.unsubscribe();
+    }
+    scheduler.shutdownNow();
+  }
+
+  /**
+   * The active key matching a raw key from a request, or null.
+   */
+  public ApiKeyIdentity authenticate(String rawKey) {
+    if (rawKey == null || !rawKey.startsWith(KEY_PREFIX)) {
+      return null;
+    }
+    return index.get(hash(rawKey));
+  }
+
+  @Transactional
+  public ApiKeyResponse createKey(ApiKeyRequest request, UUID userId) {
+    byte[] secret = new byte[32];
+    random.nextBytes(secret);
+    String rawKey = KEY_PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(secret);
+
+    ApiKey apiKey = ApiKey.builder()
+        .user(userRepository.getReferenceById(userId))
+        .name(request.getName())
+        .keyHash(hash(rawKey))
+        .prefix(rawKey.substring(0, PREFIX_LENGTH))
+        .tier(defaultTier)
+        .build();
+    ApiKey saved = apiKeyRepository.save(apiKey);
+    announceAfterCommit();
+
+    ApiKeyResponse response = mapToResponse(saved);
+    response.setKey(rawKey);
+    return response;
+  }
+
+  @Transactional(readOnly = true)
+  public List<ApiKeyResponse> getUserKeys(UUID userId) {
+    return apiKeyRepository.findByUserIdAndRevokedAtIsNullOrderByCreatedAtDesc(userId).stream()
+        .map(this::mapToResponse)
+        .toList();
+  }
+
+  @Transactional
+  public void revokeKey(UUID id, UUID userId) {
+    ApiKey apiKey = apiKeyRepository.findByIdAndUserId(id, userId)
+        .filter(key -> key.getRevokedAt() == null)
+        .orElseThrow(() -> new ResourceNotFoundException("API key not found"));
+    apiKey.setRevokedAt(LocalDateTime.now());
+    apiKeyRepository.save(apiKey);
+    // Stop accepting the key on this node right away rather than after the commit and reload
+    Map<String, ApiKeyIdentity> next = new HashMap<>(index);
+    next.remove(apiKey.getKeyHash());
+    index = Map.copyOf(next);
+    announceAfterCommit();
+  }
+
+  /**
+   * Rebuild the index from the database.
+   */
+  void reload() {
+    try {
+      Map<String, ApiKeyIdentity> next = new HashMap<>();
+      for (ApiKey apiKey : apiKeyRepository.findAllActive()) {
+        next.put(apiKey.getKeyHash(), new ApiKeyIdentity(apiKey.getId(), apiKey.getUser().getId(),
+            apiKey.getUser().getUsername(), apiKey.getTier()));
+      }
+      index = Map.copyOf(next);
+    } catch (RuntimeException e) {
+      log.warn("Could not reload API keys, keeping the current index: {}", e.getMessage());
+    }
+  }
+
+  static String hash(String rawKey) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(rawKey.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  // Reload here and on the other nodes once the change is visible in the database
+  private void announceAfterCommit() {
+    Runnable announce = () -> {
+      reload();
+      try {
+        redisConfig.publish(CHANNEL, "changed");
+      } catch (JedisException e) {
+        log.warn("Could not announce API key change, other nodes pick it up on resync: {}", e.getMessage());
+      }
+    };
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          announce.run();
+        }
+      });
+    } else {
+      announce.run();
+    }
+  }
+
+  private ApiKeyResponse mapToResponse(ApiKey apiKey) {
+    return ApiKeyResponse.builder()
+        .id(apiKey.getId())
+        .name(apiKey.getName())
+        .prefix(apiKey.getPrefix())
+        .tier(apiKey.getTier())
+        .createdAt(apiKey.getCreatedAt())
+        .build();
+  }
+
+  private void listen() {
+    long backoffMillis = 1000;
+    while (running) {
+      try {
+        subscriber = new Subscriber();
+        redisConfig.subscribe(subscriber, CHANNEL);
+        backoffMillis = 1000;
+      } catch (JedisException e) {
+        log.warn("API key subscription lost, retrying in {} ms: {}", backoffMillis, e.getMessage());
+        try {
+          Thread.sleep(backoffMillis);
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        backoffMillis = Math.min(backoffMillis * 2, 30000);
+      }
+    }
+  }
+
+  private final class Subscriber extends JedisPubSub {
+    @Override
+    public void onSubscribe(String channel, int subscribedChannels) {
+      // Changes announced while we were not listening
+      scheduler.execute(ApiKeyService.this::reload);
+    }
+
+    @Override
+    public void onMessage(String channel, String message) {
+      scheduler.execute(ApiKeyService.this::reload);
+    }
+  }
+}
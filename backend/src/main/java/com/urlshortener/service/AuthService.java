@@ -4,23 +4,19 @@ import com.urlshortener.dto.AuthRequest;
 import com.urlshortener.dto.AuthResponse;
 import com.urlshortener.dto.RegistrationRequest;
 import com.urlshortener.entity.User;
-import com.urlshortener.exception.ResourceNotFoundException;
 import com.urlshortener.exception.UnauthorizedException;
 import com.urlshortener.repository.UserRepository;
 import com.urlshortener.security.JwtTokenProvider;
+import com.urlshortener.security.TokenClaims;
+import io.jsonwebtoken.JwtException;
 
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.HashSet;
-import java.util.Set;
-
 @Service
 public class AuthService {
 
@@ -28,20 +24,18 @@ public class AuthService {
   private final PasswordEncoder passwordEncoder;
   private final JwtTokenProvider jwtTokenProvider;
   private final AuthenticationManager authenticationManager;
-  private final UserDetailsService userDetailsService;
+  private final UserCache userCache;
+  private final TokenRevocationService tokenRevocationService;
 
-  public AuthService(UserRepository userRepository, PasswordEncoder passwordEncoder, JwtTokenProvider jwtTokenProvider, AuthenticationManager authenticationManager, UserDetailsService userDetailsService) {
+  public AuthService(UserRepository userRepository, PasswordEncoder passwordEncoder, JwtTokenProvider jwtTokenProvider, AuthenticationManager authenticationManager, UserCache userCache, TokenRevocationService tokenRevocationService) {
     this.userRepository = userRepository;
     this.passwordEncoder = passwordEncoder;
     this.jwtTokenProvider = jwtTokenProvider;
     this.authenticationManager = authenticationManager;
-    this.userDetailsService = userDetailsService;
+    this.userCache = userCache;
+    this.tokenRevocationService = tokenRevocationService;
   }
 
-
-  // Simple in-memory blacklist for invalidated tokens
-  private final Set<String> tokenBlacklist = new HashSet<>();
-
   @Transactional
   public AuthResponse register(RegistrationRequest request) {
     if (userRepository.existsByUsername(request.getUsername())) {
@@ -58,9 +52,9 @@ public class AuthService {
         .password(passwordEncoder.encode(request.getPassword()))
         .build();
 
-    userRepository.save(user);
+    user = userRepository.save(user);
 
-    String accessToken = jwtTokenProvider.createAccessToken(user.getUsername());
+    String accessToken = jwtTokenProvider.createAccessToken(user);
     String refreshToken = jwtTokenProvider.createRefreshToken(user.getUsername());
 
     return AuthResponse.builder()
@@ -77,7 +71,7 @@ public class AuthService {
     );
 
     User user = (User) authentication.getPrincipal();
-    String accessToken = jwtTokenProvider.createAccessToken(user.getUsername());
+    String accessToken = jwtTokenProvider.createAccessToken(user);
     String refreshToken = jwtTokenProvider.createRefreshToken(user.getUsername());
 
     return AuthResponse.builder()
@@ -89,28 +83,35 @@ public class AuthService {
   }
 
   public AuthResponse refreshToken(String refreshToken) {
+    final TokenClaims claims;
     final String username;
 
-    if (tokenBlacklist.contains(refreshToken)) {
-      throw new UnauthorizedException("Token has been invalidated");
+    try {
+      claims = jwtTokenProvider.parseToken(refreshToken);
+    } catch (JwtException | IllegalArgumentException e) {
+      throw new UnauthorizedException("Invalid refresh token");
     }
 
-    username = jwtTokenProvider.getUsername(refreshToken);
+    if (!claims.isRefreshToken() || claims.isExpired()) {
+      throw new UnauthorizedException("Invalid refresh token");
+    }
 
-    UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
+    if (tokenRevocationService.isRevoked(claims)) {
+      throw new UnauthorizedException("Token has been invalidated");
+    }
 
-    if (!jwtTokenProvider.validateToken(refreshToken, userDetails)) {
-      throw new UnauthorizedException("Invalid refresh token");
+    // A refresh token is good for one refresh: of two concurrent refreshes only the one that
+    // revokes it gets new tokens
+    if (!tokenRevocationService.revoke(claims)) {
+      throw new UnauthorizedException("Token has been invalidated");
     }
 
-    User user = userRepository.findByUsername(username)
-        .orElseThrow(() -> new ResourceNotFoundException("User not found"));
+    username = claims.getSubject();
 
-    String newAccessToken = jwtTokenProvider.createAccessToken(username);
-    String newRefreshToken = jwtTokenProvider.createRefreshToken(username);
+    User user = userCache.getByUsername(username);
 
-    // Add old refresh token to blacklist
-    tokenBlacklist.add(refreshToken);
+    String newAccessToken = jwtTokenProvider.createAccessToken(user);
+    String newRefreshToken = jwtTokenProvider.createRefreshToken(username);
 
     return AuthResponse.builder()
         .accessToken(newAccessToken)
@@ -121,7 +122,11 @@ public class AuthService {
   }
 
   public Void logout(String token) {
-    tokenBlacklist.add(token);
+    try {
+      tokenRevocationService.revoke(jwtTokenProvider.parseToken(token));
+    } catch (JwtException | IllegalArgumentException e) {
+      // Invalid or expired tokens cannot be used anyway
+    }
     return null;
   }
 }
@@ -0,0 +1,147 @@
+package com.urlshortener.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.urlshortener.repository.ClickStore;
+import com.urlshortener.repository.shard.ShardContext;
+import com.urlshortener.repository.shard.ShardRouter;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Streams raw click events of a URL as NDJSON or CSV. Rows are written as they are read from the
+ * click store, so memory use does not depend on how many clicks a link has.
+ */
+@Service
+public class ClickExportService {
+
+  public enum Format {
+    NDJSON("application/x-ndjson", "ndjson"),
+    CSV("text/csv", "csv");
+
+    private final String contentType;
+    private final String extension;
+
+    Format(String contentType, String extension) {
+      this.contentType = contentType;
+      this.extension = extension;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    public String getExtension() {
+      return extension;
+    }
+
+    public static Format parse(String value) {
+      try {
+        return Format.valueOf(value.toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Unsupported export format: " + value);
+      }
+    }
+  }
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private final ClickStore clickStore;
+  private final ShardRouter shardRouter;
+
+  public ClickExportService(ClickStore clickStore, ShardRouter shardRouter) {
+    this.clickStore = clickStore;
+    this.shardRouter = shardRouter;
+  }
+
+  /**
+   * Write every click in the inclusive date range; open ends default to all time. The short code
+   * picks the shard the clicks are read from.
+   */
+  public void writeClicks(String shortCode, UUID urlId, Format format, LocalDate from, LocalDate to, OutputStream out) throws IOException {
+    checkRange(from, to);
+    LocalDateTime start = from != null ? from.atStartOfDay() : ClickStore.ALL_TIME_FROM;
+    LocalDateTime end = to != null ? to.atTime(LocalTime.MAX) : ClickStore.ALL_TIME_TO;
+
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    try (ShardContext.Scope scope = shardRouter.use(shortCode)) {
+      if (format == Format.CSV) {
+        writer.write("clicked_at,referrer,user_agent,ip_address\n");
+        clickStore.scan(urlId, start, end, click -> writeLine(writer,
+            click.getClickedAt().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + ','
+                + csv(click.getReferrer()) + ','
+                + csv(click.getUserAgent()) + ','
+                + csv(click.getIpAddress()) + '\n'));
+      } else {
+        JsonGenerator json = JSON_FACTORY.createGenerator(writer);
+        json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        json.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        clickStore.scan(urlId, start, end, click -> {
+          try {
+            json.writeStartObject();
+            json.writeStringField("clickedAt", click.getClickedAt().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+            json.writeStringField("referrer", click.getReferrer());
+            json.writeStringField("userAgent", click.getUserAgent());
+            json.writeStringField("ipAddress", click.getIpAddress());
+            json.writeEndObject();
+            json.writeRaw('\n');
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+        json.flush();
+      }
+    } catch (UncheckedIOException e) {
+      // Usually the client went away; surface the original I/O failure to the container
+      throw e.getCause();
+    }
+    writer.flush();
+  }
+
+  /**
+   * Reject an inverted range. Callers that stream the export check first: once the body is being
+   * written the status is committed and an error can only truncate the download.
+   */
+  public static void checkRange(LocalDate from, LocalDate to) {
+    if (from != null && to != null && from.isAfter(to)) {
+      throw new IllegalArgumentException("'from' must not be after 'to'");
+    }
+  }
+
+  private static void writeLine(Writer writer, String line) {
+    try {
+      writer.write(line);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static String csv(String value) {
+    if (value == null) {
+      return "";
+    }
+    // Referrers and user agents are whatever the client sent; a leading formula character would
+    // make spreadsheets evaluate the cell, so such values are kept as text
+    if (!value.isEmpty() && "=+-@\t\r".indexOf(value.charAt(0)) >= 0) {
+      value = "'" + value;
+    }
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+      return value;
+    }
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+}
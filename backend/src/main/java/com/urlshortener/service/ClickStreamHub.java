@@ -0,0 +1,296 @@
+package com.urlshortener.service;
+
+import com.urlshortener.dto.ClickEvent;
+import com.urlshortener.dto.LiveClickEvent;
+import com.urlshortener.exception.TooManyRequestsException;
+import com.urlshortener.util.ClickClassifier;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fans click events out to Server-Sent Event subscribers. Idle subscribers hold only an async
+ * servlet response, no thread. Publishing only offers to each subscriber's bounded queue and never
+ * blocks; a small shared pool drains the queues, one task per subscriber at a time and a few events
+ * per turn. A subscriber whose queue overflows is disconnected instead of buffering without bound.
+ *
+ * <p>Writing to a response blocks, so a watchdog disconnects any subscriber whose send runs past
+ * {@code analytics.live.send-timeout-ms} and interrupts it. The stalled thread may still wait out
+ * the container's write timeout, so the pool starts a replacement until it comes back and the
+ * other subscribers keep receiving. Subscriptions are capped per link and per user.
+ */
+@Slf4j
+@Service
+public class ClickStreamHub {
+
+  private static final Object HEARTBEAT = new Object();
+
+  // Events one drain task sends before handing its thread to the next subscriber
+  private static final int DRAIN_BATCH = 32;
+
+  private final Map<UUID, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+  private final Map<UUID, Integer> subscriptionsByUser = new ConcurrentHashMap<>();
+  // Subscribers with a send in progress, including ones already dropped
+  private final Set<Subscriber> sending = ConcurrentHashMap.newKeySet();
+  private final ClickClassifier clickClassifier;
+  private final int dispatchThreads;
+  private final long sendTimeoutNanos;
+  private final ThreadPoolExecutor dispatcher;
+  private final ScheduledExecutorService heartbeat;
+  private int stalledSends;
+
+  @Value("${analytics.live.timeout-ms:1800000}")
+  private long timeoutMs;
+
+  @Value("${analytics.live.queue-capacity:256}")
+  private int queueCapacity;
+
+  @Value("${analytics.live.max-per-url:20}")
+  private int maxPerUrl;
+
+  @Value("${analytics.live.max-per-user:10}")
+  private int maxPerUser;
+
+  public ClickStreamHub(ClickClassifier clickClassifier,
+      @Value("${analytics.live.dispatch-threads:4}") int dispatchThreads,
+      @Value("${analytics.live.heartbeat-seconds:15}") int heartbeatSeconds,
+      @Value("${analytics.live.send-timeout-ms:5000}") long sendTimeoutMs) {
+    this.clickClassifier = clickClassifier;
+    this.dispatchThreads = dispatchThreads;
+    this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+    this.dispatcher = new ThreadPoolExecutor(dispatchThreads, dispatchThreads, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), daemon("sse-dispatch"));
+    this.heartbeat = Executors.newSingleThreadScheduledExecutor(daemon("sse-heartbeat"));
+    this.heartbeat.scheduleAtFixedRate(this::sendHeartbeats, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+    long watchdogMs = Math.max(sendTimeoutMs / 4, 1);
+    this.heartbeat.scheduleWithFixedDelay(this::dropStalledSends, watchdogMs, watchdogMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Register a user's subscriber for a URL's clicks, or throw {@link TooManyRequestsException} when
+   * the link or the user already has as many streams open as allowed.
+   */
+  public SseEmitter subscribe(UUID urlId, UUID userId) {
+    subscriptionsByUser.compute(userId, (id, count) -> {
+      if (count != null && count >= maxPerUser) {
+        throw new TooManyRequestsException("Too many live click streams open");
+      }
+      return count == null ? 1 : count + 1;
+    });
+    SseEmitter emitter = new SseEmitter(timeoutMs);
+    Subscriber subscriber = new Subscriber(urlId, userId, emitter, new ArrayBlockingQueue<>(queueCapacity));
+    try {
+      // Adding inside compute keeps a concurrent remove from dropping the set this lands in
+      subscribers.compute(urlId, (id, set) -> {
+        Set<Subscriber> watching = set == null ? ConcurrentHashMap.newKeySet() : set;
+        if (watching.size() >= maxPerUrl) {
+          throw new TooManyRequestsException("Too many live click streams open for this link");
+        }
+        watching.add(subscriber);
+        return watching;
+      });
+    } catch (TooManyRequestsException e) {
+      releaseUserSlot(userId);
+      throw e;
+    }
+    emitter.onCompletion(() -> remove(subscriber));
+    emitter.onTimeout(() -> remove(subscriber));
+    emitter.onError(e -> remove(subscriber));
+    return emitter;
+  }
+
+  /**
+   * Called on the click path; does nothing but a map lookup when nobody is watching.
+   */
+  public void publish(ClickEvent click) {
+    Set<Subscriber> watching = subscribers.get(click.getUrlId());
+    if (watching == null || watching.isEmpty()) {
+      return;
+    }
+    LiveClickEvent event = LiveClickEvent.builder()
+        .clickedAt(click.getClickedAt())
+        .referrer(clickClassifier.referrerDomain(click.getReferrer()))
+        .browser(clickClassifier.browser(click.getUserAgent()))
+        .build();
+    for (Subscriber subscriber : watching) {
+      enqueue(subscriber, event);
+    }
+  }
+
+  public int subscriberCount() {
+    return subscribers.values().stream().mapToInt(Set::size).sum();
+  }
+
+  @PreDestroy
+  void shutdown() {
+    heartbeat.shutdownNow();
+    dispatcher.shutdownNow();
+    subscribers.values().forEach(set -> set.forEach(subscriber -> subscriber.emitter.complete()));
+    subscribers.clear();
+  }
+
+  private void sendHeartbeats() {
+    subscribers.values().forEach(set -> set.forEach(subscriber -> enqueue(subscriber, HEARTBEAT)));
+  }
+
+  private void enqueue(Subscriber subscriber, Object event) {
+    if (subscriber.removed.get()) {
+      return;
+    }
+    if (!subscriber.queue.offer(event)) {
+      log.debug("Dropping slow live-click subscriber for {}", subscriber.urlId);
+      remove(subscriber);
+    }
+    // Also for a dropped subscriber: its drain task closes the emitter, which may wait on a send
+    // in progress and so must not happen on the caller's thread
+    if (subscriber.draining.compareAndSet(false, true)) {
+      dispatcher.execute(() -> drain(subscriber));
+    }
+  }
+
+  private void drain(Subscriber subscriber) {
+    try {
+      Object event;
+      for (int sent = 0; sent < DRAIN_BATCH && !subscriber.removed.get() && (event = subscriber.queue.poll()) != null; sent++) {
+        send(subscriber, event);
+      }
+    } catch (IOException | IllegalStateException e) {
+      remove(subscriber);
+      subscriber.emitter.completeWithError(e);
+      return;
+    } finally {
+      subscriber.draining.set(false);
+    }
+    if (subscriber.removed.get()) {
+      subscriber.emitter.complete();
+      return;
+    }
+    // Events left over from a full batch, or one that arrived between the last poll and releasing the flag
+    if (!subscriber.queue.isEmpty() && subscriber.draining.compareAndSet(false, true)) {
+      dispatcher.execute(() -> drain(subscriber));
+    }
+  }
+
+  private void send(Subscriber subscriber, Object event) throws IOException {
+    synchronized (subscriber) {
+      subscriber.sender = Thread.currentThread();
+      subscriber.sendStartedAt = System.nanoTime();
+    }
+    sending.add(subscriber);
+    try {
+      if (event == HEARTBEAT) {
+        subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+      } else {
+        subscriber.emitter.send(SseEmitter.event().name("click").data(event, MediaType.APPLICATION_JSON));
+      }
+    } finally {
+      sending.remove(subscriber);
+      boolean stalled;
+      synchronized (subscriber) {
+        subscriber.sender = null;
+        stalled = subscriber.stalled;
+      }
+      if (stalled) {
+        // The watchdog's interrupt must not leak into the next task on this thread
+        Thread.interrupted();
+        resizeDispatcher(-1);
+      }
+    }
+  }
+
+  private void dropStalledSends() {
+    long now = System.nanoTime();
+    sending.forEach(subscriber -> {
+      Thread sender;
+      synchronized (subscriber) {
+        if (subscriber.sender == null || subscriber.stalled || now - subscriber.sendStartedAt < sendTimeoutNanos) {
+          return;
+        }
+        subscriber.stalled = true;
+        sender = subscriber.sender;
+        resizeDispatcher(1);
+      }
+      log.debug("Dropping stalled live-click subscriber for {}", subscriber.urlId);
+      remove(subscriber);
+      sender.interrupt();
+    });
+  }
+
+  // One extra thread per stalled send, so stalled clients never hold the whole pool
+  private synchronized void resizeDispatcher(int delta) {
+    stalledSends += delta;
+    int size = dispatchThreads + stalledSends;
+    if (size > dispatcher.getMaximumPoolSize()) {
+      dispatcher.setMaximumPoolSize(size);
+      dispatcher.setCorePoolSize(size);
+    } else {
+      dispatcher.setCorePoolSize(size);
+      dispatcher.setMaximumPoolSize(size);
+    }
+  }
+
+  private void remove(Subscriber subscriber) {
+    if (!subscriber.removed.compareAndSet(false, true)) {
+      return;
+    }
+    subscribers.compute(subscriber.urlId, (id, set) -> {
+      if (set == null) {
+        return null;
+      }
+      set.remove(subscriber);
+      return set.isEmpty() ? null : set;
+    });
+    releaseUserSlot(subscriber.userId);
+    subscriber.queue.clear();
+  }
+
+  private void releaseUserSlot(UUID userId) {
+    subscriptionsByUser.compute(userId, (id, count) -> count == null || count <= 1 ? null : count - 1);
+  }
+
+  private static ThreadFactory daemon(String name) {
+    return runnable -> {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private static final class Subscriber {
+    private final UUID urlId;
+    private final UUID userId;
+    private final SseEmitter emitter;
+    private final Queue<Object> queue;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean removed = new AtomicBoolean();
+    // Guarded by the subscriber itself
+    private Thread sender;
+    private long sendStartedAt;
+    private boolean stalled;
+
+    private Subscriber(UUID urlId, UUID userId, SseEmitter emitter, Queue<Object> queue) {
+      this.urlId = urlId;
+      this.userId = userId;
+      this.emitter = emitter;
+      this.queue = queue;
+    }
+  }
+}
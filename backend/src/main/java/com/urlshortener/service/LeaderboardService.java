@@ -0,0 +1,192 @@
+package com.urlshortener.service;
+
+import com.urlshortener.config.RedisConfig;
+import com.urlshortener.dto.LinkClicks;
+import com.urlshortener.entity.Url;
+import com.urlshortener.repository.UrlRepository;
+import com.urlshortener.repository.shard.ShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Per-user links ranked by clicks, kept in a Redis sorted set that is updated on every click.
+ * Reading the top k is a single ZREVRANGE instead of loading and sorting every link of the user.
+ * A missing set is rebuilt from the database on first read, so the set only ever holds the
+ * authoritative click counts plus increments applied since.
+ *
+ * <p>Building is one Lua script that skips a set another reader built first, so increments it has
+ * taken are never overwritten. A click that lands between the database read and the build is not
+ * counted by the set; each build expires after {@code leaderboard.ttl-seconds}, which bounds how
+ * long such a miss can show.
+ */
+@Slf4j
+@Service
+public class LeaderboardService {
+
+  private static final String KEY_PREFIX = "leaderboard:";
+
+  // KEYS[1] = leaderboard, ARGV = ttl seconds followed by score, member pairs
+  private static final String SEED_SCRIPT = """
+      if redis.call('EXISTS', KEYS[1]) == 1 then
+        return {0}
+      end
+      for i = 2, #ARGV, 2 do
+        redis.call('ZADD', KEYS[1], ARGV[i], ARGV[i + 1])
+      end
+      redis.call('EXPIRE', KEYS[1], ARGV[1])
+      return {1}
+      """;
+  private static final String SEED_SCRIPT_SHA = sha1(SEED_SCRIPT);
+
+  // KEYS[1] = leaderboard, ARGV = score, member; a missing set stays missing so it is seeded in full
+  private static final String ADD_SCRIPT = """
+      if redis.call('EXISTS', KEYS[1]) == 1 then
+        redis.call('ZADD', KEYS[1], ARGV[1], ARGV[2])
+      end
+      return {0}
+      """;
+  private static final String ADD_SCRIPT_SHA = sha1(ADD_SCRIPT);
+
+  private final RedisConfig redisConfig;
+  private final UrlRepository urlRepository;
+  private final ShardRouter shardRouter;
+
+  @Value("${url.short.domain}")
+  private String shortDomain;
+
+  @Value("${leaderboard.max-limit:100}")
+  private int maxLimit;
+
+  @Value("${leaderboard.ttl-seconds:3600}")
+  private long ttlSeconds;
+
+  public LeaderboardService(RedisConfig redisConfig, UrlRepository urlRepository, ShardRouter shardRouter) {
+    this.redisConfig = redisConfig;
+    this.urlRepository = urlRepository;
+    this.shardRouter = shardRouter;
+  }
+
+  /**
+   * Count a click without waiting for Redis. Only links already on a built leaderboard are touched;
+   * an unbuilt one picks the click up from the database when it is seeded.
+   */
+  public void recordClick(UUID userId, String shortCode) {
+    redisConfig.zincrbyIfMemberAsync(key(userId), 1, shortCode)
+        .exceptionally(error -> {
+          log.warn("Could not update leaderboard for {}: {}", userId, error.getMessage());
+          return null;
+        });
+  }
+
+  /**
+   * Put a new link on the leaderboard if the leaderboard has been built.
+   */
+  public void addLink(UUID userId, String shortCode, long clicks) {
+    try {
+      redisConfig.evalsha(ADD_SCRIPT_SHA, ADD_SCRIPT, List.of(key(userId)), List.of(Long.toString(clicks), shortCode));
+    } catch (JedisException e) {
+      log.warn("Could not add {} to leaderboard: {}", shortCode, e.getMessage());
+    }
+  }
+
+  public void removeLink(UUID userId, String shortCode) {
+    try {
+      redisConfig.zrem(key(userId), shortCode);
+    } catch (JedisException e) {
+      log.warn("Could not remove {} from leaderboard: {}", shortCode, e.getMessage());
+    }
+  }
+
+  /**
+   * The user's most clicked links, best first. Falls back to the database when Redis is unavailable.
+   */
+  @Transactional(readOnly = true)
+  public List<LinkClicks> getTopLinks(UUID userId, int limit) {
+    if (limit < 1 || limit > maxLimit) {
+      throw new IllegalArgumentException("'limit' must be between 1 and " + maxLimit);
+    }
+
+    Map<String, Double> top;
+    try {
+      top = readTop(userId, limit);
+    } catch (JedisException e) {
+      log.warn("Leaderboard unavailable for {}, reading from the database: {}", userId, e.getMessage());
+      // Each shard returns its own top k; the best k of those are the user's top k
+      return shardRouter.gather(() -> urlRepository.findByUserIdOrderByClicksDesc(userId, PageRequest.of(0, limit))).stream()
+          .sorted(Comparator.comparing(Url::getClicks).reversed())
+          .limit(limit)
+          .map(url -> toLinkClicks(url, url.getClicks()))
+          .collect(Collectors.toList());
+    }
+
+    Map<String, Url> urls = shardRouter.gather(top.keySet(), urlRepository::findByShortCodeIn).stream()
+        .collect(Collectors.toMap(Url::getShortCode, Function.identity()));
+    List<LinkClicks> links = new ArrayList<>();
+    top.forEach((shortCode, clicks) -> {
+      Url url = urls.get(shortCode);
+      if (url != null) {
+        links.add(toLinkClicks(url, clicks.longValue()));
+      }
+    });
+    return links;
+  }
+
+  private Map<String, Double> readTop(UUID userId, int limit) {
+    String key = key(userId);
+    if (!redisConfig.exists(key)) {
+      seed(userId, key);
+    }
+    return redisConfig.zrevrangeWithScores(key, 0, limit - 1L);
+  }
+
+  private void seed(UUID userId, String key) {
+    List<String> args = new ArrayList<>();
+    args.add(Long.toString(ttlSeconds));
+    for (Object[] row : shardRouter.gather(() -> urlRepository.findClicksByUserId(userId))) {
+      args.add(Long.toString(((Number) row[1]).longValue()));
+      args.add((String) row[0]);
+    }
+    if (args.size() > 1) {
+      redisConfig.evalsha(SEED_SCRIPT_SHA, SEED_SCRIPT, List.of(key), args);
+    }
+  }
+
+  private LinkClicks toLinkClicks(Url url, long clicks) {
+    return LinkClicks.builder()
+        .shortCode(url.getShortCode())
+        .shortUrl(shortDomain + "/" + url.getShortCode())
+        .longUrl(url.getLongUrl())
+        .clicks(clicks)
+        .build();
+  }
+
+  private static String sha1(String script) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(digest);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 not available", e);
+    }
+  }
+
+  // Hash tag so a sharded Redis keeps the whole leaderboard on one node
+  private String key(UUID userId) {
+    return KEY_PREFIX + "{" + userId + "}";
+  }
+}
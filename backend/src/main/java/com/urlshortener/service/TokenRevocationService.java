@@ -0,0 +1,207 @@
+package com.urlshortener.service;
+
+import com.urlshortener.config.RedisConfig;
+import com.urlshortener.security.TokenClaims;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Revoked tokens, shared by all nodes. Each revocation is an entry in a Redis sorted set scored by
+ * the Redis clock at revocation time, and is announced on a pub/sub channel so every node keeps the
+ * unexpired revocations in memory. The per-request check is a local map lookup; a periodic resync
+ * covers messages missed while a node was disconnected by reading only the entries added since the
+ * last one it saw.
+ */
+@Slf4j
+@Service
+public class TokenRevocationService {
+
+  private static final String REVOCATIONS_KEY = "revocations";
+  private static final String CHANNEL = "token-revocations";
+  private static final int RESYNC_PAGE_SIZE = 500;
+  // Resyncs re-read this far behind the cursor in case the Redis clock steps back, e.g. on failover
+  private static final long CURSOR_OVERLAP_MILLIS = 5000;
+
+  // KEYS[1] = revocations, ARGV[1] = tokenId:expiresAt, ARGV[2] = retention millis. Returns 1 if
+  // this call added the entry and 0 if the token was already revoked. Scoring with the Redis clock
+  // inside the script gives every node the same order, however skewed their own clocks are
+  private static final String REVOKE_SCRIPT = """
+      local time = redis.call('TIME')
+      local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+      local added = redis.call('ZADD', KEYS[1], 'NX', now, ARGV[1])
+      redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now - tonumber(ARGV[2]))
+      return {added}
+      """;
+  private static final String REVOKE_SCRIPT_SHA = sha1(REVOKE_SCRIPT);
+
+  private final RedisConfig redisConfig;
+  // token id -> epoch millis at which the token expires and the entry can be dropped
+  private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+    Thread thread = new Thread(runnable, "token-revocations");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private volatile Subscriber subscriber;
+  private volatile boolean running;
+  // Highest revocation score read from Redis so far
+  private double cursor;
+
+  @Value("${security.revocation.resync-seconds:60}")
+  private long resyncSeconds;
+
+  // Revocations older than the longest-lived token only name expired tokens and are trimmed
+  @Value("${jwt.refreshToken.expiration:86400000}")
+  private long retentionMillis;
+
+  public TokenRevocationService(RedisConfig redisConfig) {
+    this.redisConfig = redisConfig;
+  }
+
+  @PostConstruct
+  void start() {
+    running = true;
+    scheduler.execute(this::listen);
+    scheduler.scheduleWithFixedDelay(this::resync, resyncSeconds, resyncSeconds, TimeUnit.SECONDS);
+  }
+
+  @PreDestroy
+  void stop() {
+    running = false;
+    Subscriber current = subscriber;
+    if (current != null && current.isSubscribed()) {
+      current.unsubscribe();
+    }
+    scheduler.shutdownNow();
+  }
+
+  /**
+   * Revoke a token until it expires, and return whether this call revoked it: false if the token
+   * had expired or was already revoked, here or on any node Redis has heard from. Callers that must
+   * use a token only once can rely on exactly one concurrent call returning true. The revocation
+   * applies locally at once even if Redis is unavailable; other nodes learn about it through Redis.
+   */
+  public boolean revoke(TokenClaims claims) {
+    long expiresAt = claims.getExpiresAt().toEpochMilli();
+    if (expiresAt <= System.currentTimeMillis()) {
+      return false;
+    }
+    if (revoked.putIfAbsent(claims.getTokenId(), expiresAt) != null) {
+      return false;
+    }
+    String entry = claims.getTokenId() + ":" + expiresAt;
+    try {
+      Object reply = redisConfig.evalsha(REVOKE_SCRIPT_SHA, REVOKE_SCRIPT, List.of(REVOCATIONS_KEY),
+          List.of(entry, Long.toString(retentionMillis)));
+      if (((Number) ((List<?>) reply).get(0)).longValue() == 0) {
+        // Another node revoked it first and has announced it already
+        return false;
+      }
+      redisConfig.publish(CHANNEL, entry);
+    } catch (JedisException e) {
+      log.warn("Could not share token revocation, it only applies on this node: {}", e.getMessage());
+    }
+    return true;
+  }
+
+  public boolean isRevoked(TokenClaims claims) {
+    Long expiresAt = revoked.get(claims.getTokenId());
+    return expiresAt != null && expiresAt > System.currentTimeMillis();
+  }
+
+  /**
+   * Load the revocations added in Redis since the last resync and drop expired local entries. The
+   * first resync after startup reads every retained revocation.
+   */
+  synchronized void resync() {
+    long now = System.currentTimeMillis();
+    revoked.values().removeIf(expiresAt -> expiresAt <= now);
+    try {
+      double from = cursor - CURSOR_OVERLAP_MILLIS;
+      double newest = cursor;
+      long offset = 0;
+      Map<String, Double> page;
+      do {
+        page = redisConfig.zrangeByScoreWithScores(REVOCATIONS_KEY, from, offset, RESYNC_PAGE_SIZE);
+        for (Map.Entry<String, Double> entry : page.entrySet()) {
+          remember(entry.getKey());
+          newest = Math.max(newest, entry.getValue());
+        }
+        offset += page.size();
+      } while (page.size() == RESYNC_PAGE_SIZE);
+      cursor = newest;
+    } catch (JedisException e) {
+      log.warn("Could not resync token revocations: {}", e.getMessage());
+    }
+  }
+
+  // Entries are tokenId:expiresAt, both in the sorted set and on the channel
+  private void remember(String entry) {
+    int separator = entry.lastIndexOf(':');
+    if (separator <= 0) {
+      return;
+    }
+    long expiresAt = Long.parseLong(entry.substring(separator + 1));
+    if (expiresAt > System.currentTimeMillis()) {
+      revoked.merge(entry.substring(0, separator), expiresAt, Math::max);
+    }
+  }
+
+  private static String sha1(String script) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(digest);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 not available", e);
+    }
+  }
+
+  private void listen() {
+    long backoffMillis = 1000;
+    while (running) {
+      try {
+        subscriber = new Subscriber();
+        redisConfig.subscribe(subscriber, CHANNEL);
+        backoffMillis = 1000;
+      } catch (JedisException e) {
+        log.warn("Token revocation subscription lost, retrying in {} ms: {}", backoffMillis, e.getMessage());
+        try {
+          Thread.sleep(backoffMillis);
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        backoffMillis = Math.min(backoffMillis * 2, 30000);
+      }
+    }
+  }
+
+  private final class Subscriber extends JedisPubSub {
+    @Override
+    public void onSubscribe(String channel, int subscribedChannels) {
+      // Anything published while we were not listening is picked up from the sorted set
+      scheduler.execute(TokenRevocationService.this::resync);
+    }
+
+    @Override
+    public void onMessage(String channel, String message) {
+      remember(message);
+    }
+  }
+}
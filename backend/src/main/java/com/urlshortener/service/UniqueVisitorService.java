@@ -0,0 +1,104 @@
+package com.urlshortener.service;
+
+import com.urlshortener.config.RedisConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Approximate unique-visitor counts backed by one Redis HyperLogLog sketch per URL and day.
+ * Sketches are mergeable, so a count over any set of days is a single PFCOUNT regardless of traffic.
+ */
+@Slf4j
+@Service
+public class UniqueVisitorService {
+
+  private static final String KEY_PREFIX = "visitors:";
+
+  private final RedisConfig redisConfig;
+
+  @Value("${analytics.visitors.retention-days:400}")
+  private int retentionDays;
+
+  public UniqueVisitorService(RedisConfig redisConfig) {
+    this.redisConfig = redisConfig;
+  }
+
+  /**
+   * Record a visit in the sketch for the given day. Both commands are sent without waiting for the
+   * replies, and failures are logged and swallowed so a Redis problem never breaks or slows a redirect.
+   */
+  public void recordVisit(UUID urlId, LocalDate day, String ipAddress, String userAgent) {
+    String key = key(urlId, day);
+    CompletableFuture.allOf(
+            redisConfig.pfaddAsync(key, fingerprint(ipAddress, userAgent)),
+            redisConfig.expireAsync(key, retentionDays * 86400))
+        .exceptionally(error -> {
+          log.warn("Could not record unique visitor for {}: {}", urlId, error.getMessage());
+          return null;
+        });
+  }
+
+  /**
+   * Unique visitors across all given days, merged server-side. Null when Redis is unavailable: the
+   * sketches are the only record of visitors, and a report can do without them.
+   */
+  public Long countUniqueVisitors(UUID urlId, Collection<LocalDate> days) {
+    if (days.isEmpty()) {
+      return 0L;
+    }
+    String[] keys = days.stream().map(day -> key(urlId, day)).toArray(String[]::new);
+    try {
+      return redisConfig.pfcount(keys);
+    } catch (JedisException e) {
+      log.warn("Unique visitors unavailable for {}: {}", urlId, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Unique visitors for every day in the inclusive range; null when Redis is unavailable.
+   */
+  public Long countUniqueVisitors(UUID urlId, LocalDate from, LocalDate to) {
+    return countUniqueVisitors(urlId, from.datesUntil(to.plusDays(1)).toList());
+  }
+
+  /**
+   * Unique visitors per day, keyed by ISO date; null when Redis is unavailable. The per-day
+   * PFCOUNTs are all sent before the first reply is awaited, so the range costs one round trip.
+   */
+  public Map<String, Long> uniqueVisitorsByDay(UUID urlId, Collection<LocalDate> days) {
+    List<LocalDate> sorted = days.stream().sorted().toList();
+    List<Long> counts;
+    try {
+      counts = redisConfig.pfcountEach(sorted.stream().map(day -> key(urlId, day)).toList());
+    } catch (JedisException e) {
+      log.warn("Unique visitors by day unavailable for {}: {}", urlId, e.getMessage());
+      return null;
+    }
+    Map<String, Long> byDay = new LinkedHashMap<>();
+    for (int i = 0; i < sorted.size(); i++) {
+      byDay.put(sorted.get(i).format(DateTimeFormatter.ISO_DATE), counts.get(i));
+    }
+    return byDay;
+  }
+
+  // The hash tag keeps every day of a URL on the same Redis node so multi-key PFCOUNT stays valid
+  private String key(UUID urlId, LocalDate day) {
+    return KEY_PREFIX + "{" + urlId + "}:" + day.format(DateTimeFormatter.ISO_DATE);
+  }
+
+  private String fingerprint(String ipAddress, String userAgent) {
+    return (ipAddress == null ? "" : ipAddress) + "|" + (userAgent == null ? "" : userAgent);
+  }
+}
@@ -0,0 +1,160 @@
+package com.urlshortener.service;
+
+import com.urlshortener.config.RedisConfig;
+import com.urlshortener.repository.UrlRepository;
+import com.urlshortener.repository.shard.ShardContext;
+import com.urlshortener.repository.shard.ShardRouter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes links that expired more than {@code urls.expiry.grace-seconds} ago; until then they answer
+ * 410. Each batch is one range scan of the {@code (deleted_at, expires_at)} index and one update that soft-deletes
+ * the links it found, after which {@link UrlPurger} removes them and their clicks.
+ *
+ * <p>Only the node holding the Redis lease sweeps. The lease is taken with SETNX and left to expire,
+ * so no node sweeps again within {@code urls.expiry.lease-seconds}. Sweeping is idempotent: should
+ * two nodes ever overlap, they only repeat work. Without Redis nobody sweeps, and expired links go
+ * on answering 410.
+ */
+@Slf4j
+@Service
+public class UrlExpirySweeper {
+
+  private static final String LEASE_KEY = "lease:url-expiry-sweep";
+
+  private final UrlRepository urlRepository;
+  private final LeaderboardService leaderboardService;
+  private final AnalyticsCache analyticsCache;
+  private final RedisConfig redisConfig;
+  private final ShardRouter shardRouter;
+  private final TransactionTemplate transaction;
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "url-expiry-sweeper");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  @Value("${urls.expiry.enabled:true}")
+  private boolean enabled;
+
+  @Value("${urls.expiry.interval-seconds:60}")
+  private long intervalSeconds;
+
+  @Value("${urls.expiry.lease-seconds:60}")
+  private int leaseSeconds;
+
+  @Value("${urls.expiry.grace-seconds:86400}")
+  private long graceSeconds;
+
+  @Value("${urls.expiry.batch-size:500}")
+  private int batchSize;
+
+  @Value("${urls.expiry.max-batches:20}")
+  private int maxBatches;
+
+  public UrlExpirySweeper(UrlRepository urlRepository, LeaderboardService leaderboardService, AnalyticsCache analyticsCache,
+      RedisConfig redisConfig, PlatformTransactionManager transactionManager, ShardRouter shardRouter) {
+    this.urlRepository = urlRepository;
+    this.leaderboardService = leaderboardService;
+    this.analyticsCache = analyticsCache;
+    this.redisConfig = redisConfig;
+    this.shardRouter = shardRouter;
+    this.transaction = new TransactionTemplate(transactionManager);
+  }
+
+  @PostConstruct
+  void start() {
+    if (enabled) {
+      scheduler.scheduleWithFixedDelay(this::run, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+  }
+
+  @PreDestroy
+  void stop() {
+    scheduler.shutdownNow();
+  }
+
+  /**
+   * Delete up to {@code urls.expiry.max-batches} batches of expired links per shard, oldest expiry
+   * first. Returns the number of links deleted.
+   */
+  public int sweep() {
+    LocalDateTime now = LocalDateTime.now();
+    LocalDateTime cutoff = now.minusSeconds(graceSeconds);
+    int swept = 0;
+    for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+      try (ShardContext.Scope scope = shardRouter.use(shard)) {
+        for (int batch = 0; batch < maxBatches; batch++) {
+          List<Object[]> expired = transaction.execute(status -> {
+            List<Object[]> rows = urlRepository.findExpired(cutoff, PageRequest.of(0, batchSize));
+            if (!rows.isEmpty()) {
+              urlRepository.markDeletedByShortCodes(rows.stream().map(row -> (String) row[0]).toList(), now);
+            }
+            return rows;
+          });
+          for (Object[] row : expired) {
+            leaderboardService.removeLink((UUID) row[1], (String) row[0]);
+            analyticsCache.evict((String) row[0]);
+          }
+          swept += expired.size();
+          if (expired.size() < batchSize) {
+            break;
+          }
+        }
+      }
+    }
+    return swept;
+  }
+
+  /**
+   * Take the sweep lease if no node holds it.
+   */
+  public boolean acquireLease() {
+    long now = System.currentTimeMillis();
+    try {
+      if (redisConfig.setnx(LEASE_KEY, Long.toString(now + leaseSeconds * 1000L)) == 1L) {
+        redisConfig.expire(LEASE_KEY, leaseSeconds);
+        return true;
+      }
+      // A holder that stopped between SETNX and EXPIRE leaves a key that never expires; its value
+      // says when the lease ended, and the next run can take it again
+      String deadline = redisConfig.get(LEASE_KEY);
+      if (deadline != null && Long.parseLong(deadline) < now) {
+        redisConfig.del(LEASE_KEY);
+      }
+      return false;
+    } catch (JedisException e) {
+      log.warn("Could not take the expiry sweep lease, skipping this run: {}", e.getMessage());
+      return false;
+    }
+  }
+
+  private void run() {
+    // An exception would cancel the schedule; the next run picks up whatever was left
+    try {
+      if (acquireLease()) {
+        int swept = sweep();
+        if (swept > 0) {
+          log.info("Deleted {} expired link(s)", swept);
+        }
+      }
+    } catch (RuntimeException e) {
+      log.warn("Sweeping expired links failed: {}", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package com.urlshortener.service;
+
+import com.urlshortener.repository.ClickAnalyticsRepository;
+import com.urlshortener.repository.UrlRepository;
+import com.urlshortener.repository.shard.ShardContext;
+import com.urlshortener.repository.shard.ShardRouter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes soft-deleted links in the background. A link's clicks go first, in set-based batches of
+ * {@code urls.purge.batch-size} rows, each in its own short transaction so no statement holds many
+ * locks for long; the link row follows once it has no clicks left. Every shard is purged in turn.
+ *
+ * <p>Purging is idempotent, so nodes that happen to purge the same link at once only repeat work.
+ * Clicks in the segment store are not deleted: nothing scans them once the link is gone.
+ */
+@Slf4j
+@Service
+public class UrlPurger {
+
+  private final UrlRepository urlRepository;
+  private final ClickAnalyticsRepository clickAnalyticsRepository;
+  private final ShardRouter shardRouter;
+  private final TransactionTemplate transaction;
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "url-purger");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  @Value("${urls.purge.enabled:true}")
+  private boolean enabled;
+
+  @Value("${urls.purge.interval-seconds:60}")
+  private long intervalSeconds;
+
+  @Value("${urls.purge.batch-size:1000}")
+  private int batchSize;
+
+  @Value("${urls.purge.max-urls:100}")
+  private int maxUrls;
+
+  public UrlPurger(UrlRepository urlRepository, ClickAnalyticsRepository clickAnalyticsRepository,
+      PlatformTransactionManager transactionManager, ShardRouter shardRouter) {
+    this.urlRepository = urlRepository;
+    this.clickAnalyticsRepository = clickAnalyticsRepository;
+    this.shardRouter = shardRouter;
+    this.transaction = new TransactionTemplate(transactionManager);
+  }
+
+  @PostConstruct
+  void start() {
+    if (enabled) {
+      scheduler.scheduleWithFixedDelay(this::run, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+  }
+
+  @PreDestroy
+  void stop() {
+    scheduler.shutdownNow();
+  }
+
+  /**
+   * Purge up to {@code urls.purge.max-urls} deleted links per shard, oldest deletions first.
+   * Returns the number of links removed.
+   */
+  public int purge() {
+    int purged = 0;
+    for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+      try (ShardContext.Scope scope = shardRouter.use(shard)) {
+        List<String> shortCodes = transaction.execute(status -> urlRepository.findDeletedShortCodes(maxUrls));
+        for (String shortCode : shortCodes) {
+          purged += purgeUrl(shortCode);
+        }
+      }
+    }
+    return purged;
+  }
+
+  // Every statement re-checks deleted_at, so a link can never lose clicks while it is live
+  private int purgeUrl(String shortCode) {
+    int deleted;
+    do {
+      deleted = transaction.execute(status -> clickAnalyticsRepository.deleteBatchOfDeletedUrl(shortCode, batchSize));
+    } while (deleted == batchSize);
+    return transaction.execute(status -> urlRepository.purgeDeleted(shortCode));
+  }
+
+  private void run() {
+    // An exception would cancel the schedule; the next run retries whatever was left
+    try {
+      int purged = purge();
+      if (purged > 0) {
+        log.info("Purged {} deleted link(s)", purged);
+      }
+    } catch (RuntimeException e) {
+      log.warn("Purging deleted links failed: {}", e.getMessage());
+    }
+  }
+}
@@ -1,41 +1,73 @@
 package com.urlshortener.service;
 
+import com.urlshortener.dto.UrlPage;
 import com.urlshortener.dto.UrlRequest;
 import com.urlshortener.dto.UrlResponse;
-import com.urlshortener.entity.ClickAnalytics;
+import com.urlshortener.dto.UrlSummary;
+import com.urlshortener.dto.ClickEvent;
 import com.urlshortener.entity.Url;
 import com.urlshortener.entity.User;
+import com.urlshortener.exception.ForbiddenException;
+import com.urlshortener.exception.GoneException;
 import com.urlshortener.exception.ResourceNotFoundException;
-import com.urlshortener.exception.UnauthorizedException;
-import com.urlshortener.repository.ClickAnalyticsRepository;
+import com.urlshortener.repository.ClickStore;
 import com.urlshortener.repository.UrlRepository;
 import com.urlshortener.repository.UserRepository;
+import com.urlshortener.repository.shard.ShardContext;
+import com.urlshortener.repository.shard.ShardRouter;
 import com.urlshortener.util.ShortCodeGenerator;
 import com.urlshortener.util.UrlValidator;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Service
 public class UrlService {
 
+  // Listing order, as the database sorts: newest first, ties broken by id, which PostgreSQL
+  // compares as unsigned bytes
+  private static final Comparator<Url> NEWEST_FIRST = Comparator.comparing(Url::getCreatedAt)
+      .thenComparing(Url::getId, UrlService::compareUnsigned)
+      .reversed();
+
+  // A cursor before every link, where the first page starts
+  private static final LocalDateTime FIRST_CREATED_AT = LocalDateTime.of(9999, 12, 31, 0, 0);
+  private static final UUID FIRST_ID = new UUID(-1L, -1L);
+
   private final UrlRepository urlRepository;
   private final UserRepository userRepository;
-  private final ClickAnalyticsRepository clickAnalyticsRepository;
+  private final ClickStore clickStore;
   private final ShortCodeGenerator shortCodeGenerator;
   private final UrlValidator urlValidator;
+  private final UniqueVisitorService uniqueVisitorService;
+  private final ClickStreamHub clickStreamHub;
+  private final AnalyticsCache analyticsCache;
+  private final LeaderboardService leaderboardService;
+  private final ShardRouter shardRouter;
 
-  public UrlService(UrlRepository urlRepository, UserRepository userRepository, ClickAnalyticsRepository clickAnalyticsRepository, ShortCodeGenerator shortCodeGenerator, UrlValidator urlValidator) {
+  public UrlService(UrlRepository urlRepository, UserRepository userRepository, ClickStore clickStore, ShortCodeGenerator shortCodeGenerator, UrlValidator urlValidator, UniqueVisitorService uniqueVisitorService, ClickStreamHub clickStreamHub, AnalyticsCache analyticsCache, LeaderboardService leaderboardService, ShardRouter shardRouter) {
     this.urlRepository = urlRepository;
     this.userRepository = userRepository;
-    this.clickAnalyticsRepository = clickAnalyticsRepository;
+    this.clickStore = clickStore;
     this.shortCodeGenerator = shortCodeGenerator;
     this.urlValidator = urlValidator;
+    this.uniqueVisitorService = uniqueVisitorService;
+    this.clickStreamHub = clickStreamHub;
+    this.analyticsCache = analyticsCache;
+    this.leaderboardService = leaderboardService;
+    this.shardRouter = shardRouter;
   }
 
   @Value("${url.short.domain}")
@@ -44,99 +76,185 @@ public class UrlService {
   @Value("${url.short.length}")
   private int shortCodeLength;
 
+  @Value("${urls.page.default-limit:50}")
+  private int defaultPageLimit;
+
+  @Value("${urls.page.max-limit:200}")
+  private int maxPageLimit;
+
   @Transactional
-  public UrlResponse createShortUrl(UrlRequest request, String username) {
+  public UrlResponse createShortUrl(UrlRequest request, UUID userId) {
     if (!urlValidator.isValidUrl(request.getLongUrl())) {
       throw new IllegalArgumentException("Invalid URL format");
     }
 
-    User user = userRepository.findByUsername(username)
-        .orElseThrow(() -> new ResourceNotFoundException("User not found"));
+    // A reference is enough to set the owner; the id comes from the verified token
+    User user = userRepository.getReferenceById(userId);
 
-    // Check if URL already exists
-    Optional<Url> exists = urlRepository.findByLongUrlAndUser(request.getLongUrl(), user);
+    // Check if URL already exists; links are sharded by short code, so every shard is asked. Only
+    // unlimited links are shared: a limited link is always new, and never handed out for another request
+    boolean limited = request.getExpiresAt() != null || request.getMaxClicks() != null;
+    Optional<Url> exists = limited
+        ? Optional.empty()
+        : shardRouter.gather(() -> urlRepository.findByLongUrlAndUserAndExpiresAtIsNullAndMaxClicksIsNull(request.getLongUrl(), user))
+            .stream()
+            .findFirst();
 
     if (exists.isPresent()) {
       return mapToUrlResponse(exists.get());
     }
 
-    String shortCode;
-      // Generate a unique short code
-      do {
-        shortCode = shortCodeGenerator.generate(shortCodeLength);
-      } while (urlRepository.existsByShortCode(shortCode));
-
-
-    Url url = Url.builder()
-        .user(user)
-        .shortCode(shortCode)
-        .longUrl(request.getLongUrl())
-        .clicks(0)
-        .build();
-
-    url = urlRepository.save(url);
-
-    return mapToUrlResponse(url);
+    // The first code picks the shard; the transaction is bound to it from the first query on, so
+    // a code that is taken is replaced by another code of the same shard
+    String shortCode = shortCodeGenerator.generate(shortCodeLength);
+    int shard = shardRouter.shardFor(shortCode);
+    try (ShardContext.Scope scope = shardRouter.use(shard)) {
+      while (urlRepository.existsByShortCode(shortCode)) {
+        do {
+          shortCode = shortCodeGenerator.generate(shortCodeLength);
+        } while (shardRouter.shardFor(shortCode) != shard);
+      }
+
+      Url url = Url.builder()
+          .user(user)
+          .shortCode(shortCode)
+          .longUrl(request.getLongUrl())
+          .clicks(0)
+          .expiresAt(request.getExpiresAt())
+          .maxClicks(request.getMaxClicks())
+          .build();
+
+      url = urlRepository.save(url);
+      leaderboardService.addLink(userId, url.getShortCode(), 0);
+
+      return mapToUrlResponse(url);
+    }
   }
 
+  /**
+   * One page of the user's links, newest first. {@code cursor} is the {@link UrlPage#getNextCursor()}
+   * of the previous page, null for the first; {@code search} keeps links whose short code or long URL
+   * starts with it. Each page costs one index range scan of {@code limit + 1} rows per shard, however
+   * many links the user has.
+   */
   @Transactional(readOnly = true)
-  public List<UrlResponse> getUserUrls(String username) {
-    User user = userRepository.findByUsername(username)
-        .orElseThrow(() -> new ResourceNotFoundException("User not found"));
+  public UrlPage getUserUrls(UUID userId, String cursor, Integer limit, String search) {
+    int size = limit != null ? limit : defaultPageLimit;
+    if (size < 1 || size > maxPageLimit) {
+      throw new IllegalArgumentException("'limit' must be between 1 and " + maxPageLimit);
+    }
 
-    return urlRepository.findByUser(user).stream()
-        .map(this::mapToUrlResponse)
+    LocalDateTime createdAt = FIRST_CREATED_AT;
+    UUID id = FIRST_ID;
+    if (cursor != null && !cursor.isEmpty()) {
+      try {
+        String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 2);
+        createdAt = LocalDateTime.parse(position[0]);
+        id = UUID.fromString(position[1]);
+      } catch (IllegalArgumentException | DateTimeParseException | ArrayIndexOutOfBoundsException e) {
+        throw new IllegalArgumentException("Invalid cursor");
+      }
+    }
+    LocalDateTime afterCreatedAt = createdAt;
+    UUID afterId = id;
+    String prefix = search != null && !search.isBlank() ? likePrefix(search.trim()) : null;
+
+    // One row more than the page tells whether another page follows; with several shards each
+    // returns its own first rows and the newest of all of them make the page
+    PageRequest rows = PageRequest.of(0, size + 1);
+    List<Url> urls = shardRouter.gather(() -> prefix == null
+            ? urlRepository.findPageByUserId(userId, afterCreatedAt, afterId, rows)
+            : urlRepository.searchPageByUserId(userId, afterCreatedAt, afterId, prefix, rows))
+        .stream()
+        .sorted(NEWEST_FIRST)
+        .limit(size + 1L)
         .collect(Collectors.toList());
+
+    String nextCursor = null;
+    if (urls.size() > size) {
+      urls = urls.subList(0, size);
+      nextCursor = encodeCursor(urls.get(size - 1));
+    }
+    return new UrlPage(urls.stream().map(this::mapToUrlResponse).collect(Collectors.toList()), nextCursor);
   }
 
   @Transactional(readOnly = true)
-  public UrlResponse getUrl(String shortCode, String username) {
-    Url url = urlRepository.findByShortCode(shortCode)
-        .orElseThrow(() -> new ResourceNotFoundException("URL not found"));
-
-    User user = userRepository.findByUsername(username)
-        .orElseThrow(() -> new ResourceNotFoundException("User not found"));
-
-    if (!url.getUser().getId().equals(user.getId())) {
-      throw new UnauthorizedException("You don't have permission to access this URL");
+  public UrlResponse getUrl(String shortCode, UUID userId) {
+    try (ShardContext.Scope scope = shardRouter.use(shortCode)) {
+      return mapToUrlResponse(findOwned(shortCode, userId, "access"));
     }
-
-    return mapToUrlResponse(url);
   }
 
+  /**
+   * Resolve a short code for a redirect and count the click. Expiry is decided from the same row
+   * the redirect reads, and the click cap by the increment itself, so a limited link costs no more
+   * statements than any other; an expired link is {@link GoneException}.
+   */
   @Transactional
-  public String getLongUrlAndIncrementClicks(String shortCode, String referrer, String userAgent, String ipAddress) {
-    Url url = urlRepository.findByShortCode(shortCode)
-        .orElseThrow(() -> new ResourceNotFoundException("URL not found"));
-
-    // Increment click count
-    urlRepository.incrementClicks(shortCode);
-
-    // Record click analytics
-    ClickAnalytics analytics = ClickAnalytics.builder()
-        .url(url)
-        .referrer(referrer)
-        .userAgent(userAgent)
-        .ipAddress(ipAddress)
-        .build();
-    clickAnalyticsRepository.save(analytics);
-
-    return url.getLongUrl();
+  public UrlSummary resolveClick(String shortCode, String referrer, String userAgent, String ipAddress) {
+    try (ShardContext.Scope scope = shardRouter.use(shortCode)) {
+      UrlSummary url = urlRepository.findSummaryByShortCode(shortCode)
+          .orElseThrow(() -> new ResourceNotFoundException("URL not found"));
+
+      LocalDateTime now = LocalDateTime.now();
+      // The update counts nothing once the cap is used up, also when concurrent clicks race for the last one
+      if (url.isExpired(now) || urlRepository.incrementClicks(shortCode, now) == 0) {
+        throw new GoneException("URL has expired");
+      }
+
+      // Record click analytics
+      ClickEvent click = ClickEvent.builder()
+          .urlId(url.getId())
+          .clickedAt(now)
+          .referrer(referrer)
+          .userAgent(userAgent)
+          .ipAddress(ipAddress)
+          .build();
+      clickStore.record(click);
+
+      uniqueVisitorService.recordVisit(url.getId(), click.getClickedAt().toLocalDate(), ipAddress, userAgent);
+      clickStreamHub.publish(click);
+      analyticsCache.onClick(shortCode);
+      leaderboardService.recordClick(url.getOwnerId(), shortCode);
+
+      return url;
+    }
   }
 
   @Transactional
-  public void deleteUrl(String shortCode, String username) {
-    Url url = urlRepository.findByShortCode(shortCode)
+  public void deleteUrl(String shortCode, UUID userId) {
+    try (ShardContext.Scope scope = shardRouter.use(shortCode)) {
+      UrlSummary url = findOwned(shortCode, userId, "delete");
+      // Only the row is marked here; its clicks can be many and UrlPurger removes them in batches
+      urlRepository.markDeleted(url.getId(), LocalDateTime.now());
+      leaderboardService.removeLink(userId, shortCode);
+      analyticsCache.evict(shortCode);
+    }
+  }
+
+  // The URL and its owner in one statement: missing is 404, someone else's is 403
+  private UrlSummary findOwned(String shortCode, UUID userId, String action) {
+    UrlSummary url = urlRepository.findSummaryByShortCode(shortCode)
         .orElseThrow(() -> new ResourceNotFoundException("URL not found"));
+    if (!url.getOwnerId().equals(userId)) {
+      throw new ForbiddenException("You don't have permission to " + action + " this URL");
+    }
+    return url;
+  }
 
-    User user = userRepository.findByUsername(username)
-        .orElseThrow(() -> new ResourceNotFoundException("User not found"));
+  private static String encodeCursor(Url url) {
+    String position = url.getCreatedAt() + "|" + url.getId();
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+  }
 
-    if (!url.getUser().getId().equals(user.getId())) {
-      throw new UnauthorizedException("You don't have permission to delete this URL");
-    }
+  // Matches the repository's ESCAPE '!'
+  private static String likePrefix(String search) {
+    return search.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+  }
 
-    urlRepository.delete(url);
+  private static int compareUnsigned(UUID a, UUID b) {
+    int high = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+    return high != 0 ? high : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
   }
 
   private UrlResponse mapToUrlResponse(Url url) {
@@ -147,8 +265,21 @@ public class UrlService {
         .longUrl(url.getLongUrl())
         .createdAt(url.getCreatedAt())
         .clicks(url.getClicks())
+        .expiresAt(url.getExpiresAt())
+        .maxClicks(url.getMaxClicks())
         .build();
   }
-}
-
 
+  private UrlResponse mapToUrlResponse(UrlSummary url) {
+    return UrlResponse.builder()
+        .id(url.getId())
+        .shortCode(url.getShortCode())
+        .shortUrl(shortDomain + "/" + url.getShortCode())
+        .longUrl(url.getLongUrl())
+        .createdAt(url.getCreatedAt())
+        .clicks(url.getClicks())
+        .expiresAt(url.getExpiresAt())
+        .maxClicks(url.getMaxClicks())
+        .build();
+  }
+}
@@ -0,0 +1,40 @@
+package com.urlshortener.service;
+
+import com.urlshortener.entity.User;
+import com.urlshortener.exception.ResourceNotFoundException;
+import com.urlshortener.repository.UserRepository;
+import com.urlshortener.util.ExpiringCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Short-lived cache of user entities by username for the few paths that still need the entity,
+ * such as refreshing a token or accepting an access token issued without user claims.
+ */
+@Component
+public class UserCache {
+
+  private final UserRepository userRepository;
+  private final ExpiringCache<String, User> users;
+
+  public UserCache(UserRepository userRepository,
+      @Value("${users.cache.ttl-seconds:60}") long ttlSeconds,
+      @Value("${users.cache.max-entries:10000}") int maxEntries) {
+    this.userRepository = userRepository;
+    this.users = new ExpiringCache<>(Duration.ofSeconds(ttlSeconds), maxEntries);
+  }
+
+  public User getByUsername(String username) {
+    User user = users.computeIfAbsent(username, name -> userRepository.findByUsername(name).orElse(null));
+    if (user == null) {
+      throw new ResourceNotFoundException("User not found");
+    }
+    return user;
+  }
+
+  public void evict(String username) {
+    users.invalidate(username);
+  }
+}
@@ -0,0 +1,104 @@
+package com.urlshortener.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Consecutive-failure circuit breaker. After {@code failureThreshold} failures in a row calls are
+ * rejected without being attempted for {@code openDuration}; then a single probe call is let through,
+ * and its outcome closes the breaker again or keeps it open for another period.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+  public enum State { CLOSED, OPEN, HALF_OPEN }
+
+  /**
+   * Outcome of {@link #tryAcquirePermission()}, handed back with the call's result.
+   */
+  public enum Permit {
+    DENIED,
+    CALL,
+    /** The single call let through while half open; only its result closes or reopens the breaker. */
+    PROBE;
+
+    public boolean isGranted() {
+      return this != DENIED;
+    }
+  }
+
+  private final String name;
+  private final int failureThreshold;
+  private final long openNanos;
+  private final AtomicInteger consecutiveFailures = new AtomicInteger();
+  private final AtomicBoolean probeInFlight = new AtomicBoolean();
+  private volatile State state = State.CLOSED;
+  private volatile long openedAt;
+
+  public CircuitBreaker(String name, int failureThreshold, Duration openDuration) {
+    this.name = name;
+    this.failureThreshold = failureThreshold;
+    this.openNanos = openDuration.toNanos();
+  }
+
+  /**
+   * Whether a call may be attempted now. A caller that gets a granted permit must report the
+   * outcome with {@link #onSuccess(Permit)} or {@link #onFailure(Permit)}, passing the permit back.
+   */
+  public Permit tryAcquirePermission() {
+    State current = state;
+    if (current == State.CLOSED) {
+      return Permit.CALL;
+    }
+    if (current == State.OPEN) {
+      if (System.nanoTime() - openedAt < openNanos) {
+        return Permit.DENIED;
+      }
+      transition(State.OPEN, State.HALF_OPEN);
+    }
+    // Half open: exactly one probe at a time
+    return probeInFlight.compareAndSet(false, true) ? Permit.PROBE : Permit.DENIED;
+  }
+
+  public void onSuccess(Permit permit) {
+    consecutiveFailures.set(0);
+    // Calls that started before the breaker opened finish with ordinary permits and do not close it
+    if (permit == Permit.PROBE) {
+      transition(State.HALF_OPEN, State.CLOSED);
+      probeInFlight.set(false);
+    }
+  }
+
+  public void onFailure(Permit permit) {
+    if (permit == Permit.PROBE) {
+      open();
+      probeInFlight.set(false);
+    } else if (consecutiveFailures.incrementAndGet() >= failureThreshold && state == State.CLOSED) {
+      open();
+    }
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  private void open() {
+    openedAt = System.nanoTime();
+    consecutiveFailures.set(0);
+    State previous = state;
+    state = State.OPEN;
+    if (previous != State.OPEN) {
+      log.warn("Circuit breaker '{}' opened, calls are rejected for {} ms", name, openNanos / 1_000_000);
+    }
+  }
+
+  private synchronized void transition(State from, State to) {
+    if (state == from) {
+      state = to;
+      log.info("Circuit breaker '{}' is now {}", name, to);
+    }
+  }
+}
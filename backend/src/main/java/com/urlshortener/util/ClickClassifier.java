@@ -0,0 +1,48 @@
+package com.urlshortener.util;
+
+import org.springframework.stereotype.Component;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Buckets raw click attributes into the groups shown in analytics.
+ */
+@Component
+public class ClickClassifier {
+
+  private static final Pattern DOMAIN_PATTERN = Pattern.compile("^(?:https?://)?(?:www\\.)?([^:/\\n?]+)");
+
+  public String referrerDomain(String referrer) {
+    if (referrer == null || referrer.isEmpty()) {
+      return "Direct";
+    }
+
+    try {
+      Matcher matcher = DOMAIN_PATTERN.matcher(referrer);
+      return matcher.find() ? matcher.group(1) : "Unknown";
+    } catch (Exception e) {
+      return "Unknown";
+    }
+  }
+
+  public String browser(String userAgent) {
+    if (userAgent == null || userAgent.isEmpty()) {
+      return "Unknown";
+    }
+
+    if (userAgent.contains("Chrome") && !userAgent.contains("Chromium")) {
+      return "Chrome";
+    } else if (userAgent.contains("Firefox")) {
+      return "Firefox";
+    } else if (userAgent.contains("Safari") && !userAgent.contains("Chrome")) {
+      return "Safari";
+    } else if (userAgent.contains("Edge")) {
+      return "Edge";
+    } else if (userAgent.contains("MSIE") || userAgent.contains("Trident")) {
+      return "Internet Explorer";
+    } else {
+      return "Other";
+    }
+  }
+}
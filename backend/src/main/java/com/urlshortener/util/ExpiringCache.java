@@ -0,0 +1,103 @@
+package com.urlshortener.util;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Small concurrent cache with a per-cache time to live and an upper bound on entries.
+ * When full, expired entries are swept first and then arbitrary entries are evicted,
+ * which is good enough for caches whose entries are cheap to rebuild.
+ */
+public class ExpiringCache<K, V> {
+
+  private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+  private final long ttlNanos;
+  private final int maxEntries;
+
+  public ExpiringCache(Duration ttl, int maxEntries) {
+    this.ttlNanos = ttl.toNanos();
+    this.maxEntries = maxEntries;
+  }
+
+  public V get(K key) {
+    Entry<V> entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.isExpired(System.nanoTime())) {
+      entries.remove(key, entry);
+      return null;
+    }
+    return entry.value;
+  }
+
+  public void put(K key, V value) {
+    put(key, value, ttlNanos);
+  }
+
+  /**
+   * Store a value that must not outlive the given duration, even if it is shorter than the cache TTL.
+   */
+  public void put(K key, V value, Duration ttl) {
+    put(key, value, Math.min(ttlNanos, ttl.toNanos()));
+  }
+
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+    V value = get(key);
+    if (value == null) {
+      value = loader.apply(key);
+      if (value != null) {
+        put(key, value);
+      }
+    }
+    return value;
+  }
+
+  public void invalidate(K key) {
+    entries.remove(key);
+  }
+
+  public void clear() {
+    entries.clear();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  private void put(K key, V value, long ttl) {
+    if (entries.size() >= maxEntries && !entries.containsKey(key)) {
+      evict();
+    }
+    entries.put(key, new Entry<>(value, System.nanoTime() + ttl));
+  }
+
+  private void evict() {
+    long now = System.nanoTime();
+    entries.values().removeIf(entry -> entry.isExpired(now));
+    // Still full: drop roughly a tenth of the entries to make room for a while
+    Iterator<K> keys = entries.keySet().iterator();
+    int toRemove = entries.size() - maxEntries + Math.max(1, maxEntries / 10);
+    while (toRemove-- > 0 && keys.hasNext()) {
+      keys.next();
+      keys.remove();
+    }
+  }
+
+  private static final class Entry<V> {
+    private final V value;
+    private final long expiresAt;
+
+    private Entry(V value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+
+    private boolean isExpired(long now) {
+      return now - expiresAt > 0;
+    }
+  }
+}
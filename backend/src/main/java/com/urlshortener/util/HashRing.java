@@ -0,0 +1,101 @@
+package com.urlshortener.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring with virtual nodes. Each node is placed at {@code virtualNodes} points on the
+ * ring and a key belongs to the first point at or after its hash, so adding or removing one of n
+ * nodes moves only about 1/n of the keys.
+ *
+ * <p>As in Redis Cluster, only the part of a key inside the first non-empty {@code {...}} hash tag is
+ * hashed, so keys that share a tag always land on the same node and multi-key commands on them stay
+ * valid.
+ *
+ * <p>Instances are immutable; {@link #with} and {@link #without} return a new ring, so a ring can be
+ * swapped atomically while other threads route with the old one.
+ */
+public final class HashRing<T> {
+
+  private final NavigableMap<Long, T> points;
+  private final Map<String, T> nodes;
+  private final int virtualNodes;
+
+  public HashRing(Map<String, T> nodes, int virtualNodes) {
+    if (nodes.isEmpty()) {
+      throw new IllegalArgumentException("A hash ring needs at least one node");
+    }
+    this.nodes = Collections.unmodifiableMap(new LinkedHashMap<>(nodes));
+    this.virtualNodes = virtualNodes;
+    this.points = new TreeMap<>();
+    nodes.forEach((name, node) -> {
+      for (int i = 0; i < virtualNodes; i++) {
+        points.put(hash(name + "#" + i), node);
+      }
+    });
+  }
+
+  public T nodeFor(String key) {
+    Map.Entry<Long, T> point = points.ceilingEntry(hash(hashTag(key)));
+    return point != null ? point.getValue() : points.firstEntry().getValue();
+  }
+
+  /**
+   * Group keys by owning node, keeping the keys' order within each group.
+   */
+  public Map<T, List<String>> partition(Iterable<String> keys) {
+    Map<T, List<String>> groups = new LinkedHashMap<>();
+    for (String key : keys) {
+      groups.computeIfAbsent(nodeFor(key), node -> new ArrayList<>()).add(key);
+    }
+    return groups;
+  }
+
+  public HashRing<T> with(String name, T node) {
+    Map<String, T> next = new LinkedHashMap<>(nodes);
+    next.put(name, node);
+    return new HashRing<>(next, virtualNodes);
+  }
+
+  public HashRing<T> without(String name) {
+    Map<String, T> next = new LinkedHashMap<>(nodes);
+    next.remove(name);
+    return new HashRing<>(next, virtualNodes);
+  }
+
+  public Map<String, T> getNodes() {
+    return nodes;
+  }
+
+  static String hashTag(String key) {
+    int open = key.indexOf('{');
+    if (open >= 0) {
+      int close = key.indexOf('}', open + 1);
+      if (close > open + 1) {
+        return key.substring(open + 1, close);
+      }
+    }
+    return key;
+  }
+
+  // 64-bit FNV-1a followed by a finalizer mix, so similar keys spread over the whole ring
+  static long hash(String value) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b;
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
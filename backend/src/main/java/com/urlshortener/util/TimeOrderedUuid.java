@@ -0,0 +1,47 @@
+package com.urlshortener.util;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version 7 UUIDs (RFC 9562): a 48-bit Unix millisecond timestamp followed by random bits, so
+ * values sort by creation time and new index entries land on the right-most B-tree page instead of
+ * a random one.
+ *
+ * <p>The 12 bits after the version are a counter, seeded randomly each millisecond, so ids from
+ * this process are strictly increasing even within one millisecond. When the counter runs out it
+ * carries into the timestamp, which then runs slightly ahead of the clock.
+ *
+ * <p>The remaining 62 bits are not from a secure random source: these ids are storage keys, not
+ * secrets, and must not be exposed where guessing one would matter.
+ */
+public final class TimeOrderedUuid {
+
+  private static final AtomicLong LAST = new AtomicLong();
+
+  private TimeOrderedUuid() {
+  }
+
+  public static UUID next() {
+    return next(System.currentTimeMillis());
+  }
+
+  static UUID next(long epochMillis) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    // Seed the counter in the lower half so a busy millisecond has room to count up
+    long candidate = (epochMillis << 12) | random.nextLong(0x800);
+    long stamp = LAST.accumulateAndGet(candidate, (last, next) -> Math.max(last + 1, next));
+
+    long mostSignificant = ((stamp >>> 12) << 16) | 0x7000L | (stamp & 0xFFFL);
+    long leastSignificant = (random.nextLong() >>> 2) | 0x8000000000000000L;
+    return new UUID(mostSignificant, leastSignificant);
+  }
+
+  /**
+   * Milliseconds since the epoch encoded in a version 7 UUID.
+   */
+  public static long timestamp(UUID uuid) {
+    return uuid.getMostSignificantBits() >>> 16;
+  }
+}
@@ -0,0 +1,44 @@
+-- Schema as Hibernate created it with ddl-auto=update. IF NOT EXISTS lets databases created that
+-- way adopt this baseline without changes.
+
+CREATE TABLE IF NOT EXISTS users (
+  id uuid NOT NULL PRIMARY KEY,
+  username varchar(255) NOT NULL UNIQUE,
+  email varchar(255) NOT NULL UNIQUE,
+  password varchar(255) NOT NULL,
+  created_at timestamp(6),
+  updated_at timestamp(6)
+);
+
+CREATE TABLE IF NOT EXISTS urls (
+  id uuid NOT NULL PRIMARY KEY,
+  user_id uuid NOT NULL REFERENCES users (id),
+  short_code varchar(10) NOT NULL UNIQUE,
+  long_url varchar(2048) NOT NULL,
+  clicks integer DEFAULT 0 NOT NULL,
+  created_at timestamp(6),
+  updated_at timestamp(6)
+);
+
+CREATE TABLE IF NOT EXISTS click_analytics (
+  id uuid NOT NULL PRIMARY KEY,
+  url_id uuid NOT NULL REFERENCES urls (id),
+  referrer varchar(255),
+  user_agent varchar(255),
+  ip_address varchar(255),
+  clicked_at timestamp(6) NOT NULL,
+  created_at timestamp(6),
+  updated_at timestamp(6)
+);
+
+CREATE TABLE IF NOT EXISTS api_keys (
+  id uuid NOT NULL PRIMARY KEY,
+  user_id uuid NOT NULL REFERENCES users (id),
+  name varchar(100) NOT NULL,
+  key_hash varchar(64) NOT NULL UNIQUE,
+  prefix varchar(12) NOT NULL,
+  tier varchar(20) NOT NULL CHECK (tier IN ('STANDARD', 'PREMIUM')),
+  revoked_at timestamp(6),
+  created_at timestamp(6),
+  updated_at timestamp(6)
+);
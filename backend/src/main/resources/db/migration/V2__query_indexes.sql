@@ -0,0 +1,15 @@
+-- Indexes for the repository queries. On a large existing database, build them beforehand with
+-- CREATE INDEX CONCURRENTLY under the same names; this migration then does nothing.
+
+-- UrlRepository: findByUser, findByUserId, findIdsByUserId, findClicksByUserId and
+-- findByUserIdOrderByClicksDesc (a user's rows, sorted in memory), and findByLongUrlAndUser.
+-- clicks is left out on purpose: it changes on every redirect, and indexing it would turn those
+-- updates into index writes.
+CREATE INDEX IF NOT EXISTS idx_urls_user_id_long_url ON urls (user_id, long_url);
+
+-- ClickAnalyticsRepository: findByUrl, countByUrlAndDateRange, the account aggregates and the
+-- export cursor all filter by url_id and a clicked_at range, and the export reads in clicked_at order
+CREATE INDEX IF NOT EXISTS idx_click_analytics_url_id_clicked_at ON click_analytics (url_id, clicked_at);
+
+-- ApiKeyRepository: findByUserIdAndRevokedAtIsNullOrderByCreatedAtDesc
+CREATE INDEX IF NOT EXISTS idx_api_keys_user_id ON api_keys (user_id);
@@ -0,0 +1,3 @@
+-- UrlRepository.findPageByUserId and searchPageByUserId: a user's links newest first, resumed after
+-- a (created_at, id) cursor. The index returns a page in order without sorting the user's rows.
+CREATE INDEX IF NOT EXISTS idx_urls_user_id_created_at_id ON urls (user_id, created_at, id);
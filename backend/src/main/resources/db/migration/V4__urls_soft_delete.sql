@@ -0,0 +1,5 @@
+-- DELETE /urls/{shortCode} marks the row; UrlPurger removes its clicks and then the row.
+ALTER TABLE urls ADD COLUMN IF NOT EXISTS deleted_at timestamp(6);
+
+-- UrlRepository.findDeletedShortCodes: the purger's oldest deletions first. Live rows are NULL here.
+CREATE INDEX IF NOT EXISTS idx_urls_deleted_at ON urls (deleted_at);
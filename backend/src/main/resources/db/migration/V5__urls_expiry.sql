@@ -0,0 +1,10 @@
+-- Links that stop redirecting at a given time or after a number of clicks; the click that uses up
+-- max_clicks also sets expires_at.
+ALTER TABLE urls ADD COLUMN IF NOT EXISTS expires_at timestamp(6);
+ALTER TABLE urls ADD COLUMN IF NOT EXISTS max_clicks integer;
+
+-- UrlRepository.findExpired: UrlExpirySweeper's range scan, oldest expiry first. Entity queries
+-- always carry deleted_at IS NULL, so with deleted_at leading the scan reads only live links, and
+-- the index takes over UrlRepository.findDeletedShortCodes from the single column one.
+CREATE INDEX IF NOT EXISTS idx_urls_deleted_at_expires_at ON urls (deleted_at, expires_at);
+DROP INDEX IF EXISTS idx_urls_deleted_at;
@@ -0,0 +1,28 @@
+-- Shards after the first hold only the sharded tables. users lives on shard 0, so user_id cannot
+-- reference it here; ownership is checked by the application as on shard 0.
+-- Schema changes to urls or click_analytics need a script here as well as in db/migration.
+
+CREATE TABLE IF NOT EXISTS urls (
+  id uuid NOT NULL PRIMARY KEY,
+  user_id uuid NOT NULL,
+  short_code varchar(10) NOT NULL UNIQUE,
+  long_url varchar(2048) NOT NULL,
+  clicks integer DEFAULT 0 NOT NULL,
+  created_at timestamp(6),
+  updated_at timestamp(6)
+);
+
+CREATE TABLE IF NOT EXISTS click_analytics (
+  id uuid NOT NULL PRIMARY KEY,
+  url_id uuid NOT NULL REFERENCES urls (id),
+  referrer varchar(255),
+  user_agent varchar(255),
+  ip_address varchar(255),
+  clicked_at timestamp(6) NOT NULL,
+  created_at timestamp(6),
+  updated_at timestamp(6)
+);
+
+-- Same indexes as db/migration/V2__query_indexes.sql
+CREATE INDEX IF NOT EXISTS idx_urls_user_id_long_url ON urls (user_id, long_url);
+CREATE INDEX IF NOT EXISTS idx_click_analytics_url_id_clicked_at ON click_analytics (url_id, clicked_at);
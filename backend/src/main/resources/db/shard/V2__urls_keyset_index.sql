@@ -0,0 +1,2 @@
+-- Same index as db/migration/V3__urls_keyset_index.sql
+CREATE INDEX IF NOT EXISTS idx_urls_user_id_created_at_id ON urls (user_id, created_at, id);
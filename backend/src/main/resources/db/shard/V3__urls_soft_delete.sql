@@ -0,0 +1,3 @@
+-- Same as db/migration/V4__urls_soft_delete.sql
+ALTER TABLE urls ADD COLUMN IF NOT EXISTS deleted_at timestamp(6);
+CREATE INDEX IF NOT EXISTS idx_urls_deleted_at ON urls (deleted_at);
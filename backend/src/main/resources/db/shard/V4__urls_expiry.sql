@@ -0,0 +1,5 @@
+-- Same as db/migration/V5__urls_expiry.sql
+ALTER TABLE urls ADD COLUMN IF NOT EXISTS expires_at timestamp(6);
+ALTER TABLE urls ADD COLUMN IF NOT EXISTS max_clicks integer;
+CREATE INDEX IF NOT EXISTS idx_urls_deleted_at_expires_at ON urls (deleted_at, expires_at);
+DROP INDEX IF EXISTS idx_urls_deleted_at;
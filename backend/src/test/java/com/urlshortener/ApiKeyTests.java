@@ -0,0 +1,154 @@
+package com.urlshortener;
+
+import com.urlshortener.config.RedisConfig;
+import com.urlshortener.dto.ApiKeyRequest;
+import com.urlshortener.dto.ApiKeyResponse;
+import com.urlshortener.entity.ApiKey;
+import com.urlshortener.entity.ApiKeyTier;
+import com.urlshortener.entity.User;
+import com.urlshortener.repository.ApiKeyRepository;
+import com.urlshortener.repository.UserRepository;
+import com.urlshortener.security.ApiKeyAuthenticationFilter;
+import com.urlshortener.security.ApiKeyAuthenticationToken;
+import com.urlshortener.security.ApiKeyIdentity;
+import com.urlshortener.security.RateLimitDecision;
+import com.urlshortener.security.RateLimiter;
+import com.urlshortener.security.RateLimitingFilter;
+import com.urlshortener.security.UserPrincipal;
+import com.urlshortener.service.ApiKeyService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class ApiKeyTests {
+
+  private ApiKeyRepository apiKeyRepository;
+  private UserRepository userRepository;
+  private ApiKeyService apiKeyService;
+  private final List<ApiKey> stored = new ArrayList<>();
+  private User user;
+
+  @BeforeEach
+  void setUp() {
+    apiKeyRepository = mock(ApiKeyRepository.class);
+    userRepository = mock(UserRepository.class);
+    apiKeyService = new ApiKeyService(apiKeyRepository, userRepository, mock(RedisConfig.class));
+    ReflectionTestUtils.setField(apiKeyService, "defaultTier", ApiKeyTier.STANDARD);
+
+    user = User.builder().username("service-account").build();
+    user.setId(UUID.randomUUID());
+    when(userRepository.getReferenceById(user.getId())).thenReturn(user);
+    when(apiKeyRepository.save(any(ApiKey.class))).thenAnswer(invocation -> {
+      ApiKey apiKey = invocation.getArgument(0);
+      if (apiKey.getId() == null) {
+        apiKey.setId(UUID.randomUUID());
+        stored.add(apiKey);
+      }
+      return apiKey;
+    });
+    when(apiKeyRepository.findAllActive()).thenAnswer(invocation ->
+        stored.stream().filter(apiKey -> apiKey.getRevokedAt() == null).toList());
+  }
+
+  @AfterEach
+  void tearDown() {
+    SecurityContextHolder.clearContext();
+  }
+
+  @Test
+  void testCreateKey_StoresOnlyHashAndIndexesKey() {
+    ApiKeyResponse response = apiKeyService.createKey(new ApiKeyRequest("billing"), user.getId());
+
+    assertTrue(response.getKey().startsWith(ApiKeyService.KEY_PREFIX));
+    assertEquals(response.getKey().substring(0, 12), response.getPrefix());
+    ApiKey saved = stored.get(0);
+    assertNotEquals(response.getKey(), saved.getKeyHash());
+    assertEquals(64, saved.getKeyHash().length());
+
+    ApiKeyIdentity identity = apiKeyService.authenticate(response.getKey());
+    assertNotNull(identity);
+    assertEquals(user.getId(), identity.userId());
+    assertEquals("service-account", identity.username());
+    assertEquals(ApiKeyTier.STANDARD, identity.tier());
+    assertNull(apiKeyService.authenticate(response.getKey() + "x"));
+    assertNull(apiKeyService.authenticate("not-a-key"));
+  }
+
+  @Test
+  void testRevokeKey_StopsAuthenticating() {
+    ApiKeyResponse response = apiKeyService.createKey(new ApiKeyRequest("billing"), user.getId());
+    when(apiKeyRepository.findByIdAndUserId(response.getId(), user.getId())).thenReturn(Optional.of(stored.get(0)));
+
+    apiKeyService.revokeKey(response.getId(), user.getId());
+
+    assertNotNull(stored.get(0).getRevokedAt());
+    assertNull(apiKeyService.authenticate(response.getKey()));
+  }
+
+  @Test
+  void testFilter_AuthenticatesWithApiKey() throws Exception {
+    ApiKeyResponse response = apiKeyService.createKey(new ApiKeyRequest("billing"), user.getId());
+    ApiKeyAuthenticationFilter filter = new ApiKeyAuthenticationFilter(apiKeyService);
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", "/urls/shorten");
+    request.addHeader(ApiKeyAuthenticationFilter.HEADER, response.getKey());
+    MockFilterChain chain = new MockFilterChain();
+
+    filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+    assertNotNull(chain.getRequest());
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    assertInstanceOf(ApiKeyAuthenticationToken.class, authentication);
+    assertEquals(user.getId(), UserPrincipal.idOf(authentication));
+  }
+
+  @Test
+  void testFilter_RejectsUnknownKey() throws Exception {
+    ApiKeyAuthenticationFilter filter = new ApiKeyAuthenticationFilter(apiKeyService);
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", "/urls/shorten");
+    request.addHeader(ApiKeyAuthenticationFilter.HEADER, ApiKeyService.KEY_PREFIX + "unknown");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    MockFilterChain chain = new MockFilterChain();
+
+    filter.doFilter(request, response, chain);
+
+    assertEquals(401, response.getStatus());
+    assertNull(chain.getRequest());
+    assertNull(SecurityContextHolder.getContext().getAuthentication());
+  }
+
+  @Test
+  void testRateLimitingFilter_LimitsApiKeysByTier() throws Exception {
+    RateLimiter rateLimiter = mock(RateLimiter.class);
+    when(rateLimiter.tryAcquire(any(), anyLong(), any())).thenReturn(new RateLimitDecision(true, 10000, 9999, 60000, 0));
+    RateLimitingFilter filter = new RateLimitingFilter(rateLimiter);
+    ReflectionTestUtils.setField(filter, "API_KEY_WINDOW", 60);
+    ReflectionTestUtils.setField(filter, "API_KEY_STANDARD_LIMIT", 1000);
+    ReflectionTestUtils.setField(filter, "API_KEY_PREMIUM_LIMIT", 10000);
+    UUID keyId = UUID.randomUUID();
+    SecurityContextHolder.getContext().setAuthentication(new ApiKeyAuthenticationToken(
+        new ApiKeyIdentity(keyId, user.getId(), user.getUsername(), ApiKeyTier.PREMIUM)));
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    filter.doFilter(new MockHttpServletRequest("POST", "/urls/shorten"), response, new MockFilterChain());
+
+    verify(rateLimiter).tryAcquire("rate_limit:key:{" + keyId + "}", 10000, Duration.ofSeconds(60));
+    assertEquals("10000;w=60", response.getHeader("RateLimit-Policy"));
+  }
+}
@@ -0,0 +1,141 @@
+package com.urlshortener;
+
+import com.urlshortener.dto.ClickEvent;
+import com.urlshortener.repository.ClickStore;
+import com.urlshortener.repository.clicklog.SegmentClickStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClickLogTests {
+
+  @TempDir
+  Path directory;
+
+  private SegmentClickStore open() {
+    return open(100);
+  }
+
+  private SegmentClickStore open(int maxDictionaryEntries) {
+    SegmentClickStore store = new SegmentClickStore();
+    ReflectionTestUtils.setField(store, "directory", directory.toString());
+    // Ten records per segment so the test crosses several segment boundaries
+    ReflectionTestUtils.setField(store, "maxSegmentBytes", 640L);
+    ReflectionTestUtils.setField(store, "maxDictionaryEntries", maxDictionaryEntries);
+    ReflectionTestUtils.setField(store, "maxDictionaryValueLength", 40);
+    ReflectionTestUtils.invokeMethod(store, "open");
+    return store;
+  }
+
+  private List<ClickEvent> scan(ClickStore store, UUID urlId, LocalDateTime from, LocalDateTime to) {
+    List<ClickEvent> clicks = new ArrayList<>();
+    store.scan(urlId, from, to, clicks::add);
+    return clicks;
+  }
+
+  @Test
+  void testAppendRollAndScan() throws Exception {
+    UUID first = UUID.randomUUID();
+    UUID second = UUID.randomUUID();
+    LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    SegmentClickStore store = open();
+    for (int i = 0; i < 35; i++) {
+      store.record(ClickEvent.builder()
+          .urlId(i % 2 == 0 ? first : second)
+          .clickedAt(start.plusHours(i))
+          .referrer(i % 3 == 0 ? null : "https://twitter.com/post/" + (i % 3))
+          .userAgent("Mozilla/5.0 Chrome/120.0")
+          .ipAddress(i % 5 == 0 ? "2001:db8::1" : "10.0.0." + i)
+          .build());
+    }
+
+    try (Stream<Path> files = Files.list(directory)) {
+      assertTrue(files.filter(file -> file.toString().endsWith(".log")).count() >= 4);
+    }
+    assertEquals(18, scan(store, first, ClickStore.ALL_TIME_FROM, ClickStore.ALL_TIME_TO).size());
+    assertEquals(17, scan(store, second, ClickStore.ALL_TIME_FROM, ClickStore.ALL_TIME_TO).size());
+
+    List<ClickEvent> window = scan(store, first, start.plusHours(10), start.plusHours(20));
+    assertEquals(6, window.size());
+    ClickEvent click = window.get(0);
+    assertEquals(start.plusHours(10), click.getClickedAt());
+    assertEquals("https://twitter.com/post/1", click.getReferrer());
+    assertEquals("Mozilla/5.0 Chrome/120.0", click.getUserAgent());
+    assertEquals("2001:db8:0:0:0:0:0:1", click.getIpAddress());
+    assertEquals("10.0.0.12", window.get(1).getIpAddress());
+    assertNull(window.get(1).getReferrer());
+    ReflectionTestUtils.invokeMethod(store, "close");
+
+    // Sealed segments load their index from disk, the open one is rebuilt by scanning
+    SegmentClickStore reopened = open();
+    assertEquals(18, scan(reopened, first, ClickStore.ALL_TIME_FROM, ClickStore.ALL_TIME_TO).size());
+    assertEquals(6, scan(reopened, first, start.plusHours(10), start.plusHours(20)).size());
+    assertTrue(scan(reopened, UUID.randomUUID(), ClickStore.ALL_TIME_FROM, ClickStore.ALL_TIME_TO).isEmpty());
+    ReflectionTestUtils.invokeMethod(reopened, "close");
+  }
+
+  @Test
+  void testDictionaryIsBounded() {
+    UUID urlId = UUID.randomUUID();
+    LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+    SegmentClickStore store = open(3);
+    for (int i = 0; i < 10; i++) {
+      store.record(ClickEvent.builder()
+          .urlId(urlId)
+          .clickedAt(start.plusMinutes(i))
+          .referrer("https://example.com/" + i)
+          .userAgent("agent/" + "x".repeat(100))
+          .build());
+    }
+
+    List<ClickEvent> clicks = scan(store, urlId, ClickStore.ALL_TIME_FROM, ClickStore.ALL_TIME_TO);
+    assertEquals(10, clicks.size());
+    // The user agent is cut and interned once; of the distinct referrers only the first two fit
+    assertEquals("agent/" + "x".repeat(34), clicks.get(9).getUserAgent());
+    assertEquals("https://example.com/0", clicks.get(0).getReferrer());
+    assertEquals("https://example.com/1", clicks.get(1).getReferrer());
+    assertNull(clicks.get(2).getReferrer());
+    assertNull(clicks.get(9).getReferrer());
+    ReflectionTestUtils.invokeMethod(store, "close");
+  }
+
+  @Test
+  void testRecordsOutlivingTheirDictionaryReadBackWithoutValues() throws Exception {
+    UUID urlId = UUID.randomUUID();
+    SegmentClickStore store = open();
+    store.record(ClickEvent.builder()
+        .urlId(urlId)
+        .clickedAt(LocalDateTime.of(2024, 1, 1, 0, 0))
+        .referrer("https://example.com/")
+        .userAgent("Mozilla/5.0 Chrome/120.0")
+        .build());
+    ReflectionTestUtils.invokeMethod(store, "close");
+    Files.write(directory.resolve("dictionary.dat"), new byte[0]);
+
+    SegmentClickStore reopened = open();
+    List<ClickEvent> clicks = scan(reopened, urlId, ClickStore.ALL_TIME_FROM, ClickStore.ALL_TIME_TO);
+    assertEquals(1, clicks.size());
+    assertNull(clicks.get(0).getReferrer());
+    assertNull(clicks.get(0).getUserAgent());
+    ReflectionTestUtils.invokeMethod(reopened, "close");
+  }
+
+  @Test
+  void testSegmentsLargerThanAMappingAreRejected() {
+    SegmentClickStore store = new SegmentClickStore();
+    ReflectionTestUtils.setField(store, "directory", directory.toString());
+    ReflectionTestUtils.setField(store, "maxSegmentBytes", Integer.MAX_VALUE + 1L);
+    assertThrows(IllegalArgumentException.class, () -> ReflectionTestUtils.invokeMethod(store, "open"));
+  }
+}
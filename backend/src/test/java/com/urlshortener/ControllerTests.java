@@ -7,26 +7,41 @@ import com.urlshortener.controller.UrlController;
 import com.urlshortener.dto.*;
 import com.urlshortener.entity.Url;
 import com.urlshortener.entity.User;
+import com.urlshortener.exception.GlobalExceptionHandler;
 import com.urlshortener.security.JwtAuthenticationFilter;
 import com.urlshortener.security.JwtTokenProvider;
+import com.urlshortener.security.UserPrincipal;
+import com.urlshortener.service.AnalyticsCache;
 import com.urlshortener.service.AnalyticsService;
 import com.urlshortener.service.AuthService;
+import com.urlshortener.service.ClickExportService;
+import com.urlshortener.service.ClickStreamHub;
+import com.urlshortener.service.LeaderboardService;
 import com.urlshortener.service.UrlService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.view.RedirectView;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.HashMap;
@@ -37,7 +52,14 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -54,6 +76,18 @@ public class ControllerTests {
   @Mock
   private AnalyticsService analyticsService;
 
+  @Mock
+  private ClickExportService clickExportService;
+
+  @Mock
+  private ClickStreamHub clickStreamHub;
+
+  @Mock
+  private LeaderboardService leaderboardService;
+
+  @Spy
+  private AnalyticsCache analyticsCache = new AnalyticsCache(new ObjectMapper(), 30, 100);
+
   @Mock
   private JwtTokenProvider jwtTokenProvider;
 
@@ -80,7 +114,8 @@ public class ControllerTests {
     mockMvcUrl = MockMvcBuilders.standaloneSetup(urlController).build();
     MockMvc mockMvcRedirect = MockMvcBuilders.standaloneSetup(redirectController).build();
     objectMapper = new ObjectMapper();
-    authentication = new UsernamePasswordAuthenticationToken("testUser", null);
+    UserPrincipal principal = new UserPrincipal(UUID.randomUUID(), "testUser", List.of("ROLE_USER"));
+    authentication = new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
   }
 
   @Test
@@ -133,7 +168,7 @@ public class ControllerTests {
     UrlRequest request = UrlRequest.builder().longUrl("https://www.example.com").build();
     UrlResponse response = UrlResponse.builder().shortUrl("short").build();
 
-    when(urlService.createShortUrl(any(UrlRequest.class), anyString())).thenReturn(response);
+    when(urlService.createShortUrl(any(UrlRequest.class), any(UUID.class))).thenReturn(response);
 
     mockMvcUrl.perform(post("/urls/shorten")
             .contentType(MediaType.APPLICATION_JSON)
@@ -147,35 +182,191 @@ public class ControllerTests {
   void testGetUserUrls_Success() throws Exception {
     List<UrlResponse> responses = Collections.singletonList(UrlResponse.builder().shortUrl("short").build());
 
-    when(urlService.getUserUrls(anyString())).thenReturn(responses);
+    when(urlService.getUserUrls(any(UUID.class), isNull(), isNull(), isNull())).thenReturn(new UrlPage(responses, null));
 
     mockMvcUrl.perform(get("/urls").principal(authentication))
         .andExpect(status().isOk())
-        .andExpect(jsonPath("$[0].shortUrl").value("short"));
+        .andExpect(jsonPath("$[0].shortUrl").value("short"))
+        .andExpect(header().doesNotExist(HttpHeaders.LINK));
+  }
+
+  @Test
+  void testGetUserUrls_LinksToNextPage() throws Exception {
+    List<UrlResponse> responses = Collections.singletonList(UrlResponse.builder().shortUrl("short").build());
+
+    when(urlService.getUserUrls(any(UUID.class), eq("page1"), eq(1), eq("exa"))).thenReturn(new UrlPage(responses, "page2"));
+
+    mockMvcUrl.perform(get("/urls?cursor=page1&limit=1&q=exa").principal(authentication))
+        .andExpect(status().isOk())
+        .andExpect(header().string(UrlController.NEXT_CURSOR_HEADER, "page2"))
+        .andExpect(header().string(HttpHeaders.LINK, "<http://localhost/urls?limit=1&q=exa&cursor=page2>; rel=\"next\""));
   }
 
   @Test
   void testGetUrl_Success() throws Exception {
     UrlResponse response = UrlResponse.builder().shortUrl("short").build();
 
-    when(urlService.getUrl(anyString(), anyString())).thenReturn(response);
+    when(urlService.getUrl(anyString(), any(UUID.class))).thenReturn(response);
 
     mockMvcUrl.perform(get("/urls/shortCode").principal(authentication))
         .andExpect(status().isOk())
         .andExpect(jsonPath("$.shortUrl").value("short"));
   }
 
+  @Test
+  void testGetTopUrls_Success() throws Exception {
+    List<LinkClicks> top = List.of(LinkClicks.builder().shortCode("short").clicks(7L).build());
+
+    when(leaderboardService.getTopLinks(any(UUID.class), eq(5))).thenReturn(top);
+
+    mockMvcUrl.perform(get("/urls/top").param("limit", "5").principal(authentication))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].shortCode").value("short"))
+        .andExpect(jsonPath("$[0].clicks").value(7));
+  }
+
   @Test
   void testGetUrlAnalytics_Success() throws Exception {
     AnalyticsResponse response = AnalyticsResponse.builder().shortCode("short").build();
 
-    when(analyticsService.getUrlAnalytics(anyString(), anyString())).thenReturn(response);
+    when(analyticsService.getUrlAnalytics(anyString(), any(UUID.class))).thenReturn(response);
 
     mockMvcUrl.perform(get("/urls/analytics/shortCode").principal(authentication))
         .andExpect(status().isOk())
         .andExpect(jsonPath("$.shortCode").value("short"));
   }
 
+  @Test
+  void testGetAccountAnalytics_Success() throws Exception {
+    AccountAnalyticsResponse response = AccountAnalyticsResponse.builder().totalUrls(2L).totalClicks(4L).build();
+
+    when(analyticsService.getAccountAnalytics(any(UUID.class), any(), any(), anyInt())).thenReturn(response);
+
+    mockMvcUrl.perform(get("/urls/analytics").param("from", "2024-01-01").param("to", "2024-01-31").param("limit", "5").principal(authentication))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.totalClicks").value(4));
+    verify(analyticsService).getAccountAnalytics(any(UUID.class), eq(LocalDate.of(2024, 1, 1)), eq(LocalDate.of(2024, 1, 31)), eq(5));
+  }
+
+  @Test
+  void testGetUrlAnalytics_CachedWithETag() throws Exception {
+    AnalyticsResponse response = AnalyticsResponse.builder().shortCode("short").totalClicks(1).build();
+
+    when(analyticsService.getUrlAnalytics(anyString(), any(UUID.class))).thenReturn(response);
+
+    String etag = mockMvcUrl.perform(get("/urls/analytics/shortCode").principal(authentication))
+        .andExpect(status().isOk())
+        .andExpect(header().exists("ETag"))
+        .andReturn().getResponse().getHeader("ETag");
+
+    // Same version: served from the cache and answered with 304
+    mockMvcUrl.perform(get("/urls/analytics/shortCode").header("If-None-Match", etag).principal(authentication))
+        .andExpect(status().isNotModified());
+    verify(analyticsService, times(1)).getUrlAnalytics(anyString(), any(UUID.class));
+    // Weak tags, lists and "*" match too
+    for (String ifNoneMatch : List.of("W/" + etag, "\"other\", " + etag, "\"other\",W/" + etag, "*")) {
+      mockMvcUrl.perform(get("/urls/analytics/shortCode").header("If-None-Match", ifNoneMatch).principal(authentication))
+          .andExpect(status().isNotModified());
+    }
+    mockMvcUrl.perform(get("/urls/analytics/shortCode").header("If-None-Match", "\"other\", W/\"another\"").principal(authentication))
+        .andExpect(status().isOk());
+
+    // A new click bumps the version, so the next view recomputes
+    response.setTotalClicks(2);
+    analyticsCache.onClick("shortCode");
+    mockMvcUrl.perform(get("/urls/analytics/shortCode").header("If-None-Match", etag).principal(authentication))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.totalClicks").value(2));
+    verify(analyticsService, times(2)).getUrlAnalytics(anyString(), any(UUID.class));
+  }
+
+  @Test
+  void testExportClicks_Success() throws Exception {
+    UUID urlId = UUID.randomUUID();
+    when(analyticsService.getOwnedUrlId(anyString(), any(UUID.class))).thenReturn(urlId);
+    doAnswer(invocation -> {
+      OutputStream out = invocation.getArgument(5);
+      out.write("clicked_at,referrer,user_agent,ip_address\n".getBytes(StandardCharsets.UTF_8));
+      return null;
+    }).when(clickExportService).writeClicks(eq("shortCode"), eq(urlId), eq(ClickExportService.Format.CSV), any(), any(), any(OutputStream.class));
+
+    MvcResult result = mockMvcUrl.perform(get("/urls/analytics/shortCode/export")
+            .param("format", "csv")
+            .param("from", "2024-01-01")
+            .principal(authentication))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    mockMvcUrl.perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(header().string("Content-Type", "text/csv"))
+        .andExpect(content().string("clicked_at,referrer,user_agent,ip_address\n"));
+  }
+
+  @Test
+  void testExportClicks_Gzip() throws Exception {
+    when(analyticsService.getOwnedUrlId(anyString(), any(UUID.class))).thenReturn(UUID.randomUUID());
+
+    MvcResult result = mockMvcUrl.perform(get("/urls/analytics/shortCode/export")
+            .header("Accept-Encoding", "gzip, deflate")
+            .principal(authentication))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    mockMvcUrl.perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(header().string("Content-Encoding", "gzip"))
+        .andExpect(header().string("Content-Type", "application/x-ndjson"));
+  }
+
+  @Test
+  void testExportClicks_HonoursEncodingWeights() throws Exception {
+    when(analyticsService.getOwnedUrlId(anyString(), any(UUID.class))).thenReturn(UUID.randomUUID());
+
+    for (String refused : List.of("gzip;q=0, deflate", "GZIP; Q=0.0", "*;q=0", "gzip;q=0.2, identity", "deflate")) {
+      MvcResult result = mockMvcUrl.perform(get("/urls/analytics/shortCode/export")
+              .header("Accept-Encoding", refused)
+              .principal(authentication))
+          .andReturn();
+      mockMvcUrl.perform(asyncDispatch(result))
+          .andExpect(status().isOk())
+          .andExpect(header().doesNotExist("Content-Encoding"));
+    }
+    for (String accepted : List.of("deflate;q=1, gzip;q=0.5", "*;q=0.3", "identity;q=0.5, x-gzip")) {
+      MvcResult result = mockMvcUrl.perform(get("/urls/analytics/shortCode/export")
+              .header("Accept-Encoding", accepted)
+              .principal(authentication))
+          .andReturn();
+      mockMvcUrl.perform(asyncDispatch(result))
+          .andExpect(status().isOk())
+          .andExpect(header().string("Content-Encoding", "gzip"));
+    }
+  }
+
+  @Test
+  void testExportClicks_RejectsInvertedRange() throws Exception {
+    MockMvc mockMvc = MockMvcBuilders.standaloneSetup(urlController)
+        .setControllerAdvice(new GlobalExceptionHandler())
+        .build();
+
+    mockMvc.perform(get("/urls/analytics/shortCode/export")
+            .param("from", "2024-02-01")
+            .param("to", "2024-01-01")
+            .principal(authentication))
+        .andExpect(status().isBadRequest());
+    verify(analyticsService, never()).getOwnedUrlId(anyString(), any(UUID.class));
+  }
+
+  @Test
+  void testLiveClicks_Subscribes() throws Exception {
+    UUID urlId = UUID.randomUUID();
+    when(analyticsService.getOwnedUrlId(anyString(), any(UUID.class))).thenReturn(urlId);
+    when(clickStreamHub.subscribe(eq(urlId), any(UUID.class))).thenReturn(new SseEmitter());
+
+    mockMvcUrl.perform(get("/urls/analytics/shortCode/live").principal(authentication))
+        .andExpect(request().asyncStarted());
+  }
+
   @Test
   void testDeleteUrl_Success() throws Exception {
     mockMvcUrl.perform(delete("/urls/shortCode").principal(authentication))
@@ -191,11 +382,23 @@ public class ControllerTests {
     request.addHeader("Referer", "TestReferer");
     request.setRemoteAddr("127.0.0.1");
 
-    when(urlService.getLongUrlAndIncrementClicks(anyString(), anyString(), anyString(), anyString())).thenReturn(longUrl);
+    when(urlService.resolveClick(anyString(), anyString(), anyString(), anyString()))
+        .thenReturn(new UrlSummary(UUID.randomUUID(), UUID.randomUUID(), shortCode, longUrl, 0, LocalDateTime.now(), null, null));
 
     RedirectView redirectView = redirectController.redirectToOriginalUrl(shortCode, request);
 
     assertEquals(longUrl, redirectView.getUrl());
     assertTrue(redirectView.isRedirectView());
+    assertEquals(HttpStatus.MOVED_PERMANENTLY, ReflectionTestUtils.getField(redirectView, "statusCode"));
+  }
+
+  @Test
+  void testRedirectToOriginalUrl_LimitedLinkNotCachedByBrowsers() {
+    when(urlService.resolveClick(anyString(), any(), any(), any()))
+        .thenReturn(new UrlSummary(UUID.randomUUID(), UUID.randomUUID(), "limited", "https://www.example.com", 0, LocalDateTime.now(), null, 10));
+
+    RedirectView redirectView = redirectController.redirectToOriginalUrl("limited", new MockHttpServletRequest());
+
+    assertEquals(HttpStatus.FOUND, ReflectionTestUtils.getField(redirectView, "statusCode"));
   }
 }
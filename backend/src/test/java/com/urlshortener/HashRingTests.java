@@ -0,0 +1,185 @@
+package com.urlshortener;
+
+import com.urlshortener.config.RedisConfig;
+import com.urlshortener.util.HashRing;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HashRingTests {
+
+  private final List<FakeRedis> servers = new ArrayList<>();
+
+  @AfterEach
+  void tearDown() throws IOException {
+    for (FakeRedis server : servers) {
+      server.close();
+    }
+  }
+
+  @Test
+  void testKeysSharingAHashTagLandOnOneNode() {
+    HashRing<String> ring = ring(4);
+
+    String node = ring.nodeFor("leaderboard:{42}");
+    for (int i = 0; i < 100; i++) {
+      assertEquals(node, ring.nodeFor("rate_limit:auth:{42}:/path/" + i));
+    }
+  }
+
+  @Test
+  void testKeysSpreadEvenly() {
+    HashRing<String> ring = ring(4);
+    Map<String, Integer> counts = new HashMap<>();
+    for (int i = 0; i < 100_000; i++) {
+      counts.merge(ring.nodeFor("rate_limit:unauth:{10.0." + (i / 256) + "." + (i % 256) + "}"), 1, Integer::sum);
+    }
+
+    assertEquals(4, counts.size());
+    counts.values().forEach(count -> assertTrue(Math.abs(count - 25_000) < 5_000, "unbalanced: " + counts));
+  }
+
+  @Test
+  void testAddingANodeMovesOnlyItsShareOfKeys() {
+    HashRing<String> before = ring(4);
+    HashRing<String> after = before.with("redis-4:6379", "redis-4:6379");
+
+    int moved = 0;
+    for (int i = 0; i < 100_000; i++) {
+      String key = "visitors:{" + i + "}:2024-01-01";
+      String owner = after.nodeFor(key);
+      if (!owner.equals(before.nodeFor(key))) {
+        moved++;
+        assertEquals("redis-4:6379", owner);
+      }
+    }
+    // About 1/5 of the keys belong to the new node
+    assertTrue(moved > 15_000 && moved < 25_000, "moved " + moved);
+    assertEquals(before.nodeFor("k"), after.without("redis-4:6379").nodeFor("k"));
+  }
+
+  @Test
+  void testRedisConfigRoutesKeysAcrossEndpoints() throws IOException {
+    for (int i = 0; i < 3; i++) {
+      servers.add(new FakeRedis());
+    }
+    String nodes = String.join(",", servers.stream().map(server -> "127.0.0.1:" + server.port()).toList());
+    RedisConfig redisConfig = new RedisConfig(nodes, 500, 1000, 5, 10, 160, new SimpleMeterRegistry());
+
+    Map<String, Long> increments = new LinkedHashMap<>();
+    for (int i = 0; i < 30; i++) {
+      increments.put("counter:" + i, (long) i);
+    }
+    redisConfig.incrby(increments);
+    redisConfig.incrby(Map.of("counter:7", 1L));
+
+    for (FakeRedis server : servers) {
+      assertFalse(server.data.isEmpty(), "every endpoint should own some keys");
+    }
+    assertEquals(30, servers.stream().mapToInt(server -> server.data.size()).sum());
+    List<String> values = redisConfig.mget("counter:3", "missing", "counter:7", "counter:29");
+    assertEquals(List.of("3", "8", "29"), List.of(values.get(0), values.get(2), values.get(3)));
+    assertNull(values.get(1));
+  }
+
+  private static HashRing<String> ring(int nodes) {
+    Map<String, String> endpoints = new LinkedHashMap<>();
+    for (int i = 0; i < nodes; i++) {
+      endpoints.put("redis-" + i + ":6379", "redis-" + i + ":6379");
+    }
+    return new HashRing<>(endpoints, 160);
+  }
+
+  /**
+   * Minimal RESP2 server with PING, INCRBY, GET and MGET, standing in for a Redis endpoint.
+   */
+  private static final class FakeRedis implements AutoCloseable {
+    private final ServerSocket socket = new ServerSocket(0);
+    private final Map<String, String> data = new ConcurrentHashMap<>();
+
+    private FakeRedis() throws IOException {
+      Thread acceptor = new Thread(() -> {
+        while (!socket.isClosed()) {
+          try {
+            Socket client = socket.accept();
+            Thread handler = new Thread(() -> serve(client));
+            handler.setDaemon(true);
+            handler.start();
+          } catch (IOException e) {
+            return;
+          }
+        }
+      });
+      acceptor.setDaemon(true);
+      acceptor.start();
+    }
+
+    private int port() {
+      return socket.getLocalPort();
+    }
+
+    private void serve(Socket client) {
+      try (client) {
+        BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+        OutputStream out = client.getOutputStream();
+        String line;
+        while ((line = in.readLine()) != null) {
+          int count = Integer.parseInt(line.substring(1));
+          List<String> command = new ArrayList<>();
+          for (int i = 0; i < count; i++) {
+            in.readLine();
+            command.add(in.readLine());
+          }
+          out.write(reply(command).getBytes(StandardCharsets.UTF_8));
+          out.flush();
+        }
+      } catch (IOException e) {
+        // client went away
+      }
+    }
+
+    private String reply(List<String> command) {
+      switch (command.get(0).toUpperCase()) {
+        case "PING":
+          return "+PONG\r\n";
+        case "CLIENT":
+          return "+OK\r\n";
+        case "INCRBY":
+          return ":" + data.merge(command.get(1), command.get(2), (a, b) -> Long.toString(Long.parseLong(a) + Long.parseLong(b))) + "\r\n";
+        case "GET":
+          return bulk(data.get(command.get(1)));
+        case "MGET":
+          StringBuilder reply = new StringBuilder("*" + (command.size() - 1) + "\r\n");
+          command.subList(1, command.size()).forEach(key -> reply.append(bulk(data.get(key))));
+          return reply.toString();
+        default:
+          return "-ERR unknown command '" + command.get(0) + "'\r\n";
+      }
+    }
+
+    private static String bulk(String value) {
+      return value == null ? "$-1\r\n" : "$" + value.length() + "\r\n" + value + "\r\n";
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.close();
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package com.urlshortener;
+
+import com.urlshortener.util.TimeOrderedUuid;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdGeneratorTests {
+
+  @Test
+  void testTimeOrderedUuid_IsVersion7WithCurrentTimestamp() {
+    long before = System.currentTimeMillis();
+    UUID id = TimeOrderedUuid.next();
+    long after = System.currentTimeMillis();
+
+    assertEquals(7, id.version());
+    assertEquals(2, id.variant());
+    long timestamp = TimeOrderedUuid.timestamp(id);
+    assertTrue(timestamp >= before && timestamp <= after + 1, "timestamp " + timestamp);
+  }
+
+  @Test
+  void testTimeOrderedUuid_StrictlyIncreasingWithinMillisecond() {
+    UUID previous = TimeOrderedUuid.next();
+    for (int i = 0; i < 100_000; i++) {
+      UUID next = TimeOrderedUuid.next();
+      // Unsigned order of the bytes, which is how PostgreSQL and H2 compare uuid values
+      assertTrue(compareUnsigned(previous, next) < 0, previous + " !< " + next);
+      previous = next;
+    }
+  }
+
+  private static int compareUnsigned(UUID a, UUID b) {
+    int high = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+    return high != 0 ? high : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+  }
+}
@@ -0,0 +1,197 @@
+package com.urlshortener;
+
+import com.urlshortener.config.RedisConfig;
+import com.urlshortener.dto.AuthResponse;
+import com.urlshortener.entity.User;
+import com.urlshortener.exception.UnauthorizedException;
+import com.urlshortener.security.JwtAuthenticationFilter;
+import com.urlshortener.security.JwtTokenProvider;
+import com.urlshortener.security.TokenClaims;
+import com.urlshortener.security.UserPrincipal;
+import com.urlshortener.service.AuthService;
+import com.urlshortener.service.TokenRevocationService;
+import com.urlshortener.service.UserCache;
+import com.urlshortener.util.ExpiringCache;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class JwtTests {
+
+  @Mock
+  private UserCache userCache;
+
+  @Mock
+  private TokenRevocationService tokenRevocationService;
+
+  private JwtTokenProvider jwtTokenProvider;
+
+  @BeforeEach
+  void setUp() {
+    jwtTokenProvider = new JwtTokenProvider();
+    ReflectionTestUtils.setField(jwtTokenProvider, "secretKey", "0123456789abcdef0123456789abcdef0123456789abcdef");
+    ReflectionTestUtils.setField(jwtTokenProvider, "accessTokenExpiration", 60000L);
+    ReflectionTestUtils.setField(jwtTokenProvider, "refreshTokenExpiration", 120000L);
+    ReflectionTestUtils.setField(jwtTokenProvider, "verifiedCacheTtlSeconds", 300L);
+    ReflectionTestUtils.setField(jwtTokenProvider, "verifiedCacheMaxEntries", 100);
+    ReflectionTestUtils.invokeMethod(jwtTokenProvider, "init");
+  }
+
+  private int verifiedTokens() {
+    ExpiringCache<?, ?> cache = (ExpiringCache<?, ?>) ReflectionTestUtils.getField(jwtTokenProvider, "verifiedTokens");
+    return cache.size();
+  }
+
+  @Test
+  void testParseToken_VerifiesOnceThenCaches() {
+    String token = jwtTokenProvider.createAccessToken("testUser");
+
+    TokenClaims claims = jwtTokenProvider.parseToken(token);
+    assertEquals("testUser", claims.getSubject());
+    assertFalse(claims.isRefreshToken());
+    assertEquals(1, verifiedTokens());
+
+    assertSame(claims, jwtTokenProvider.parseToken(token));
+    assertEquals(1, verifiedTokens());
+    assertTrue(jwtTokenProvider.parseToken(jwtTokenProvider.createRefreshToken("testUser")).isRefreshToken());
+  }
+
+  @Test
+  void testParseToken_RejectsTamperedAndExpiredTokens() {
+    String token = jwtTokenProvider.createAccessToken("testUser");
+    String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+    assertThrows(JwtException.class, () -> jwtTokenProvider.parseToken(tampered));
+
+    ReflectionTestUtils.setField(jwtTokenProvider, "accessTokenExpiration", -1000L);
+    String expired = jwtTokenProvider.createAccessToken("testUser");
+    assertThrows(ExpiredJwtException.class, () -> jwtTokenProvider.parseToken(expired));
+    assertEquals(0, verifiedTokens());
+  }
+
+  @Test
+  void testFilter_BuildsPrincipalFromClaimsWithoutLoadingUser() throws Exception {
+    User user = User.builder().username("testUser").email("test@example.com").password("encodedPassword").build();
+    user.setId(UUID.randomUUID());
+    String token = jwtTokenProvider.createAccessToken(user);
+    JwtAuthenticationFilter filter = new JwtAuthenticationFilter(jwtTokenProvider, userCache, tokenRevocationService);
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/urls");
+    request.addHeader("Authorization", "Bearer " + token);
+
+    try {
+      filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+      Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+      assertEquals(user.getId(), UserPrincipal.idOf(authentication));
+      assertEquals("testUser", authentication.getName());
+      assertEquals("ROLE_USER", authentication.getAuthorities().iterator().next().getAuthority());
+      verifyNoInteractions(userCache);
+    } finally {
+      SecurityContextHolder.clearContext();
+    }
+  }
+
+  @Test
+  void testRevocation_LocalAndResyncedFromRedis() {
+    RedisConfig redisConfig = mock(RedisConfig.class);
+    TokenRevocationService revocations = new TokenRevocationService(redisConfig);
+    TokenClaims own = jwtTokenProvider.parseToken(jwtTokenProvider.createAccessToken("testUser"));
+    TokenClaims remote = jwtTokenProvider.parseToken(jwtTokenProvider.createAccessToken("otherUser"));
+    assertNotEquals(own.getTokenId(), remote.getTokenId());
+    when(redisConfig.evalsha(anyString(), anyString(), anyList(), anyList())).thenReturn(List.of(1L));
+
+    assertTrue(revocations.revoke(own));
+    assertFalse(revocations.revoke(own));
+    assertTrue(revocations.isRevoked(own));
+    assertFalse(revocations.isRevoked(remote));
+    String ownEntry = own.getTokenId() + ":" + own.getExpiresAt().toEpochMilli();
+    verify(redisConfig).evalsha(anyString(), anyString(), eq(List.of("revocations")), eq(List.of(ownEntry, "0")));
+    verify(redisConfig).publish("token-revocations", ownEntry);
+
+    // Revoked on another node while this one missed the message
+    when(redisConfig.zrangeByScoreWithScores(eq("revocations"), anyDouble(), eq(0L), anyLong()))
+        .thenReturn(Map.of(remote.getTokenId() + ":" + remote.getExpiresAt().toEpochMilli(), 1_000_000.0));
+    ReflectionTestUtils.invokeMethod(revocations, "resync");
+    assertTrue(revocations.isRevoked(remote));
+
+    // The next resync only reads what was added after the newest entry seen, less the overlap
+    ReflectionTestUtils.invokeMethod(revocations, "resync");
+    verify(redisConfig).zrangeByScoreWithScores(eq("revocations"), eq(995_000.0), eq(0L), anyLong());
+  }
+
+  @Test
+  void testRefreshToken_ConcurrentRefreshesOnTwoNodesIssueOneTokenPair() throws Exception {
+    User user = User.builder().username("testUser").email("test@example.com").password("encodedPassword").build();
+    user.setId(UUID.randomUUID());
+    when(userCache.getByUsername("testUser")).thenReturn(user);
+    // Both nodes share one Redis, which runs scripts one at a time
+    RedisConfig redisConfig = mock(RedisConfig.class);
+    Set<String> revocationSet = new HashSet<>();
+    when(redisConfig.evalsha(anyString(), anyString(), anyList(), anyList())).thenAnswer(invocation -> {
+      synchronized (revocationSet) {
+        List<String> args = invocation.getArgument(3);
+        return List.of(revocationSet.add(args.get(0)) ? 1L : 0L);
+      }
+    });
+    AuthService[] nodes = {
+        new AuthService(null, null, jwtTokenProvider, null, userCache, new TokenRevocationService(redisConfig)),
+        new AuthService(null, null, jwtTokenProvider, null, userCache, new TokenRevocationService(redisConfig))
+    };
+    String refreshToken = jwtTokenProvider.createRefreshToken("testUser");
+
+    int attempts = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(attempts);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<AuthResponse>> refreshes = new ArrayList<>();
+      for (int i = 0; i < attempts; i++) {
+        AuthService node = nodes[i % nodes.length];
+        refreshes.add(executor.submit(() -> {
+          start.await();
+          return node.refreshToken(refreshToken);
+        }));
+      }
+      start.countDown();
+
+      int issued = 0;
+      for (Future<AuthResponse> refresh : refreshes) {
+        try {
+          assertNotNull(refresh.get(10, TimeUnit.SECONDS).getRefreshToken());
+          issued++;
+        } catch (ExecutionException e) {
+          assertInstanceOf(UnauthorizedException.class, e.getCause());
+        }
+      }
+      assertEquals(1, issued);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
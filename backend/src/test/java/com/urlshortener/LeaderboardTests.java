@@ -0,0 +1,95 @@
+package com.urlshortener;
+
+import com.urlshortener.config.RedisConfig;
+import com.urlshortener.dto.LinkClicks;
+import com.urlshortener.entity.Url;
+import com.urlshortener.entity.User;
+import com.urlshortener.repository.UrlRepository;
+import com.urlshortener.repository.shard.ShardRouter;
+import com.urlshortener.service.LeaderboardService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class LeaderboardTests {
+
+  @Mock
+  private RedisConfig redisConfig;
+
+  @Mock
+  private UrlRepository urlRepository;
+
+  @Spy
+  private ShardRouter shardRouter = ShardRouter.single();
+
+  @InjectMocks
+  private LeaderboardService leaderboardService;
+
+  private User testUser;
+  private Url popular;
+  private Url quiet;
+
+  @BeforeEach
+  void setUp() {
+    testUser = User.builder().username("testUser").email("test@example.com").password("encodedPassword").build();
+    testUser.setId(UUID.randomUUID());
+    popular = Url.builder().user(testUser).shortCode("popular").longUrl("https://www.example.com").clicks(9).build();
+    quiet = Url.builder().user(testUser).shortCode("quiet").longUrl("https://www.example.org").clicks(2).build();
+    ReflectionTestUtils.setField(leaderboardService, "shortDomain", "http://localhost");
+    ReflectionTestUtils.setField(leaderboardService, "maxLimit", 100);
+    ReflectionTestUtils.setField(leaderboardService, "ttlSeconds", 3600L);
+  }
+
+  @Test
+  void testGetTopLinks_SeedsMissingLeaderboard() {
+    String key = "leaderboard:{" + testUser.getId() + "}";
+    Map<String, Double> top = new LinkedHashMap<>();
+    top.put("popular", 10.0);
+    top.put("quiet", 2.0);
+    when(redisConfig.exists(key)).thenReturn(false);
+    when(urlRepository.findClicksByUserId(testUser.getId())).thenReturn(List.of(new Object[] { "popular", 9 }, new Object[] { "quiet", 2 }));
+    when(redisConfig.zrevrangeWithScores(key, 0, 1)).thenReturn(top);
+    when(urlRepository.findByShortCodeIn(top.keySet())).thenReturn(List.of(quiet, popular));
+
+    List<LinkClicks> links = leaderboardService.getTopLinks(testUser.getId(), 2);
+
+    ArgumentCaptor<List<String>> args = ArgumentCaptor.forClass(List.class);
+    verify(redisConfig).evalsha(anyString(), anyString(), eq(List.of(key)), args.capture());
+    // The TTL, then one score and member per link
+    assertEquals("3600", args.getValue().get(0));
+    assertEquals(5, args.getValue().size());
+    assertTrue(args.getValue().containsAll(List.of("9", "popular", "2", "quiet")));
+    assertEquals(List.of("popular", "quiet"), links.stream().map(LinkClicks::getShortCode).toList());
+    assertEquals(10L, links.get(0).getClicks());
+    assertEquals("http://localhost/popular", links.get(0).getShortUrl());
+  }
+
+  @Test
+  void testGetTopLinks_FallsBackToDatabase() {
+    when(redisConfig.exists(anyString())).thenThrow(new JedisConnectionException("down"));
+    when(urlRepository.findByUserIdOrderByClicksDesc(eq(testUser.getId()), any(Pageable.class))).thenReturn(List.of(popular, quiet));
+
+    List<LinkClicks> links = leaderboardService.getTopLinks(testUser.getId(), 2);
+
+    assertEquals(9L, links.get(0).getClicks());
+    assertThrows(IllegalArgumentException.class, () -> leaderboardService.getTopLinks(testUser.getId(), 0));
+  }
+}
@@ -0,0 +1,100 @@
+package com.urlshortener;
+
+import com.urlshortener.exception.GlobalExceptionHandler;
+import com.urlshortener.exception.ServiceOverloadedException;
+import com.urlshortener.security.BoundedPasswordEncoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class PasswordEncoderTests {
+
+  @Test
+  void testBoundedPasswordEncoder_HashesOnWorkerThread() {
+    PasswordEncoder delegate = mock(PasswordEncoder.class);
+    when(delegate.encode(any())).thenAnswer(invocation -> Thread.currentThread().getName());
+    when(delegate.matches("password", "hash")).thenReturn(true);
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(delegate, 1, 1, Duration.ofSeconds(5), 1, registry);
+    try {
+      assertTrue(encoder.encode("password").startsWith("password-hash-"));
+      assertTrue(encoder.matches("password", "hash"));
+      assertEquals(1, registry.get("auth.password.hash").tag("operation", "encode").timer().count());
+      assertEquals(1, registry.get("auth.password.hash").tag("operation", "matches").timer().count());
+    } finally {
+      encoder.shutdown();
+    }
+  }
+
+  @Test
+  void testBoundedPasswordEncoder_ShedsLoadWhenQueueIsFull() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    PasswordEncoder delegate = mock(PasswordEncoder.class);
+    when(delegate.encode(any())).thenAnswer(invocation -> {
+      release.await();
+      return "hash";
+    });
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(delegate, 1, 1, Duration.ofSeconds(5), 3, registry);
+    try {
+      // One call occupies the worker and one waits in the queue; the next has nowhere to go
+      CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> encoder.encode("a"));
+      CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> encoder.encode("b"));
+      long deadline = System.currentTimeMillis() + 5000;
+      while (registry.get("auth.password.queue").gauge().value() < 1 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+
+      ServiceOverloadedException ex = assertThrows(ServiceOverloadedException.class, () -> encoder.encode("c"));
+      assertEquals(3, ex.getRetryAfterSeconds());
+      assertEquals(1, registry.get("auth.password.rejected").counter().count());
+
+      release.countDown();
+      assertEquals("hash", running.get(5, TimeUnit.SECONDS));
+      assertEquals("hash", queued.get(5, TimeUnit.SECONDS));
+    } finally {
+      release.countDown();
+      encoder.shutdown();
+    }
+  }
+
+  @Test
+  void testBoundedPasswordEncoder_GivesUpAfterMaxWait() {
+    CountDownLatch release = new CountDownLatch(1);
+    PasswordEncoder delegate = mock(PasswordEncoder.class);
+    when(delegate.matches(any(), any())).thenAnswer(invocation -> release.await(5, TimeUnit.SECONDS));
+    BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(delegate, 1, 1, Duration.ofMillis(50), 1,
+        new SimpleMeterRegistry());
+    try {
+      assertThrows(ServiceOverloadedException.class, () -> encoder.matches("password", "hash"));
+    } finally {
+      release.countDown();
+      encoder.shutdown();
+    }
+  }
+
+  @Test
+  void testGlobalExceptionHandler_OverloadReturns503WithRetryAfter() {
+    GlobalExceptionHandler handler = new GlobalExceptionHandler();
+    ResponseEntity<GlobalExceptionHandler.ErrorResponse> response = handler.handleServiceOverloadedException(
+        new ServiceOverloadedException("busy", 2), new ServletWebRequest(new MockHttpServletRequest()));
+
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+    assertEquals("2", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    assertEquals("busy", response.getBody().getMessage());
+  }
+}
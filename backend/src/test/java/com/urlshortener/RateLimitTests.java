@@ -0,0 +1,195 @@
+package com.urlshortener;
+
+import com.urlshortener.config.RedisConfig;
+import com.urlshortener.security.LeasingRateLimiter;
+import com.urlshortener.security.RateLimitDecision;
+import com.urlshortener.security.RateLimiter;
+import com.urlshortener.security.RateLimitingFilter;
+import com.urlshortener.security.RedisRateLimiter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class RateLimitTests {
+
+  @Mock
+  private RateLimiter rateLimiter;
+
+  @Mock
+  private RedisConfig redisConfig;
+
+  private RateLimitingFilter filter;
+
+  @BeforeEach
+  void setUp() {
+    filter = new RateLimitingFilter(rateLimiter);
+    ReflectionTestUtils.setField(filter, "MAX_REQUESTS", 20);
+    ReflectionTestUtils.setField(filter, "AUTHENTICATED_WINDOW", 25);
+    ReflectionTestUtils.setField(filter, "UNAUTHENTICATED_WINDOW", 60);
+  }
+
+  @Test
+  void testFilter_AllowedRequestCarriesQuotaHeaders() throws Exception {
+    when(rateLimiter.tryAcquire("rate_limit:unauth:{10.0.0.1}", 20, Duration.ofSeconds(60)))
+        .thenReturn(new RateLimitDecision(true, 20, 19, 59001, 0));
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/abc123");
+    request.setRemoteAddr("10.0.0.1");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    MockFilterChain chain = new MockFilterChain();
+
+    filter.doFilter(request, response, chain);
+
+    assertNotNull(chain.getRequest());
+    assertEquals("20", response.getHeader("RateLimit-Limit"));
+    assertEquals("19", response.getHeader("RateLimit-Remaining"));
+    assertEquals("60", response.getHeader("RateLimit-Reset"));
+    assertEquals("20;w=60", response.getHeader("RateLimit-Policy"));
+    assertNull(response.getHeader("Retry-After"));
+  }
+
+  @Test
+  void testFilter_RejectedRequestGets429WithRetryAfter() throws Exception {
+    when(rateLimiter.tryAcquire(anyString(), anyLong(), any())).thenReturn(new RateLimitDecision(false, 20, 0, 30000, 1500));
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    MockFilterChain chain = new MockFilterChain();
+
+    filter.doFilter(new MockHttpServletRequest("GET", "/abc123"), response, chain);
+
+    assertNull(chain.getRequest());
+    assertEquals(429, response.getStatus());
+    assertEquals("2", response.getHeader("Retry-After"));
+    assertEquals("0", response.getHeader("RateLimit-Remaining"));
+  }
+
+  @Test
+  void testFilter_FallsBackToLocalLimitWhenRedisIsDown() throws Exception {
+    ReflectionTestUtils.setField(filter, "fallbackNodes", 4);
+    when(rateLimiter.tryAcquire(anyString(), anyLong(), any()))
+        .thenThrow(new JedisConnectionException("Redis circuit breaker is open"));
+
+    int allowed = 0;
+    for (int i = 0; i < 10; i++) {
+      MockHttpServletResponse response = new MockHttpServletResponse();
+      filter.doFilter(new MockHttpServletRequest("GET", "/abc123"), response, new MockFilterChain());
+      if (response.getStatus() == 200) {
+        allowed++;
+      }
+    }
+    assertEquals(5, allowed);
+  }
+
+  @Test
+  void testRedisRateLimiter_OneScriptCallPerDecision() {
+    RedisRateLimiter limiter = new RedisRateLimiter(redisConfig, "token-bucket");
+    when(redisConfig.evalsha(anyString(), anyString(), eq(List.of("key")), eq(List.of("20", "25000", "1"))))
+        .thenReturn(List.of(0L, 0L, 25000L, 1250L, 0L));
+
+    RateLimitDecision decision = limiter.tryAcquire("key", 20, Duration.ofSeconds(25));
+
+    assertEquals(RedisRateLimiter.Algorithm.TOKEN_BUCKET, limiter.getAlgorithm());
+    assertFalse(decision.isAllowed());
+    assertEquals(1250L, decision.getRetryAfterMillis());
+    verify(redisConfig, times(1)).evalsha(anyString(), anyString(), anyList(), anyList());
+    verifyNoMoreInteractions(redisConfig);
+  }
+
+  @Test
+  void testLeasingRateLimiter_SpendsLeaseLocally() {
+    RedisRateLimiter remote = mock(RedisRateLimiter.class);
+    when(remote.acquire("key", 100, Duration.ofSeconds(60), 10))
+        .thenReturn(new RedisRateLimiter.Grant(10, 90, 60000, 0));
+    LeasingRateLimiter limiter = new LeasingRateLimiter(remote, 0.1, 1000);
+
+    for (int i = 0; i < 4; i++) {
+      RateLimitDecision decision = limiter.tryAcquire("key", 100, Duration.ofSeconds(60));
+      assertTrue(decision.isAllowed());
+      assertEquals(90 + 9 - i, decision.getRemaining());
+    }
+    verify(remote, times(1)).acquire(anyString(), anyLong(), any(), anyLong());
+  }
+
+  @Test
+  void testLeasingRateLimiter_NeverAdmitsMoreThanLeased() {
+    RedisRateLimiter remote = mock(RedisRateLimiter.class);
+    when(remote.acquire(anyString(), anyLong(), any(), anyLong()))
+        .thenReturn(new RedisRateLimiter.Grant(10, 1, 60000, 0), new RedisRateLimiter.Grant(0, 0, 60000, 5000));
+    when(remote.acquireAsync(anyString(), anyLong(), any(), anyLong()))
+        .thenReturn(CompletableFuture.completedFuture(new RedisRateLimiter.Grant(0, 0, 60000, 5000)));
+    LeasingRateLimiter limiter = new LeasingRateLimiter(remote, 0.1, 1000);
+
+    int allowed = 0;
+    for (int i = 0; i < 30; i++) {
+      if (limiter.tryAcquire("key", 100, Duration.ofSeconds(60)).isAllowed()) {
+        allowed++;
+      }
+    }
+    assertEquals(10, allowed);
+  }
+
+  @Test
+  void testLeasingRateLimiter_NeverRefusesClientAtHalfItsLimit() {
+    // Redis as a fixed-window counter on a fake clock: window index -> units counted
+    long limit = 16;
+    long windowMillis = 60000;
+    long[] clock = { 0 };
+    Map<Long, Long> counted = new ConcurrentHashMap<>();
+    RedisRateLimiter remote = mock(RedisRateLimiter.class);
+    when(remote.acquire(anyString(), anyLong(), any(), anyLong())).thenAnswer(invocation -> {
+      long window = clock[0] / windowMillis;
+      long used = counted.getOrDefault(window, 0L);
+      long granted = Math.min(invocation.<Long>getArgument(3), limit - used);
+      counted.put(window, used + granted);
+      long reset = windowMillis - clock[0] % windowMillis;
+      return new RedisRateLimiter.Grant(granted, limit - used - granted, reset, granted > 0 ? 0 : reset, window);
+    });
+    when(remote.refundAsync(anyString(), anyLong(), any(), anyLong(), anyLong())).thenAnswer(invocation -> {
+      counted.computeIfPresent(invocation.<Long>getArgument(4), (window, used) -> Math.max(0, used - invocation.<Long>getArgument(3)));
+      return CompletableFuture.completedFuture(null);
+    });
+    LeasingRateLimiter limiter = new LeasingRateLimiter(remote, 0.1, 1000);
+    ReflectionTestUtils.setField(limiter, "clock", (LongSupplier) () -> clock[0]);
+
+    // Eight requests a minute, each arriving after the previous lease has expired
+    for (int i = 0; i < 80; i++) {
+      clock[0] = i * 7500L;
+      assertTrue(limiter.tryAcquire("key", limit, Duration.ofMillis(windowMillis)).isAllowed(), "request " + i);
+    }
+    // The request that waited for a lease never prefetches another
+    verify(remote, never()).acquireAsync(anyString(), anyLong(), any(), anyLong());
+  }
+
+  @Test
+  void testLeasingRateLimiter_RejectsLocallyWhileRedisIsExhausted() {
+    RedisRateLimiter remote = mock(RedisRateLimiter.class);
+    when(remote.acquire(anyString(), anyLong(), any(), anyLong()))
+        .thenReturn(new RedisRateLimiter.Grant(0, 0, 30000, 5000));
+    LeasingRateLimiter limiter = new LeasingRateLimiter(remote, 0.1, 1000);
+
+    RateLimitDecision first = limiter.tryAcquire("key", 100, Duration.ofSeconds(60));
+    RateLimitDecision second = limiter.tryAcquire("key", 100, Duration.ofSeconds(60));
+
+    assertFalse(first.isAllowed());
+    assertFalse(second.isAllowed());
+    assertTrue(second.getRetryAfterMillis() > 0 && second.getRetryAfterMillis() <= 5000);
+    verify(remote, times(1)).acquire(anyString(), anyLong(), any(), anyLong());
+  }
+}
@@ -0,0 +1,109 @@
+package com.urlshortener;
+
+import com.urlshortener.config.RedisConfig;
+import com.urlshortener.service.UniqueVisitorService;
+import com.urlshortener.util.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RedisResilienceTests {
+
+  @Test
+  void testCircuitBreaker_OpensAfterConsecutiveFailures() {
+    CircuitBreaker breaker = new CircuitBreaker("test", 3, Duration.ofMinutes(1));
+
+    for (int i = 0; i < 2; i++) {
+      breaker.onFailure(acquire(breaker, CircuitBreaker.Permit.CALL));
+    }
+    breaker.onSuccess(acquire(breaker, CircuitBreaker.Permit.CALL));
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+    for (int i = 0; i < 3; i++) {
+      breaker.onFailure(acquire(breaker, CircuitBreaker.Permit.CALL));
+    }
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertEquals(CircuitBreaker.Permit.DENIED, breaker.tryAcquirePermission());
+  }
+
+  @Test
+  void testCircuitBreaker_SingleProbeDecidesWhenHalfOpen() {
+    CircuitBreaker breaker = new CircuitBreaker("test", 1, Duration.ZERO);
+    breaker.onFailure(acquire(breaker, CircuitBreaker.Permit.CALL));
+
+    CircuitBreaker.Permit probe = acquire(breaker, CircuitBreaker.Permit.PROBE);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    assertEquals(CircuitBreaker.Permit.DENIED, breaker.tryAcquirePermission());
+
+    breaker.onFailure(probe);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+    breaker.onSuccess(acquire(breaker, CircuitBreaker.Permit.PROBE));
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  void testCircuitBreaker_LateCallsDoNotDecideForTheProbe() {
+    CircuitBreaker breaker = new CircuitBreaker("test", 1, Duration.ZERO);
+    CircuitBreaker.Permit lateSuccess = acquire(breaker, CircuitBreaker.Permit.CALL);
+    CircuitBreaker.Permit lateFailure = acquire(breaker, CircuitBreaker.Permit.CALL);
+    breaker.onFailure(acquire(breaker, CircuitBreaker.Permit.CALL));
+
+    CircuitBreaker.Permit probe = acquire(breaker, CircuitBreaker.Permit.PROBE);
+    // Calls sent before the breaker opened finish while the probe is out
+    breaker.onSuccess(lateSuccess);
+    breaker.onFailure(lateFailure);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    assertEquals(CircuitBreaker.Permit.DENIED, breaker.tryAcquirePermission());
+
+    breaker.onSuccess(probe);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  void testRedisConfig_FailsFastOnceBreakerOpens() {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    // Nothing listens on port 1, so every connection attempt fails
+    RedisConfig redisConfig = new RedisConfig("localhost:1", 100, 100, 2, 60, 160, registry);
+
+    assertThrows(JedisConnectionException.class, () -> redisConfig.get("a"));
+    assertThrows(JedisConnectionException.class, () -> redisConfig.get("a"));
+    assertEquals(CircuitBreaker.State.OPEN, redisConfig.getCircuitStates().get("localhost:1"));
+
+    long start = System.nanoTime();
+    JedisConnectionException rejected = assertThrows(JedisConnectionException.class, () -> redisConfig.get("a"));
+    assertTrue(System.nanoTime() - start < 50_000_000L);
+    assertTrue(rejected.getMessage().contains("circuit breaker is open"));
+    assertEquals(1.0, registry.get("redis.commands.rejected").counter().count());
+    assertEquals(1.0, registry.get("redis.circuit.state").tag("state", "open").gauge().value());
+  }
+
+  @Test
+  void testAsyncCommands_FailWithoutBlockingWhenRedisIsDown() {
+    RedisConfig redisConfig = new RedisConfig("localhost:1", 100, 100, 1, 60, 160, new SimpleMeterRegistry());
+    assertThrows(JedisConnectionException.class, () -> redisConfig.get("a"));
+    UniqueVisitorService visitors = new UniqueVisitorService(redisConfig);
+
+    assertDoesNotThrow(() -> visitors.recordVisit(UUID.randomUUID(), LocalDate.now(), "ip", "agent"));
+    // Reads degrade to no count instead of failing the report
+    assertNull(visitors.countUniqueVisitors(UUID.randomUUID(), List.of(LocalDate.now())));
+    assertNull(visitors.uniqueVisitorsByDay(UUID.randomUUID(), List.of(LocalDate.now())));
+    // Already failed when returned: nothing was sent and nothing waits on the server
+    CompletableFuture<Double> increment = redisConfig.zincrbyIfMemberAsync("leaderboard:{u}", 1, "abc");
+    assertTrue(increment.isCompletedExceptionally());
+  }
+
+  private static CircuitBreaker.Permit acquire(CircuitBreaker breaker, CircuitBreaker.Permit expected) {
+    CircuitBreaker.Permit permit = breaker.tryAcquirePermission();
+    assertEquals(expected, permit);
+    return permit;
+  }
+}
@@ -0,0 +1,130 @@
+package com.urlshortener;
+
+import com.urlshortener.config.ReplicaRoutingDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two in-memory databases stand in for the primary and a replica; each knows its own name.
+ */
+public class ReplicaRoutingTests {
+
+  private JdbcTemplate primaryDb;
+  private JdbcTemplate replicaDb;
+  private ReplicaRoutingDataSource routing;
+  private JdbcTemplate jdbc;
+  private TransactionTemplate readWrite;
+  private TransactionTemplate readOnly;
+
+  @BeforeEach
+  void setUp() {
+    JdbcDataSource primary = database("primary");
+    JdbcDataSource replica = database("replica");
+    primaryDb = new JdbcTemplate(primary);
+    replicaDb = new JdbcTemplate(replica);
+    replicaDb.execute("CREATE TABLE replica_lag (lag_ms BIGINT)");
+    replicaDb.update("INSERT INTO replica_lag VALUES (0)");
+
+    routing = new ReplicaRoutingDataSource(primary, List.of(replica), "SELECT lag_ms FROM replica_lag",
+        Duration.ofMillis(500), Duration.ofHours(1), Duration.ofMinutes(1), new SimpleMeterRegistry());
+    routing.afterPropertiesSet();
+    LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+    jdbc = new JdbcTemplate(dataSource);
+    DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+    readWrite = new TransactionTemplate(transactionManager);
+    readOnly = new TransactionTemplate(transactionManager);
+    readOnly.setReadOnly(true);
+  }
+
+  @AfterEach
+  void tearDown() {
+    routing.shutdown();
+    SecurityContextHolder.clearContext();
+  }
+
+  @Test
+  void testReadOnlyTransactionsGoToReplica() {
+    assertEquals("replica", readOnly.execute(status -> whoAmI()));
+    assertEquals("primary", readWrite.execute(status -> whoAmI()));
+    // Outside a transaction: the primary
+    assertEquals("primary", whoAmI());
+  }
+
+  @Test
+  void testLaggingReplicaIsSkipped() {
+    replicaDb.update("UPDATE replica_lag SET lag_ms = 5000");
+    routing.checkLag();
+    assertEquals("primary", readOnly.execute(status -> whoAmI()));
+
+    replicaDb.update("UPDATE replica_lag SET lag_ms = 100");
+    routing.checkLag();
+    assertEquals("replica", readOnly.execute(status -> whoAmI()));
+  }
+
+  @Test
+  void testUncheckableReplicaIsSkipped() {
+    replicaDb.execute("DROP TABLE replica_lag");
+    routing.checkLag();
+
+    assertEquals("primary", readOnly.execute(status -> whoAmI()));
+  }
+
+  @Test
+  void testReadsStayOnPrimaryAfterWrite() {
+    signIn("writer");
+    readWrite.executeWithoutResult(status -> jdbc.update("INSERT INTO node VALUES ('written')"));
+
+    assertEquals("primary", readOnly.execute(status -> whoAmI()));
+    Integer written = readOnly.execute(status ->
+        jdbc.queryForObject("SELECT COUNT(*) FROM node WHERE name = 'written'", Integer.class));
+    assertEquals(1, written);
+
+    signIn("someone-else");
+    assertEquals("replica", readOnly.execute(status -> whoAmI()));
+  }
+
+  @Test
+  void testRolledBackWriteDoesNotStick() {
+    signIn("writer");
+    readWrite.executeWithoutResult(status -> {
+      jdbc.update("INSERT INTO node VALUES ('written')");
+      status.setRollbackOnly();
+    });
+
+    assertEquals("replica", readOnly.execute(status -> whoAmI()));
+    assertEquals(0, primaryDb.queryForObject("SELECT COUNT(*) FROM node WHERE name = 'written'", Integer.class));
+  }
+
+  private String whoAmI() {
+    return jdbc.queryForObject("SELECT name FROM node ORDER BY name LIMIT 1", String.class);
+  }
+
+  private static void signIn(String username) {
+    SecurityContextHolder.getContext().setAuthentication(
+        new UsernamePasswordAuthenticationToken(username, null, List.of()));
+  }
+
+  private static JdbcDataSource database(String name) {
+    JdbcDataSource dataSource = new JdbcDataSource();
+    dataSource.setURL("jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+    JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+    jdbc.execute("CREATE TABLE node (name VARCHAR(20))");
+    jdbc.update("INSERT INTO node VALUES (?)", name);
+    return dataSource;
+  }
+}
@@ -1,36 +1,69 @@
 package com.urlshortener;
 
+import com.urlshortener.config.RedisConfig;
 import com.urlshortener.dto.*;
 import com.urlshortener.entity.ClickAnalytics;
 import com.urlshortener.entity.Url;
 import com.urlshortener.entity.User;
+import com.urlshortener.exception.AnalyticsTimeoutException;
+import com.urlshortener.exception.ForbiddenException;
+import com.urlshortener.exception.GoneException;
 import com.urlshortener.exception.ResourceNotFoundException;
+import com.urlshortener.exception.TooManyRequestsException;
 import com.urlshortener.exception.UnauthorizedException;
 import com.urlshortener.repository.ClickAnalyticsRepository;
+import com.urlshortener.repository.ClickStore;
 import com.urlshortener.repository.UrlRepository;
 import com.urlshortener.repository.UserRepository;
+import com.urlshortener.repository.shard.ShardRouter;
 import com.urlshortener.security.JwtAuthenticationFilter;
 import com.urlshortener.security.JwtTokenProvider;
+import com.urlshortener.security.TokenClaims;
+import com.urlshortener.service.AnalyticsCache;
 import com.urlshortener.service.AnalyticsService;
 import com.urlshortener.service.AuthService;
+import com.urlshortener.service.ClickExportService;
+import com.urlshortener.service.ClickStreamHub;
+import com.urlshortener.service.LeaderboardService;
+import com.urlshortener.service.UniqueVisitorService;
+import com.urlshortener.service.TokenRevocationService;
+import com.urlshortener.service.UrlExpirySweeper;
+import com.urlshortener.service.UrlPurger;
 import com.urlshortener.service.UrlService;
+import com.urlshortener.service.UserCache;
+import com.urlshortener.util.ClickClassifier;
 import com.urlshortener.util.ShortCodeGenerator;
 import com.urlshortener.util.UrlValidator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.password.PasswordEncoder;
-
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -48,6 +81,9 @@ public class ServiceTests {
   @Mock
   private ClickAnalyticsRepository clickAnalyticsRepository;
 
+  @Mock
+  private ClickStore clickStore;
+
   @Mock
   private PasswordEncoder passwordEncoder;
 
@@ -69,6 +105,33 @@ public class ServiceTests {
   @Mock
   private UrlValidator urlValidator;
 
+  @Mock
+  private UniqueVisitorService uniqueVisitorService;
+
+  @Mock
+  private ClickStreamHub clickStreamHub;
+
+  @Mock
+  private AnalyticsCache analyticsCache;
+
+  @Mock
+  private LeaderboardService leaderboardService;
+
+  @Mock
+  private UserCache userCache;
+
+  @Mock
+  private TokenRevocationService tokenRevocationService;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  @Spy
+  private ClickClassifier clickClassifier = new ClickClassifier();
+
+  @Spy
+  private ShardRouter shardRouter = ShardRouter.single();
+
   @InjectMocks
   private AuthService authService;
 
@@ -78,6 +141,9 @@ public class ServiceTests {
   @InjectMocks
   private AnalyticsService analyticsService;
 
+  @InjectMocks
+  private ClickExportService clickExportService;
+
   private User testUser;
   private Url testUrl;
   private ClickAnalytics testClickAnalytics;
@@ -100,7 +166,7 @@ public class ServiceTests {
     when(userRepository.existsByEmail(anyString())).thenReturn(false);
     when(passwordEncoder.encode(anyString())).thenReturn("encodedPassword");
     when(userRepository.save(any(User.class))).thenReturn(testUser);
-    when(jwtTokenProvider.createAccessToken(anyString())).thenReturn("accessToken");
+    when(jwtTokenProvider.createAccessToken(any(User.class))).thenReturn("accessToken");
     when(jwtTokenProvider.createRefreshToken(anyString())).thenReturn("refreshToken");
 
     AuthResponse response = authService.register(request);
@@ -115,7 +181,7 @@ public class ServiceTests {
     Authentication authentication = new UsernamePasswordAuthenticationToken(testUser, null);
 
     when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class))).thenReturn(authentication);
-    when(jwtTokenProvider.createAccessToken(anyString())).thenReturn("accessToken");
+    when(jwtTokenProvider.createAccessToken(any(User.class))).thenReturn("accessToken");
     when(jwtTokenProvider.createRefreshToken(anyString())).thenReturn("refreshToken");
 
     AuthResponse response = authService.login(request);
@@ -126,31 +192,58 @@ public class ServiceTests {
 
   @Test
   void testRefreshToken_Success() {
-    UserDetails userDetails = org.springframework.security.core.userdetails.User.builder().username("testUser").password("encodedPassword").roles("USER").build();
-    when(jwtTokenProvider.getUsername(anyString())).thenReturn("testUser");
-    when(userDetailsService.loadUserByUsername(anyString())).thenReturn(userDetails);
-    when(jwtTokenProvider.validateToken(anyString(), any(UserDetails.class))).thenReturn(true);
-    when(userRepository.findByUsername(anyString())).thenReturn(Optional.of(testUser));
-    when(jwtTokenProvider.createAccessToken(anyString())).thenReturn("newAccessToken");
+    TokenClaims claims = TokenClaims.builder().tokenId("hash").subject("testUser").type("refresh")
+        .expiresAt(Instant.now().plusSeconds(60)).build();
+    when(jwtTokenProvider.parseToken("refreshToken")).thenReturn(claims);
+    when(tokenRevocationService.revoke(claims)).thenReturn(true);
+    when(userCache.getByUsername("testUser")).thenReturn(testUser);
+    when(jwtTokenProvider.createAccessToken(testUser)).thenReturn("newAccessToken");
     when(jwtTokenProvider.createRefreshToken(anyString())).thenReturn("newRefreshToken");
 
     AuthResponse response = authService.refreshToken("refreshToken");
 
     assertNotNull(response);
     assertEquals("newAccessToken", response.getAccessToken());
+    verify(tokenRevocationService, times(1)).revoke(claims);
+
+    when(tokenRevocationService.isRevoked(claims)).thenReturn(true);
+    assertThrows(UnauthorizedException.class, () -> authService.refreshToken("refreshToken"));
+  }
+
+  @Test
+  void testRefreshToken_RejectedWhenRevokedConcurrently() {
+    TokenClaims claims = TokenClaims.builder().tokenId("hash").subject("testUser").type("refresh")
+        .expiresAt(Instant.now().plusSeconds(60)).build();
+    when(jwtTokenProvider.parseToken("refreshToken")).thenReturn(claims);
+    // Another refresh of the same token won the revocation after this one's check
+    when(tokenRevocationService.revoke(claims)).thenReturn(false);
+
+    assertThrows(UnauthorizedException.class, () -> authService.refreshToken("refreshToken"));
+    verify(jwtTokenProvider, never()).createRefreshToken(anyString());
+  }
+
+  @Test
+  void testLogout_RevokesToken() {
+    TokenClaims claims = TokenClaims.builder().tokenId("hash").subject("testUser")
+        .expiresAt(Instant.now().plusSeconds(60)).build();
+    when(jwtTokenProvider.parseToken("accessToken")).thenReturn(claims);
+
+    authService.logout("accessToken");
+
+    verify(tokenRevocationService, times(1)).revoke(claims);
   }
 
   @Test
   void testCreateShortUrl_Success() {
     UrlRequest request = UrlRequest.builder().longUrl("https://www.example.com").build();
     when(urlValidator.isValidUrl(anyString())).thenReturn(true);
-    when(userRepository.findByUsername(anyString())).thenReturn(Optional.of(testUser));
-    when(urlRepository.findByLongUrlAndUser(anyString(), any(User.class))).thenReturn(Optional.empty());
+    when(userRepository.getReferenceById(testUser.getId())).thenReturn(testUser);
+    when(urlRepository.findByLongUrlAndUserAndExpiresAtIsNullAndMaxClicksIsNull(anyString(), any(User.class))).thenReturn(List.of());
     when(shortCodeGenerator.generate(anyInt())).thenReturn("short");
     when(urlRepository.existsByShortCode(anyString())).thenReturn(false);
     when(urlRepository.save(any(Url.class))).thenReturn(testUrl);
 
-    UrlResponse response = urlService.createShortUrl(request, "testUser");
+    UrlResponse response = urlService.createShortUrl(request, testUser.getId());
 
     assertNotNull(response);
     assertEquals("short", response.getShortCode());
@@ -158,55 +251,403 @@ public class ServiceTests {
 
   @Test
   void testGetUserUrls_Success() {
-    when(userRepository.findByUsername(anyString())).thenReturn(Optional.of(testUser));
-    when(urlRepository.findByUser(any(User.class))).thenReturn(Collections.singletonList(testUrl));
+    ReflectionTestUtils.setField(urlService, "maxPageLimit", 200);
+    testUrl.setCreatedAt(LocalDateTime.of(2024, 1, 1, 12, 0));
+    when(urlRepository.findPageByUserId(eq(testUser.getId()), any(LocalDateTime.class), any(UUID.class), any()))
+        .thenReturn(Collections.singletonList(testUrl));
 
-    List<UrlResponse> responses = urlService.getUserUrls("testUser");
+    UrlPage page = urlService.getUserUrls(testUser.getId(), null, 50, null);
 
-    assertFalse(responses.isEmpty());
-    assertEquals("short", responses.get(0).getShortCode());
+    assertEquals("short", page.getUrls().get(0).getShortCode());
+    assertNull(page.getNextCursor());
+  }
+
+  @Test
+  void testGetUserUrls_NextPageStartsAfterCursor() {
+    ReflectionTestUtils.setField(urlService, "maxPageLimit", 200);
+    List<Url> rows = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      Url url = Url.builder().user(testUser).shortCode("code" + i).longUrl("https://example.com/" + i).clicks(0).build();
+      url.setId(UUID.randomUUID());
+      url.setCreatedAt(LocalDateTime.of(2024, 1, 3 - i, 12, 0));
+      rows.add(url);
+    }
+    when(urlRepository.findPageByUserId(eq(testUser.getId()), any(LocalDateTime.class), any(UUID.class), any()))
+        .thenReturn(rows);
+
+    UrlPage first = urlService.getUserUrls(testUser.getId(), null, 2, null);
+
+    assertEquals(List.of("code0", "code1"), first.getUrls().stream().map(UrlResponse::getShortCode).toList());
+    assertNotNull(first.getNextCursor());
+
+    urlService.getUserUrls(testUser.getId(), first.getNextCursor(), 2, null);
+
+    // Resumes after the last row of the previous page, asking for one row more than the page
+    verify(urlRepository).findPageByUserId(testUser.getId(), rows.get(1).getCreatedAt(), rows.get(1).getId(),
+        PageRequest.of(0, 3));
+  }
+
+  @Test
+  void testGetUserUrls_SearchEscapesLikeWildcards() {
+    ReflectionTestUtils.setField(urlService, "maxPageLimit", 200);
+
+    urlService.getUserUrls(testUser.getId(), null, 10, "50%_off!");
+
+    verify(urlRepository).searchPageByUserId(eq(testUser.getId()), any(LocalDateTime.class), any(UUID.class),
+        eq("50!%!_off!!%"), any());
+    verify(urlRepository, never()).findPageByUserId(any(), any(), any(), any());
+  }
+
+  @Test
+  void testGetUserUrls_RejectsInvalidCursorAndLimit() {
+    ReflectionTestUtils.setField(urlService, "maxPageLimit", 200);
+
+    assertThrows(IllegalArgumentException.class, () -> urlService.getUserUrls(testUser.getId(), "not-a-cursor", 10, null));
+    assertThrows(IllegalArgumentException.class, () -> urlService.getUserUrls(testUser.getId(), null, 201, null));
   }
 
   @Test
   void testGetUrl_Success() {
-    when(urlRepository.findByShortCode(anyString())).thenReturn(Optional.of(testUrl));
-    when(userRepository.findByUsername(anyString())).thenReturn(Optional.of(testUser));
+    when(urlRepository.findSummaryByShortCode(anyString())).thenReturn(Optional.of(summary(testUrl)));
 
-    UrlResponse response = urlService.getUrl("short", "testUser");
+    UrlResponse response = urlService.getUrl("short", testUser.getId());
 
     assertNotNull(response);
     assertEquals("short", response.getShortCode());
   }
 
   @Test
-  void testGetLongUrlAndIncrementClicks_Success() {
-    when(urlRepository.findByShortCode(anyString())).thenReturn(Optional.of(testUrl));
+  void testGetUrl_OtherOwnerIsForbiddenAndMissingIsNotFound() {
+    when(urlRepository.findSummaryByShortCode("short")).thenReturn(Optional.of(summary(testUrl)));
+    when(urlRepository.findSummaryByShortCode("missing")).thenReturn(Optional.empty());
+
+    assertThrows(ForbiddenException.class, () -> urlService.getUrl("short", UUID.randomUUID()));
+    assertThrows(ForbiddenException.class, () -> urlService.deleteUrl("short", UUID.randomUUID()));
+    assertThrows(ForbiddenException.class, () -> analyticsService.getOwnedUrlId("short", UUID.randomUUID()));
+    assertThrows(ResourceNotFoundException.class, () -> urlService.getUrl("missing", testUser.getId()));
+    verify(urlRepository, never()).markDeleted(any(), any());
+  }
+
+  @Test
+  void testCreateShortUrl_LimitedLinkIsAlwaysNew() {
+    LocalDateTime expiresAt = LocalDateTime.now().plusDays(1);
+    UrlRequest request = UrlRequest.builder().longUrl("https://www.example.com").expiresAt(expiresAt).maxClicks(5).build();
+    when(urlValidator.isValidUrl(anyString())).thenReturn(true);
+    when(userRepository.getReferenceById(testUser.getId())).thenReturn(testUser);
+    when(shortCodeGenerator.generate(anyInt())).thenReturn("short");
+    when(urlRepository.save(any(Url.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+    UrlResponse response = urlService.createShortUrl(request, testUser.getId());
+
+    assertEquals(expiresAt, response.getExpiresAt());
+    assertEquals(5, response.getMaxClicks());
+    verify(urlRepository, never()).findByLongUrlAndUserAndExpiresAtIsNullAndMaxClicksIsNull(anyString(), any(User.class));
+  }
+
+  @Test
+  void testResolveClick_Success() {
+    when(urlRepository.findSummaryByShortCode(anyString())).thenReturn(Optional.of(summary(testUrl)));
+    when(urlRepository.incrementClicks(eq("short"), any(LocalDateTime.class))).thenReturn(1);
+
+    UrlSummary url = urlService.resolveClick("short", "referrer", "userAgent", "ipAddress");
+
+    assertEquals("https://www.example.com", url.getLongUrl());
+    verify(urlRepository, times(1)).incrementClicks(eq("short"), any(LocalDateTime.class));
+    verify(clickStore, times(1)).record(any(ClickEvent.class));
+    verify(uniqueVisitorService, times(1)).recordVisit(eq(testUrl.getId()), any(), eq("ipAddress"), eq("userAgent"));
+    verify(clickStreamHub, times(1)).publish(any(ClickEvent.class));
+    verify(analyticsCache, times(1)).onClick("short");
+    verify(leaderboardService, times(1)).recordClick(testUser.getId(), "short");
+  }
+
+  @Test
+  void testResolveClick_ExpiredLinkIsGone() {
+    testUrl.setExpiresAt(LocalDateTime.now().minusMinutes(1));
+    when(urlRepository.findSummaryByShortCode(anyString())).thenReturn(Optional.of(summary(testUrl)));
 
-    String longUrl = urlService.getLongUrlAndIncrementClicks("short", "referrer", "userAgent", "ipAddress");
+    assertThrows(GoneException.class, () -> urlService.resolveClick("short", "referrer", "userAgent", "ipAddress"));
+    verify(urlRepository, never()).incrementClicks(anyString(), any());
+    verify(clickStore, never()).record(any());
+  }
 
-    assertEquals("https://www.example.com", longUrl);
-    verify(urlRepository, times(1)).incrementClicks("short");
-    verify(clickAnalyticsRepository, times(1)).save(any(ClickAnalytics.class));
+  @Test
+  void testResolveClick_LastClickTakenConcurrently() {
+    // The row read still had a click left, but another redirect used it before the update
+    testUrl.setMaxClicks(3);
+    testUrl.setClicks(2);
+    when(urlRepository.findSummaryByShortCode(anyString())).thenReturn(Optional.of(summary(testUrl)));
+    when(urlRepository.incrementClicks(eq("short"), any(LocalDateTime.class))).thenReturn(0);
+
+    assertThrows(GoneException.class, () -> urlService.resolveClick("short", "referrer", "userAgent", "ipAddress"));
+    verify(clickStore, never()).record(any());
+    verify(leaderboardService, never()).recordClick(any(), anyString());
   }
 
   @Test
   void testDeleteUrl_Success() {
-    when(urlRepository.findByShortCode(anyString())).thenReturn(Optional.of(testUrl));
-    when(userRepository.findByUsername(anyString())).thenReturn(Optional.of(testUser));
+    when(urlRepository.findSummaryByShortCode(anyString())).thenReturn(Optional.of(summary(testUrl)));
 
-    assertDoesNotThrow(() -> urlService.deleteUrl("short", "testUser"));
-    verify(urlRepository, times(1)).delete(any(Url.class));
+    assertDoesNotThrow(() -> urlService.deleteUrl("short", testUser.getId()));
+    verify(urlRepository, times(1)).markDeleted(eq(testUrl.getId()), any(LocalDateTime.class));
+    verify(urlRepository, never()).deleteById(any());
+    verify(leaderboardService, times(1)).removeLink(testUser.getId(), "short");
+    verify(analyticsCache, times(1)).evict("short");
   }
 
   @Test
-  void testGetUrlAnalytics_Success() {
-    when(urlRepository.findByShortCode(anyString())).thenReturn(Optional.of(testUrl));
-    when(userRepository.findByUsername(anyString())).thenReturn(Optional.of(testUser));
-    when(clickAnalyticsRepository.findByUrl(any(Url.class))).thenReturn(Collections.singletonList(testClickAnalytics));
+  void testUrlPurger_DeletesClicksInBatchesThenUrl() {
+    UrlPurger purger = new UrlPurger(urlRepository, clickAnalyticsRepository, mock(PlatformTransactionManager.class), shardRouter);
+    ReflectionTestUtils.setField(purger, "batchSize", 2);
+    ReflectionTestUtils.setField(purger, "maxUrls", 10);
+    when(urlRepository.findDeletedShortCodes(10)).thenReturn(List.of("short"));
+    when(clickAnalyticsRepository.deleteBatchOfDeletedUrl("short", 2)).thenReturn(2, 2, 1);
+    when(urlRepository.purgeDeleted("short")).thenReturn(1);
+
+    assertEquals(1, purger.purge());
+    InOrder order = inOrder(clickAnalyticsRepository, urlRepository);
+    order.verify(clickAnalyticsRepository, times(3)).deleteBatchOfDeletedUrl("short", 2);
+    order.verify(urlRepository).purgeDeleted("short");
+  }
 
-    AnalyticsResponse response = analyticsService.getUrlAnalytics("short", "testUser");
+  @Test
+  void testExpirySweeperLease_OneHolderAtATime() {
+    RedisConfig redisConfig = mock(RedisConfig.class);
+    UrlExpirySweeper sweeper = new UrlExpirySweeper(urlRepository, leaderboardService, analyticsCache, redisConfig,
+        mock(PlatformTransactionManager.class), shardRouter);
+    ReflectionTestUtils.setField(sweeper, "leaseSeconds", 60);
+    when(redisConfig.setnx(eq("lease:url-expiry-sweep"), anyString())).thenReturn(1L, 0L, 0L);
+    when(redisConfig.get("lease:url-expiry-sweep"))
+        .thenReturn(Long.toString(System.currentTimeMillis() + 60_000), Long.toString(System.currentTimeMillis() - 1));
+
+    assertTrue(sweeper.acquireLease());
+    verify(redisConfig).expire("lease:url-expiry-sweep", 60);
+    // Held by someone else
+    assertFalse(sweeper.acquireLease());
+    verify(redisConfig, never()).del(anyString());
+    // Left without a TTL by a holder that died: cleared for the next run
+    assertFalse(sweeper.acquireLease());
+    verify(redisConfig).del("lease:url-expiry-sweep");
+
+    when(redisConfig.setnx(anyString(), anyString())).thenThrow(new JedisConnectionException("down"));
+    assertFalse(sweeper.acquireLease());
+  }
+
+  @Test
+  void testGetUrlAnalytics_Success() {
+    when(urlRepository.findSummaryByShortCode(anyString())).thenReturn(Optional.of(summary(testUrl)));
+    doAnswer(invocation -> {
+      Consumer<ClickEvent> consumer = invocation.getArgument(3);
+      consumer.accept(ClickEvent.builder()
+          .urlId(testUrl.getId())
+          .clickedAt(testClickAnalytics.getClickedAt())
+          .referrer("https://www.google.com/search")
+          .userAgent("Mozilla/5.0 Firefox/120.0")
+          .build());
+      return null;
+    }).when(clickStore).scan(eq(testUrl.getId()), any(), any(), any());
+
+    when(uniqueVisitorService.countUniqueVisitors(any(UUID.class), anyList())).thenReturn(1L);
+
+    AnalyticsResponse response = analyticsService.getUrlAnalytics("short", testUser.getId());
 
     assertNotNull(response);
     assertEquals("short", response.getShortCode());
+    assertEquals(1L, response.getUniqueVisitors());
+    assertEquals(1L, response.getReferrerCounts().get("google.com"));
+    assertEquals(1L, response.getBrowserCounts().get("Firefox"));
+  }
+
+  @Test
+  void testGetAccountAnalytics_MergesPartitions() {
+    Url otherUrl = Url.builder().user(testUser).shortCode("other").longUrl("https://www.example.org").clicks(0).build();
+    otherUrl.setId(UUID.randomUUID());
+    ReflectionTestUtils.setField(analyticsService, "shortDomain", "http://localhost");
+    ReflectionTestUtils.setField(analyticsService, "defaultDays", 30);
+    ReflectionTestUtils.setField(analyticsService, "maxDays", 366);
+    ReflectionTestUtils.setField(analyticsService, "partitionSize", 1);
+    ReflectionTestUtils.setField(analyticsService, "parallelism", 2);
+    ReflectionTestUtils.setField(analyticsService, "timeoutSeconds", 10L);
+
+    LocalDate today = LocalDate.now();
+    when(urlRepository.findIdsByUserId(testUser.getId())).thenReturn(List.of(testUrl.getId(), otherUrl.getId()));
+    when(urlRepository.findAllById(anyList())).thenReturn(List.of(testUrl, otherUrl));
+    when(clickStore.aggregate(anyList(), any(), any())).thenAnswer(invocation -> {
+      List<UUID> partition = invocation.getArgument(0);
+      ClickAggregate aggregate = new ClickAggregate();
+      int clicks = partition.contains(otherUrl.getId()) ? 3 : 1;
+      for (int i = 0; i < clicks; i++) {
+        aggregate.add(ClickEvent.builder()
+            .urlId(partition.get(0))
+            .clickedAt(today.atTime(12, i))
+            .referrer("https://www.google.com/search?q=" + i)
+            .userAgent("Mozilla/5.0 Firefox/120.0")
+            .build());
+      }
+      return aggregate;
+    });
+
+    AccountAnalyticsResponse response = analyticsService.getAccountAnalytics(testUser.getId(), null, null, 10);
+
+    verify(clickStore, times(2)).aggregate(anyList(), any(), any());
+    assertEquals(today.minusDays(29), response.getFrom());
+    assertEquals(2L, response.getTotalUrls());
+    assertEquals(4L, response.getTotalClicks());
+    assertEquals(30, response.getClicksByDay().size());
+    assertEquals(4L, response.getClicksByDay().get(today.toString()));
+    assertEquals("other", response.getTopLinks().get(0).getShortCode());
+    assertEquals(3L, response.getTopLinks().get(0).getClicks());
+    assertEquals(Map.of("google.com", 4L), response.getTopReferrers());
+    assertEquals(Map.of("Firefox", 4L), response.getTopBrowsers());
+
+    assertThrows(IllegalArgumentException.class,
+        () -> analyticsService.getAccountAnalytics(testUser.getId(), today, today.minusDays(1), 10));
+    assertThrows(IllegalArgumentException.class,
+        () -> analyticsService.getAccountAnalytics(testUser.getId(), today.minusYears(2), today, 10));
+  }
+
+  @Test
+  void testGetAccountAnalytics_TimesOutOnEitherPath() {
+    ReflectionTestUtils.setField(analyticsService, "defaultDays", 30);
+    ReflectionTestUtils.setField(analyticsService, "maxDays", 366);
+    ReflectionTestUtils.setField(analyticsService, "partitionSize", 1);
+    ReflectionTestUtils.setField(analyticsService, "parallelism", 1);
+    ReflectionTestUtils.setField(analyticsService, "timeoutSeconds", 5L);
+    when(urlRepository.findIdsByUserId(testUser.getId())).thenReturn(List.of(UUID.randomUUID(), UUID.randomUUID()));
+
+    // Sequentially, a statement cut off by its query timeout ends the request
+    when(clickStore.aggregate(anyList(), any(), any())).thenThrow(new QueryTimeoutException("canceled"));
+    assertThrows(AnalyticsTimeoutException.class,
+        () -> analyticsService.getAccountAnalytics(testUser.getId(), null, null, 10));
+    // Each partition's transaction, and so each statement, is bounded by what is left of the timeout
+    ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+    verify(transactionManager).getTransaction(definition.capture());
+    assertTrue(definition.getValue().isReadOnly());
+    assertTrue(definition.getValue().getTimeout() > 0 && definition.getValue().getTimeout() <= 5);
+
+    // In parallel, partitions still running at the deadline are cancelled
+    ReflectionTestUtils.setField(analyticsService, "parallelism", 2);
+    ReflectionTestUtils.setField(analyticsService, "timeoutSeconds", 1L);
+    CountDownLatch never = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      never.await();
+      return new ClickAggregate();
+    }).when(clickStore).aggregate(anyList(), any(), any());
+    assertThrows(AnalyticsTimeoutException.class,
+        () -> analyticsService.getAccountAnalytics(testUser.getId(), null, null, 10));
+  }
+
+  @Test
+  void testWriteClicks_Csv() throws Exception {
+    doAnswer(invocation -> {
+      Consumer<ClickEvent> consumer = invocation.getArgument(3);
+      consumer.accept(ClickEvent.builder()
+          .urlId(testUrl.getId())
+          .clickedAt(LocalDateTime.of(2024, 1, 2, 3, 4, 5))
+          .referrer("https://example.com/?a=1,b=\"2\"")
+          .userAgent("Mozilla/5.0")
+          .ipAddress("127.0.0.1")
+          .build());
+      return null;
+    }).when(clickStore).scan(eq(testUrl.getId()), eq(LocalDate.of(2024, 1, 1).atStartOfDay()), any(), any());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    clickExportService.writeClicks(testUrl.getShortCode(), testUrl.getId(), ClickExportService.Format.CSV, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31), out);
+
+    assertEquals("clicked_at,referrer,user_agent,ip_address\n"
+        + "2024-01-02T03:04:05,\"https://example.com/?a=1,b=\"\"2\"\"\",Mozilla/5.0,127.0.0.1\n", out.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void testWriteClicks_CsvNeutralisesFormulas() throws Exception {
+    doAnswer(invocation -> {
+      Consumer<ClickEvent> consumer = invocation.getArgument(3);
+      consumer.accept(ClickEvent.builder()
+          .urlId(testUrl.getId())
+          .clickedAt(LocalDateTime.of(2024, 1, 2, 3, 4, 5))
+          .referrer("=HYPERLINK(\"https://evil.example\",\"x\")")
+          .userAgent("@SUM(A1)")
+          .ipAddress("-1")
+          .build());
+      return null;
+    }).when(clickStore).scan(eq(testUrl.getId()), any(), any(), any());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    clickExportService.writeClicks(testUrl.getShortCode(), testUrl.getId(), ClickExportService.Format.CSV, null, null, out);
+
+    assertEquals("clicked_at,referrer,user_agent,ip_address\n"
+        + "2024-01-02T03:04:05,\"'=HYPERLINK(\"\"https://evil.example\"\",\"\"x\"\")\",'@SUM(A1),'-1\n", out.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void testWriteClicks_RejectsInvertedRange() {
+    assertThrows(IllegalArgumentException.class, () -> clickExportService.writeClicks(testUrl.getShortCode(), testUrl.getId(),
+        ClickExportService.Format.CSV, LocalDate.of(2024, 2, 1), LocalDate.of(2024, 1, 1), new ByteArrayOutputStream()));
+  }
+
+  @Test
+  void testWriteClicks_Ndjson() throws Exception {
+    doAnswer(invocation -> {
+      Consumer<ClickEvent> consumer = invocation.getArgument(3);
+      consumer.accept(ClickEvent.builder().urlId(testUrl.getId()).clickedAt(LocalDateTime.of(2024, 1, 2, 3, 4, 5)).ipAddress("127.0.0.1").build());
+      return null;
+    }).when(clickStore).scan(eq(testUrl.getId()), eq(ClickStore.ALL_TIME_FROM), eq(ClickStore.ALL_TIME_TO), any());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    clickExportService.writeClicks(testUrl.getShortCode(), testUrl.getId(), ClickExportService.Format.NDJSON, null, null, out);
+
+    assertEquals("{\"clickedAt\":\"2024-01-02T03:04:05\",\"referrer\":null,\"userAgent\":null,\"ipAddress\":\"127.0.0.1\"}\n",
+        out.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void testClickStreamHub_FansOutAndDropsSlowSubscribers() {
+    ClickStreamHub hub = newClickStreamHub(1);
+
+    hub.subscribe(testUrl.getId(), testUser.getId());
+    hub.subscribe(UUID.randomUUID(), testUser.getId());
+    assertEquals(2, hub.subscriberCount());
+
+    // A burst larger than the one-slot queue overflows it before the dispatcher catches up
+    ClickEvent click = ClickEvent.builder().urlId(testUrl.getId()).clickedAt(LocalDateTime.now()).build();
+    for (int i = 0; i < 1000; i++) {
+      hub.publish(click);
+    }
+    await(() -> hub.subscriberCount() == 1);
+    assertEquals(1, hub.subscriberCount());
+  }
+
+  @Test
+  void testClickStreamHub_LimitsSubscriptions() {
+    ClickStreamHub hub = newClickStreamHub(256);
+    ReflectionTestUtils.setField(hub, "maxPerUrl", 1);
+    ReflectionTestUtils.setField(hub, "maxPerUser", 2);
+
+    hub.subscribe(testUrl.getId(), testUser.getId());
+    assertThrows(TooManyRequestsException.class, () -> hub.subscribe(testUrl.getId(), UUID.randomUUID()));
+    // The refused link subscription gave back its user slot
+    hub.subscribe(UUID.randomUUID(), testUser.getId());
+    assertThrows(TooManyRequestsException.class, () -> hub.subscribe(UUID.randomUUID(), testUser.getId()));
+    assertEquals(2, hub.subscriberCount());
+  }
+
+  private ClickStreamHub newClickStreamHub(int queueCapacity) {
+    ClickStreamHub hub = new ClickStreamHub(clickClassifier, 1, 3600, 60000);
+    ReflectionTestUtils.setField(hub, "timeoutMs", 60000L);
+    ReflectionTestUtils.setField(hub, "queueCapacity", queueCapacity);
+    ReflectionTestUtils.setField(hub, "maxPerUrl", 10);
+    ReflectionTestUtils.setField(hub, "maxPerUser", 10);
+    return hub;
+  }
+
+  private static void await(java.util.function.BooleanSupplier condition) {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+      Thread.onSpinWait();
+    }
+  }
+
+  private static UrlSummary summary(Url url) {
+    return new UrlSummary(url.getId(), url.getUser().getId(), url.getShortCode(), url.getLongUrl(), url.getClicks(), url.getCreatedAt(),
+        url.getExpiresAt(), url.getMaxClicks());
   }
 }
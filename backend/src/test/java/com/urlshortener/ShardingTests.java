@@ -0,0 +1,159 @@
+package com.urlshortener;
+
+import com.urlshortener.config.ShardRoutingDataSource;
+import com.urlshortener.repository.shard.HashRingShardResolver;
+import com.urlshortener.repository.shard.ShardContext;
+import com.urlshortener.repository.shard.ShardRouter;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two in-memory databases stand in for the shards; each has a urls table and knows its own name.
+ */
+public class ShardingTests {
+
+  private List<JdbcTemplate> shardDbs;
+  private ShardRouter router;
+  private JdbcTemplate jdbc;
+  private TransactionTemplate readWrite;
+
+  @BeforeEach
+  void setUp() {
+    JdbcDataSource shard0 = database("shard-0");
+    JdbcDataSource shard1 = database("shard-1");
+    shardDbs = List.of(new JdbcTemplate(shard0), new JdbcTemplate(shard1));
+
+    ShardRoutingDataSource routing = new ShardRoutingDataSource(List.of(shard0, shard1));
+    routing.afterPropertiesSet();
+    LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+    jdbc = new JdbcTemplate(dataSource);
+    DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+    readWrite = new TransactionTemplate(transactionManager);
+    router = new ShardRouter(new HashRingShardResolver(2, 160), transactionManager, 2, Duration.ofSeconds(5));
+  }
+
+  @AfterEach
+  void tearDown() {
+    router.shutdown();
+  }
+
+  @Test
+  void testShardEnteredInsideTransactionIsUsed() {
+    List<String> codes = codes(50);
+    for (String code : codes) {
+      // The transaction starts first, as with @Transactional service methods
+      readWrite.executeWithoutResult(status -> {
+        try (ShardContext.Scope scope = router.use(code)) {
+          jdbc.update("INSERT INTO urls (short_code) VALUES (?)", code);
+        }
+      });
+    }
+
+    for (String code : codes) {
+      int owner = router.shardFor(code);
+      assertEquals(1, count(shardDbs.get(owner), code), code);
+      assertEquals(0, count(shardDbs.get(1 - owner), code), code);
+    }
+    assertTrue(count(shardDbs.get(0), null) > 0 && count(shardDbs.get(1), null) > 0);
+    // Outside any scope: shard 0
+    assertEquals("shard-0", jdbc.queryForObject("SELECT name FROM node", String.class));
+  }
+
+  @Test
+  void testGatherQueriesEveryShard() {
+    List<String> codes = codes(20);
+    codes.forEach(code -> shardDbs.get(router.shardFor(code)).update("INSERT INTO urls (short_code) VALUES (?)", code));
+
+    List<String> all = router.gather(() -> jdbc.queryForList("SELECT short_code FROM urls", String.class));
+    assertEquals(codes.stream().sorted().toList(), all.stream().sorted().toList());
+
+    Map<Integer, List<String>> byShard = router.gatherByShard(() -> jdbc.queryForList("SELECT name FROM node", String.class));
+    assertEquals(Map.of(0, List.of("shard-0"), 1, List.of("shard-1")), byShard);
+  }
+
+  @Test
+  void testGatherByCodeSendsEachShardOnlyItsCodes() {
+    List<String> codes = codes(20);
+    List<String> seen = new CopyOnWriteArrayList<>();
+
+    List<String> results = router.gather(codes, shardCodes -> {
+      String node = jdbc.queryForObject("SELECT name FROM node", String.class);
+      for (String code : shardCodes) {
+        assertEquals("shard-" + router.shardFor(code), node);
+        seen.add(code);
+      }
+      return shardCodes;
+    });
+
+    assertEquals(codes.stream().sorted().toList(), seen.stream().sorted().toList());
+    assertEquals(codes.size(), results.size());
+  }
+
+  @Test
+  void testAddingShardMovesCodesOnlyToIt() {
+    HashRingShardResolver three = new HashRingShardResolver(3, 160);
+    HashRingShardResolver four = new HashRingShardResolver(4, 160);
+    List<String> codes = codes(10_000);
+
+    int moved = 0;
+    for (String code : codes) {
+      int before = three.shardFor(code);
+      int after = four.shardFor(code);
+      if (before != after) {
+        assertEquals(3, after, code);
+        moved++;
+      }
+    }
+    // About a quarter of the codes belong to the new shard
+    assertTrue(moved > 1_500 && moved < 3_500, "moved " + moved);
+  }
+
+  @Test
+  void testSingleShardRunsInCallersThread() {
+    ShardRouter single = ShardRouter.single();
+    Thread caller = Thread.currentThread();
+
+    assertFalse(single.isSharded());
+    assertEquals(List.of(caller), single.gather(() -> List.of(Thread.currentThread())));
+    assertEquals(0, single.shardFor("anything"));
+  }
+
+  private static List<String> codes(int count) {
+    List<String> codes = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      codes.add("c" + Integer.toString(i, 36));
+    }
+    return codes;
+  }
+
+  private static int count(JdbcTemplate db, String code) {
+    return code == null
+        ? db.queryForObject("SELECT COUNT(*) FROM urls", Integer.class)
+        : db.queryForObject("SELECT COUNT(*) FROM urls WHERE short_code = ?", Integer.class, code);
+  }
+
+  private static JdbcDataSource database(String name) {
+    JdbcDataSource dataSource = new JdbcDataSource();
+    dataSource.setURL("jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+    JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+    jdbc.execute("CREATE TABLE node (name VARCHAR(20))");
+    jdbc.update("INSERT INTO node VALUES (?)", name);
+    jdbc.execute("CREATE TABLE urls (short_code VARCHAR(10))");
+    return dataSource;
+  }
+}
@@ -0,0 +1,254 @@
+package com.urlshortener;
+
+import com.urlshortener.config.RedisConfig;
+import com.urlshortener.dto.AnalyticsResponse;
+import com.urlshortener.dto.ClickEvent;
+import com.urlshortener.dto.UrlRequest;
+import com.urlshortener.dto.UrlResponse;
+import com.urlshortener.entity.ClickAnalytics;
+import com.urlshortener.entity.Url;
+import com.urlshortener.entity.User;
+import com.urlshortener.exception.ForbiddenException;
+import com.urlshortener.exception.GoneException;
+import com.urlshortener.exception.ResourceNotFoundException;
+import com.urlshortener.repository.ClickAnalyticsRepository;
+import com.urlshortener.repository.JpaClickStore;
+import com.urlshortener.repository.UrlRepository;
+import com.urlshortener.repository.UserRepository;
+import com.urlshortener.repository.shard.ShardRouter;
+import com.urlshortener.service.AnalyticsCache;
+import com.urlshortener.service.AnalyticsService;
+import com.urlshortener.service.ClickStreamHub;
+import com.urlshortener.service.LeaderboardService;
+import com.urlshortener.service.UniqueVisitorService;
+import com.urlshortener.service.UrlExpirySweeper;
+import com.urlshortener.service.UrlService;
+import com.urlshortener.util.ClickClassifier;
+import com.urlshortener.util.ShortCodeGenerator;
+import com.urlshortener.util.UrlValidator;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Counts the SQL statements the lookups by short code issue against a real schema.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class UrlQueryTests {
+
+  @Autowired
+  private UrlRepository urlRepository;
+
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private ClickAnalyticsRepository clickAnalyticsRepository;
+
+  @Autowired
+  private EntityManager entityManager;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  private UrlService urlService;
+  private AnalyticsService analyticsService;
+  private Statistics statistics;
+  private User owner;
+
+  @BeforeEach
+  void setUp() {
+    ShardRouter shardRouter = ShardRouter.single();
+    urlService = new UrlService(urlRepository, userRepository, new JpaClickStore(clickAnalyticsRepository, urlRepository),
+        mock(ShortCodeGenerator.class), mock(UrlValidator.class), mock(UniqueVisitorService.class),
+        mock(ClickStreamHub.class), mock(AnalyticsCache.class), mock(LeaderboardService.class), shardRouter);
+    analyticsService = new AnalyticsService(urlRepository, new JpaClickStore(clickAnalyticsRepository, urlRepository),
+        mock(UniqueVisitorService.class), new ClickClassifier(), shardRouter, transactionManager);
+    ReflectionTestUtils.setField(urlService, "shortDomain", "http://localhost");
+    ReflectionTestUtils.setField(analyticsService, "shortDomain", "http://localhost");
+
+    owner = userRepository.save(User.builder().username("owner").email("owner@example.com").password("x").build());
+    Url url = urlRepository.save(Url.builder().user(owner).shortCode("abc123").longUrl("https://example.com").clicks(3).build());
+    clickAnalyticsRepository.save(ClickAnalytics.builder().url(url).clickedAt(LocalDateTime.now()).referrer("https://google.com").build());
+    entityManager.flush();
+    // Nothing may be served from the persistence context
+    entityManager.clear();
+
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    statistics.clear();
+  }
+
+  @Test
+  void testGetUrl_OneStatement() {
+    UrlResponse response = urlService.getUrl("abc123", owner.getId());
+
+    assertEquals("https://example.com", response.getLongUrl());
+    assertEquals(3, response.getClicks());
+    assertEquals(1, statistics.getPrepareStatementCount());
+    assertEquals(0, statistics.getEntityLoadCount());
+  }
+
+  @Test
+  void testOwnershipFailures_OneStatement() {
+    assertThrows(ForbiddenException.class, () -> urlService.getUrl("abc123", UUID.randomUUID()));
+    assertEquals(1, statistics.getPrepareStatementCount());
+
+    assertThrows(ResourceNotFoundException.class, () -> urlService.getUrl("missing", owner.getId()));
+    assertEquals(2, statistics.getPrepareStatementCount());
+
+    assertThrows(ForbiddenException.class, () -> urlService.deleteUrl("abc123", UUID.randomUUID()));
+    assertEquals(3, statistics.getPrepareStatementCount());
+  }
+
+  @Test
+  void testDelete_HidesUrlUntilPurged() {
+    assertEquals(0, clickAnalyticsRepository.deleteBatchOfDeletedUrl("abc123", 10), "live links keep their clicks");
+    urlService.deleteUrl("abc123", owner.getId());
+    entityManager.clear();
+
+    assertThrows(ResourceNotFoundException.class, () -> urlService.getUrl("abc123", owner.getId()));
+    assertTrue(urlRepository.findByUserId(owner.getId()).isEmpty());
+    assertTrue(urlRepository.existsByShortCode("abc123"), "code stays taken until purged");
+    assertEquals(List.of("abc123"), urlRepository.findDeletedShortCodes(10));
+
+    assertEquals(1, clickAnalyticsRepository.deleteBatchOfDeletedUrl("abc123", 10));
+    assertEquals(0, clickAnalyticsRepository.deleteBatchOfDeletedUrl("abc123", 10));
+    assertEquals(1, urlRepository.purgeDeleted("abc123"));
+    assertFalse(urlRepository.existsByShortCode("abc123"));
+  }
+
+  @Test
+  void testCreateShortUrl_LimitedLinksDoNotBreakSharing() {
+    ShortCodeGenerator shortCodeGenerator = mock(ShortCodeGenerator.class);
+    when(shortCodeGenerator.generate(anyInt())).thenReturn("lim001", "lim002", "open01");
+    UrlValidator urlValidator = mock(UrlValidator.class);
+    when(urlValidator.isValidUrl(anyString())).thenReturn(true);
+    UrlService service = new UrlService(urlRepository, userRepository, new JpaClickStore(clickAnalyticsRepository, urlRepository),
+        shortCodeGenerator, urlValidator, mock(UniqueVisitorService.class), mock(ClickStreamHub.class),
+        mock(AnalyticsCache.class), mock(LeaderboardService.class), ShardRouter.single());
+    ReflectionTestUtils.setField(service, "shortDomain", "http://localhost");
+    String longUrl = "https://example.com/shared";
+
+    // Two limited links to the same URL are two rows
+    service.createShortUrl(UrlRequest.builder().longUrl(longUrl).maxClicks(5).build(), owner.getId());
+    service.createShortUrl(UrlRequest.builder().longUrl(longUrl).expiresAt(LocalDateTime.now().plusDays(1)).build(), owner.getId());
+    entityManager.flush();
+
+    UrlResponse unlimited = service.createShortUrl(UrlRequest.builder().longUrl(longUrl).build(), owner.getId());
+    entityManager.flush();
+    assertEquals("open01", unlimited.getShortCode());
+    assertNull(unlimited.getMaxClicks());
+
+    // ...and the unlimited one is shared from then on
+    assertEquals("open01", service.createShortUrl(UrlRequest.builder().longUrl(longUrl).build(), owner.getId()).getShortCode());
+  }
+
+  @Test
+  void testRedirect_ClickCapCostsNoExtraStatement() {
+    urlRepository.save(Url.builder().user(owner).shortCode("once").longUrl("https://example.com/once").clicks(0).maxClicks(1).build());
+    entityManager.flush();
+    entityManager.clear();
+    statistics.clear();
+
+    // The lookup, the conditional increment and the click row, as for any link
+    urlService.resolveClick("once", null, null, null);
+    entityManager.flush();
+    assertEquals(3, statistics.getPrepareStatementCount());
+    entityManager.clear();
+
+    // The cap is read with the lookup; nothing else runs
+    assertThrows(GoneException.class, () -> urlService.resolveClick("once", null, null, null));
+    assertEquals(4, statistics.getPrepareStatementCount());
+    // The last click stamped the expiry the sweeper scans for
+    assertNotNull(urlRepository.findSummaryByShortCode("once").orElseThrow().getExpiresAt());
+  }
+
+  @Test
+  void testExpirySweeper_SoftDeletesExpiredLinks() {
+    urlRepository.save(Url.builder().user(owner).shortCode("old").longUrl("https://example.com/old").clicks(0)
+        .expiresAt(LocalDateTime.now().minusHours(2)).build());
+    urlRepository.save(Url.builder().user(owner).shortCode("future").longUrl("https://example.com/future").clicks(0)
+        .expiresAt(LocalDateTime.now().plusHours(2)).build());
+    entityManager.flush();
+
+    LeaderboardService leaderboardService = mock(LeaderboardService.class);
+    UrlExpirySweeper sweeper = new UrlExpirySweeper(urlRepository, leaderboardService, mock(AnalyticsCache.class),
+        mock(RedisConfig.class), transactionManager, ShardRouter.single());
+    ReflectionTestUtils.setField(sweeper, "graceSeconds", 3600L);
+    ReflectionTestUtils.setField(sweeper, "batchSize", 1);
+    ReflectionTestUtils.setField(sweeper, "maxBatches", 5);
+
+    assertEquals(1, sweeper.sweep());
+    entityManager.clear();
+    assertEquals(List.of("old"), urlRepository.findDeletedShortCodes(10));
+    assertTrue(urlRepository.findSummaryByShortCode("future").isPresent());
+    verify(leaderboardService).removeLink(owner.getId(), "old");
+  }
+
+  @Test
+  void testJpaClickStore_KeepsEventTime() {
+    UUID urlId = urlRepository.findSummaryByShortCode("abc123").orElseThrow().getId();
+    LocalDateTime clickedAt = LocalDateTime.of(2024, 1, 1, 23, 59, 59);
+    JpaClickStore clickStore = new JpaClickStore(clickAnalyticsRepository, urlRepository);
+
+    clickStore.record(ClickEvent.builder().urlId(urlId).clickedAt(clickedAt).build());
+    entityManager.flush();
+
+    List<ClickEvent> clicks = new ArrayList<>();
+    clickStore.scan(urlId, clickedAt, clickedAt, clicks::add);
+    assertEquals(1, clicks.size());
+  }
+
+  @Test
+  void testJpaClickStore_ScanPagesThroughTies() {
+    UUID urlId = urlRepository.findSummaryByShortCode("abc123").orElseThrow().getId();
+    LocalDateTime clickedAt = LocalDateTime.of(2024, 1, 1, 12, 0);
+    JpaClickStore clickStore = new JpaClickStore(clickAnalyticsRepository, urlRepository);
+
+    // More than a page, all at one instant, so only the id breaks the ties between pages
+    for (int i = 0; i < 1001; i++) {
+      clickStore.record(ClickEvent.builder().urlId(urlId).clickedAt(clickedAt).referrer("r" + i).build());
+    }
+    entityManager.flush();
+
+    Set<String> referrers = new HashSet<>();
+    clickStore.scan(urlId, clickedAt, clickedAt, click -> referrers.add(click.getReferrer()));
+    assertEquals(1001, referrers.size());
+  }
+
+  @Test
+  void testAnalyticsLookups() {
+    analyticsService.getOwnedUrlId("abc123", owner.getId());
+    assertEquals(1, statistics.getPrepareStatementCount());
+
+    // The lookup plus the click scan
+    AnalyticsResponse analytics = analyticsService.getUrlAnalytics("abc123", owner.getId());
+    assertEquals(3, statistics.getPrepareStatementCount());
+    assertEquals(1L, analytics.getReferrerCounts().get("google.com"));
+    assertEquals(0, statistics.getEntityLoadCount());
+  }
+}
@@ -173,7 +173,7 @@ export async function GET(request: NextRequest) {
 
   try {
     // Validate token with a simple request to the backend
-    const response = await fetch(`${API_URL}/urls`, {
+    const response = await fetch(`${API_URL}/urls?limit=1`, {
       headers: {
         Authorization: `Bearer ${token}`,
       },
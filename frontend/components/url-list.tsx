@@ -23,14 +23,17 @@ import { formatDate } from "@/lib/utils"
 export function UrlList() {
   const router = useRouter()
   const [urls, setUrls] = useState<UrlResponse[]>([])
+  const [nextCursor, setNextCursor] = useState<string | null>(null)
   const [isLoading, setIsLoading] = useState(true)
+  const [isLoadingMore, setIsLoadingMore] = useState(false)
   const [error, setError] = useState<string | null>(null)
 
   useEffect(() => {
     const fetchUrls = async () => {
       try {
-        const data = await getUserUrls()
-        setUrls(data)
+        const page = await getUserUrls()
+        setUrls(page.urls)
+        setNextCursor(page.nextCursor)
       } catch (err) {
         setError(err instanceof Error ? err.message : "Failed to load URLs. Please try again.")
       } finally {
@@ -41,6 +44,20 @@ export function UrlList() {
     fetchUrls()
   }, [])
 
+  const handleLoadMore = async () => {
+    if (!nextCursor) return
+    setIsLoadingMore(true)
+    try {
+      const page = await getUserUrls(nextCursor)
+      setUrls((current) => [...current, ...page.urls])
+      setNextCursor(page.nextCursor)
+    } catch (err) {
+      setError(err instanceof Error ? err.message : "Failed to load URLs. Please try again.")
+    } finally {
+      setIsLoadingMore(false)
+    }
+  }
+
   const handleCopy = (url: string) => {
     navigator.clipboard.writeText(url)
   }
@@ -137,6 +154,13 @@ export function UrlList() {
           ))}
         </TableBody>
       </Table>
+      {nextCursor && (
+        <div className="text-center py-4">
+          <Button variant="outline" onClick={handleLoadMore} disabled={isLoadingMore}>
+            {isLoadingMore ? "Loading..." : "Load more"}
+          </Button>
+        </div>
+      )}
     </div>
   )
 }
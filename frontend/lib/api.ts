@@ -1,14 +1,15 @@
-import type { AnalyticsResponse, UrlResponse } from "./types";
+import type { AnalyticsResponse, UrlPage, UrlResponse } from "./types";
 import { API_URL } from "./config";
 import { getAuthToken } from "./auth";
 
-export async function getUserUrls(): Promise<UrlResponse[]> {
+export async function getUserUrls(cursor?: string): Promise<UrlPage> {
   const token = getAuthToken();
   if (!token) {
     throw new Error("Authentication required");
   }
 
-  const response = await fetch(`${API_URL}/urls`, {
+  const query = cursor ? `?cursor=${encodeURIComponent(cursor)}` : "";
+  const response = await fetch(`${API_URL}/urls${query}`, {
     headers: {
       Authorization: `Bearer ${token}`,
     },
@@ -21,7 +22,10 @@ export async function getUserUrls(): Promise<UrlResponse[]> {
     throw new Error("Failed to fetch URLs");
   }
 
-  return response.json();
+  return {
+    urls: await response.json(),
+    nextCursor: response.headers.get("X-Next-Cursor"),
+  };
 }
 
 export async function createShortUrl(longUrl: string): Promise<UrlResponse> {
@@ -132,7 +132,7 @@ export async function checkAuth(): Promise<boolean> {
 
     // Try to use the current token
     try {
-      const response = await fetch(`${API_URL}/urls`, {
+      const response = await fetch(`${API_URL}/urls?limit=1`, {
         headers: {
           Authorization: `Bearer ${accessToken}`,
         },
@@ -23,6 +23,13 @@ export interface UrlResponse {
   longUrl: string
   createdAt: string
   clicks: number
+  expiresAt: string | null
+  maxClicks: number | null
+}
+
+export interface UrlPage {
+  urls: UrlResponse[]
+  nextCursor: string | null
 }
 
 export interface AnalyticsResponse {
@@ -31,8 +38,28 @@ export interface AnalyticsResponse {
   shortUrl: string
   longUrl: string
   totalClicks: number
+  uniqueVisitors: number
   clicksByDay: Record<string, number>
+  uniqueVisitorsByDay: Record<string, number>
   referrerCounts: Record<string, number>
   browserCounts: Record<string, number>
 }
 
+
+export interface LinkClicks {
+  shortCode: string
+  shortUrl: string
+  longUrl: string
+  clicks: number
+}
+
+export interface AccountAnalyticsResponse {
+  from: string
+  to: string
+  totalUrls: number
+  totalClicks: number
+  clicksByDay: Record<string, number>
+  topLinks: LinkClicks[]
+  topReferrers: Record<string, number>
+  topBrowsers: Record<string, number>
+}